@@ -0,0 +1,10 @@
+package com.example.filemanagement.Config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Background maintenance jobs (@Scheduled)
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
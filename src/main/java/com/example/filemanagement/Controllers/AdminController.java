@@ -0,0 +1,51 @@
+package com.example.filemanagement.Controllers;
+
+import com.example.filemanagement.Service.AdminService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    private final AdminService adminService;
+
+    public AdminController(AdminService adminService) {
+        this.adminService = adminService;
+    }
+
+    // Move flat blobs into the sharded layout; poll the GET for progress
+    @PostMapping("/storage/migrate")
+    public ResponseEntity<?> startStorageMigration(@RequestParam(value = "parallelism", defaultValue = "8") int parallelism) {
+        return adminService.startStorageMigration(parallelism);
+    }
+
+    @GetMapping("/storage/migrate")
+    public ResponseEntity<?> getStorageMigrationStatus() {
+        return adminService.getStorageMigrationStatus();
+    }
+
+    // Run a pack compaction pass now instead of waiting for the scheduled one
+    @PostMapping("/storage/compact")
+    public ResponseEntity<?> compactPacks() {
+        return adminService.compactPacks();
+    }
+
+    // Run a garbage collection of orphaned blobs now instead of waiting for the scheduled one
+    @PostMapping("/storage/gc")
+    public ResponseEntity<?> collectGarbage() {
+        return adminService.collectGarbage();
+    }
+
+    // Rebuild every folder's size and item counts from the rows, e.g. after upgrading or a manual fix in the database
+    @PostMapping("/folders/rollups")
+    public ResponseEntity<?> recomputeFolderRollups() {
+        return adminService.recomputeFolderRollups();
+    }
+
+    // Purge what has been in the bin past retention now instead of waiting for the scheduled run
+    @PostMapping("/bin/purge")
+    public ResponseEntity<?> purgeBin() {
+        return adminService.purgeBin();
+    }
+}
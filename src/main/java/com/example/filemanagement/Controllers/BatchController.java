@@ -0,0 +1,27 @@
+package com.example.filemanagement.Controllers;
+
+import com.example.filemanagement.DTOs.BatchOperationDto;
+import com.example.filemanagement.DTOs.BatchResultDto;
+import com.example.filemanagement.Service.BatchService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/batch")
+public class BatchController {
+
+    private final BatchService batchService;
+
+    public BatchController(BatchService batchService) {
+        this.batchService = batchService;
+    }
+
+    // e.g. [{"action":"move","target":"file","ids":[1,2,3],"folderId":7}, {"action":"bin","target":"folder","ids":[4]}];
+    // items that cannot be applied are listed in failures, the rest is committed together
+    @PostMapping
+    public ResponseEntity<BatchResultDto> execute(@RequestBody List<BatchOperationDto> operations) {
+        return batchService.execute(operations);
+    }
+}
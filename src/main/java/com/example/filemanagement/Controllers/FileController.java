@@ -2,6 +2,8 @@ package com.example.filemanagement.Controllers;
 
 import com.example.filemanagement.DTOs.FileDto;
 import com.example.filemanagement.Service.FileService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -34,8 +36,10 @@ public class FileController {
     }
 
     @GetMapping("/{id}/download")
-    public ResponseEntity<?> downloadFile(@PathVariable Long id) {
-        return fileService.downloadFile(id);
+    public ResponseEntity<?> downloadFile(@PathVariable Long id,
+                                          @RequestHeader HttpHeaders headers,
+                                          HttpServletRequest request) {
+        return fileService.downloadFile(id, headers, request);
     }
 
 
@@ -3,6 +3,7 @@ package com.example.filemanagement.Controllers;
 import com.example.filemanagement.DTOs.ContentDto;
 import com.example.filemanagement.DTOs.FolderDto;
 import com.example.filemanagement.Service.FolderService;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -43,9 +44,20 @@ public class FolderController {
         return folderService.getFolderDetails(id);
     }
 
+    // paginated: sort=name|size|modifiedAt, direction=asc|desc, limit (max 1000), cursor from the previous page's nextCursor
     @GetMapping("/{id}/content")
-    public ResponseEntity<?> getFolderContents(@PathVariable Long id) {
-        return folderService.getFolderContents(id);
+    public ResponseEntity<?> getFolderContents(@PathVariable Long id,
+                                               @RequestHeader HttpHeaders headers,
+                                               @RequestParam(value = "sort", defaultValue = "name") String sort,
+                                               @RequestParam(value = "direction", defaultValue = "asc") String direction,
+                                               @RequestParam(value = "limit", required = false) Integer limit,
+                                               @RequestParam(value = "cursor", required = false) String cursor) {
+        return folderService.getFolderContents(id, headers, sort, direction, limit, cursor);
+    }
+
+    @GetMapping("/{id}/breadcrumb")
+    public ResponseEntity<?> getBreadcrumb(@PathVariable Long id) {
+        return folderService.getBreadcrumb(id);
     }
 
     //method to get content of the root folder.
@@ -78,12 +90,20 @@ public class FolderController {
     }
 
     @GetMapping("/bin")
-    public ResponseEntity<?> binContent(){
-        return folderService.getBinContent();
+    public ResponseEntity<?> binContent(@RequestParam("userId") Long userId,
+                                        @RequestParam(value = "sort", defaultValue = "name") String sort,
+                                        @RequestParam(value = "direction", defaultValue = "asc") String direction,
+                                        @RequestParam(value = "limit", required = false) Integer limit,
+                                        @RequestParam(value = "cursor", required = false) String cursor){
+        return folderService.getBinContent(userId, sort, direction, limit, cursor);
     }
 
     @GetMapping("root")
-    public ResponseEntity<?> rootDirectory(){
-        return folderService.rootContent();
+    public ResponseEntity<?> rootDirectory(@RequestHeader HttpHeaders headers,
+                                           @RequestParam(value = "sort", defaultValue = "name") String sort,
+                                           @RequestParam(value = "direction", defaultValue = "asc") String direction,
+                                           @RequestParam(value = "limit", required = false) Integer limit,
+                                           @RequestParam(value = "cursor", required = false) String cursor){
+        return folderService.rootContent(headers, sort, direction, limit, cursor);
     }
 }
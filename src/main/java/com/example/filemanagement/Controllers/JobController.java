@@ -0,0 +1,71 @@
+package com.example.filemanagement.Controllers;
+
+import com.example.filemanagement.DTOs.JobDto;
+import com.example.filemanagement.Models.JobModel;
+import com.example.filemanagement.Service.JobService;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+// Long folder operations run in the background: each POST answers 202 with the job to poll or stream
+@RestController
+@RequestMapping("/api/jobs")
+public class JobController {
+
+    private final JobService jobService;
+
+    public JobController(JobService jobService) {
+        this.jobService = jobService;
+    }
+
+    @PostMapping("/import")
+    public ResponseEntity<?> importZip(@RequestParam("file") MultipartFile file,
+                                       @RequestParam("userId") Long userId,
+                                       @RequestParam(value = "parentFolderId", required = false) Long parentFolderId) {
+        return jobService.submitZipImport(file, userId, parentFolderId);
+    }
+
+    @PostMapping("/folders/{id}/export")
+    public ResponseEntity<?> exportFolder(@PathVariable Long id, @RequestParam("userId") Long userId) {
+        return jobService.submitFolderJob(JobModel.Type.ZIP_EXPORT, id, userId);
+    }
+
+    @PostMapping("/folders/{id}/bin")
+    public ResponseEntity<?> binFolder(@PathVariable Long id, @RequestParam("userId") Long userId) {
+        return jobService.submitFolderJob(JobModel.Type.BIN, id, userId);
+    }
+
+    @PostMapping("/folders/{id}/restore")
+    public ResponseEntity<?> restoreFolder(@PathVariable Long id, @RequestParam("userId") Long userId) {
+        return jobService.submitFolderJob(JobModel.Type.RESTORE, id, userId);
+    }
+
+    @PostMapping("/folders/{id}/delete")
+    public ResponseEntity<?> deleteFolder(@PathVariable Long id, @RequestParam("userId") Long userId) {
+        return jobService.submitFolderJob(JobModel.Type.DELETE, id, userId);
+    }
+
+    @GetMapping
+    public ResponseEntity<?> listJobs(@RequestParam("userId") Long userId) {
+        return jobService.listJobs(userId);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<JobDto> getJob(@PathVariable String id) {
+        return jobService.getJob(id);
+    }
+
+    // text/event-stream of the job's progress until it finishes
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamJob(@PathVariable String id) {
+        return jobService.streamJob(id);
+    }
+
+    // the zip of an export, the summary of anything else
+    @GetMapping("/{id}/result")
+    public ResponseEntity<?> getJobResult(@PathVariable String id) {
+        return jobService.getJobResult(id);
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.filemanagement.Controllers;
+
+import com.example.filemanagement.DTOs.UploadSessionDto;
+import com.example.filemanagement.Service.UploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/files/uploads")
+public class UploadController {
+
+    private final UploadService uploadService;
+
+    public UploadController(UploadService uploadService) {
+        this.uploadService = uploadService;
+    }
+
+    @PostMapping
+    public ResponseEntity<UploadSessionDto> createSession(@RequestBody UploadSessionDto request) {
+        return uploadService.createSession(request);
+    }
+
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<UploadSessionDto> getSession(@PathVariable String sessionId) {
+        return uploadService.getSession(sessionId);
+    }
+
+    // Raw request body, e.g. application/octet-stream; not multipart
+    @PutMapping("/{sessionId}")
+    public ResponseEntity<UploadSessionDto> writeChunk(@PathVariable String sessionId,
+                                                       @RequestParam("offset") long offset,
+                                                       HttpServletRequest request) {
+        return uploadService.writeChunk(sessionId, offset, request);
+    }
+
+    @PostMapping("/{sessionId}/complete")
+    public ResponseEntity<?> completeSession(@PathVariable String sessionId) {
+        return uploadService.completeSession(sessionId);
+    }
+
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<?> abortSession(@PathVariable String sessionId) {
+        return uploadService.abortSession(sessionId);
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.filemanagement.DTOs;
+
+import lombok.*;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BatchOperationDto {
+    private String action;    // move | rename | bin | restore | delete
+    private String target;    // file | folder
+    private List<Long> ids;
+
+    private Long folderId;    // move: where to; null moves files to the top level
+    private String name;      // rename: the new name, for a single id
+}
@@ -0,0 +1,27 @@
+package com.example.filemanagement.DTOs;
+
+import lombok.*;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BatchResultDto {
+    private int succeeded;
+    private int failed;
+
+    @Builder.Default
+    private List<Failure> failures = new ArrayList<>();  // items left out; everything else was applied
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Failure {
+        private int operation;  // index into the request's operations
+        private String target;
+        private Long id;
+        private String message;
+    }
+}
@@ -15,4 +15,5 @@ public class ContentDto {
 
    private List<FolderDto> folders;
    private List<FileDto> files;
+   private String nextCursor;  // pass back as ?cursor= for the next page; null on the last page
 }
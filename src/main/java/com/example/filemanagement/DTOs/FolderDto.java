@@ -18,5 +18,10 @@ public class FolderDto {
     private LocalDateTime createdAt;
     private LocalDateTime modifiedAt;
     private LocalDateTime deletedAt;
+
+    // whole subtree, kept up to date on the folder row
+    private Long totalSize;
+    private Long fileCount;
+    private Long folderCount;
 }
 
@@ -0,0 +1,31 @@
+package com.example.filemanagement.DTOs;
+
+import lombok.*;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class JobDto {
+    private String id;
+    private String type;
+    private String status;
+
+    private Long folderId;
+    private Long userId;
+
+    private Long itemsTotal;  // null when not known up front
+    private Long bytesTotal;
+    private Long itemsDone;
+    private Long bytesDone;
+    private Double itemsPerSecond;  // since the job started, up to now or its end
+    private Double bytesPerSecond;
+
+    private String message;
+    private String resultName;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
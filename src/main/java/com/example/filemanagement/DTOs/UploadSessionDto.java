@@ -0,0 +1,25 @@
+package com.example.filemanagement.DTOs;
+
+import lombok.*;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UploadSessionDto {
+    private String id;
+    private String fileName;
+    private String contentType;
+    private Long totalSize;
+    private String status;
+
+    private Long folderId;
+    private Long userId;
+
+    private Long committedOffset;  // every byte before this one has been received
+    private Long receivedBytes;    // including chunks past a gap, when chunks arrive in parallel
+
+    private LocalDateTime createdAt;
+    private LocalDateTime modifiedAt;
+}
@@ -0,0 +1,188 @@
+package com.example.filemanagement.Helpers;
+
+import com.example.filemanagement.Models.FileModel;
+import com.example.filemanagement.Models.FolderModel;
+import com.example.filemanagement.Repositories.FileRepository;
+import com.example.filemanagement.Repositories.FolderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Empties the bin of everything binned longer than the retention period. Each batch is its own short transaction:
+ * expired files first (rows, then the blobs nobody references anymore), then expired folders from the deepest up,
+ * each once nothing is left below it, so no lock is held for longer than one batch. What fails to purge is logged
+ * and skipped for the rest of the run.
+ */
+@Component
+public class BinPurger {
+
+    private static final Logger log = LoggerFactory.getLogger(BinPurger.class);
+    private static final long NO_ID = 0;  // ids start at 1
+
+    private final FileRepository fileRepository;
+    private final FolderRepository folderRepository;
+    private final FileHelper fileHelper;
+    private final FolderRollupHelper folderRollupHelper;
+    private final FolderListingCache folderListingCache;
+    private final TransactionTemplate transactionTemplate;
+    private final long retentionDays;
+    private final int batchSize;
+    private final ReentrantLock running = new ReentrantLock();
+
+    public BinPurger(FileRepository fileRepository, FolderRepository folderRepository, FileHelper fileHelper,
+                     FolderRollupHelper folderRollupHelper, FolderListingCache folderListingCache,
+                     TransactionTemplate transactionTemplate,
+                     @Value("${bin.retention-days:30}") long retentionDays,
+                     @Value("${bin.purge.batch-size:500}") int batchSize) {
+        this.fileRepository = fileRepository;
+        this.folderRepository = folderRepository;
+        this.fileHelper = fileHelper;
+        this.folderRollupHelper = folderRollupHelper;
+        this.folderListingCache = folderListingCache;
+        this.transactionTemplate = transactionTemplate;
+        this.retentionDays = retentionDays;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${bin.purge.interval-ms:3600000}", initialDelayString = "${bin.purge.interval-ms:3600000}")
+    public void scheduledPurge() {
+        purge();
+    }
+
+    /** Purge everything past retention now; returns what it removed */
+    public Map<String, Object> purge() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (!running.tryLock()) {
+            result.put("skipped", "a purge is already running");
+            return result;
+        }
+        long start = System.nanoTime();
+        int files = 0;
+        int folders = 0;
+        try {
+            LocalDateTime cutoff = LocalDateTime.now().minusDays(retentionDays);
+            files = purgeBatches("files",
+                    (skipped, attempted) -> purgeFiles(attempted, fileRepository.findExpired(cutoff, skipped, Limit.of(batchSize))),
+                    id -> purgeFiles(new ArrayList<>(), fileRepository.findExpiredIn(cutoff, List.of(id))));
+            folders = purgeBatches("folders",
+                    (skipped, attempted) -> purgeFolders(attempted, folderRepository.findExpiredLeaves(cutoff, skipped, Limit.of(batchSize))),
+                    id -> purgeFolders(new ArrayList<>(), folderRepository.findExpiredLeavesIn(cutoff, List.of(id))));
+        } finally {
+            running.unlock();
+        }
+
+        if (files + folders > 0) {
+            log.info("Purged {} files and {} folders binned more than {} days ago", files, folders, retentionDays);
+        }
+        result.put("files", files);
+        result.put("folders", folders);
+        result.put("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return result;
+    }
+
+    /**
+     * Run batches, each in its own transaction, until none is left. A failed batch is retried one item per
+     * transaction; items that fail alone are logged and left out of the later batches, so one bad row never stops
+     * the run nor has it pick the same batch again. They come back with the next run.
+     */
+    private int purgeBatches(String kind, Batch batch, Item item) {
+        Set<Long> skipped = new HashSet<>(List.of(NO_ID));  // never empty, for the "not in"
+        int purged = 0;
+        while (true) {
+            List<Long> attempted = new ArrayList<>();
+            try {
+                int count = transactionTemplate.execute(status -> batch.purge(skipped, attempted));
+                if (count == 0) {
+                    return purged;
+                }
+                purged += count;
+                continue;
+            } catch (RuntimeException e) {
+                if (attempted.isEmpty()) {  // the batch couldn't even be read: try again next run
+                    log.warn("Could not read the next batch of binned {} to purge: {}", kind, e.getMessage());
+                    return purged;
+                }
+                log.warn("Purging a batch of {} binned {} failed, retrying them one by one: {}", attempted.size(), kind, e.getMessage());
+            }
+            for (Long id : attempted) {
+                try {
+                    purged += transactionTemplate.execute(status -> item.purge(id));
+                } catch (RuntimeException e) {
+                    log.warn("Could not purge binned {} {}, skipping it until the next run: {}", kind, id, e.getMessage());
+                    skipped.add(id);
+                }
+            }
+        }
+    }
+
+    // expired files, oldest first; their ids go to attempted before anything is changed
+    private int purgeFiles(List<Long> attempted, List<FileModel> expired) {
+        expired.forEach(file -> attempted.add(file.getId()));
+        if (expired.isEmpty()) {
+            return 0;
+        }
+
+        List<FolderRollupHelper.Change> changes = new ArrayList<>();
+        List<Long> listings = new ArrayList<>();
+        for (FileModel file : expired) {
+            // files binned together with their folder are still in its frozen totals
+            changes.add(new FolderRollupHelper.Change(FileHelper.folderIdOf(file), file.getDeletedAt(), FolderRollupHelper.of(file).negate()));
+            listings.add(FileHelper.folderIdOf(file));
+        }
+        folderRollupHelper.applyAll(changes);
+
+        fileRepository.deleteByIds(expired.stream().map(FileModel::getId).toList());
+        fileHelper.releaseBlobs(expired.stream().map(FileModel::getStorageKey).toList());  // blobs still shared stay
+        folderListingCache.invalidate(listings);
+        return expired.size();
+    }
+
+    // expired folders with nothing left below them, deepest first; their parents qualify next round
+    private int purgeFolders(List<Long> attempted, List<FolderModel> expired) {
+        expired.forEach(folder -> attempted.add(folder.getId()));
+        if (expired.isEmpty()) {
+            return 0;
+        }
+
+        List<FolderRollupHelper.Change> changes = new ArrayList<>();
+        List<Long> listings = new ArrayList<>();
+        Map<Long, FolderRollupHelper.Delta> totals = folderRollupHelper.lockedOf(expired);
+        for (FolderModel folder : expired) {
+            changes.add(new FolderRollupHelper.Change(FolderHelper.parentIdOf(folder), folder.getDeletedAt(), totals.get(folder.getId()).negate()));
+            listings.add(folder.getId());
+            listings.add(FolderHelper.parentIdOf(folder));
+        }
+        folderRollupHelper.applyAll(changes);
+
+        folderRepository.deleteByIds(expired.stream().map(FolderModel::getId).toList());
+        folderListingCache.invalidate(listings);
+        return expired.size();
+    }
+
+    /** One batch of a kind, skipping the given ids and reporting the ones it took up */
+    @FunctionalInterface
+    private interface Batch {
+        int purge(Set<Long> skipped, List<Long> attempted);
+    }
+
+    /** A single item of a kind, if still due */
+    @FunctionalInterface
+    private interface Item {
+        int purge(Long id);
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.filemanagement.Helpers;
+
+import com.example.filemanagement.Storage.BlobReadCache;
+import com.example.filemanagement.Storage.ByteBufferInputStream;
+import com.example.filemanagement.Storage.StorageBackend;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/** Serves a stored blob as a full, single-range or multi-range (206) response */
+@Component
+public class ByteRangeHelper {
+
+    // Tomcat's sendfile hooks: the connector copies the file to the socket itself once the response is committed
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final int DECODE_BUFFER_SIZE = 64 * 1024;
+
+    private final StorageBackend storageBackend;
+    private final BlobReadCache blobReadCache;
+
+    public ByteRangeHelper(StorageBackend storageBackend, BlobReadCache blobReadCache) {
+        this.storageBackend = storageBackend;
+        this.blobReadCache = blobReadCache;
+    }
+
+    public ResponseEntity<?> serve(String storageKey, long length, MediaType contentType, String filename,
+                                   String etag, long lastModified,
+                                   HttpHeaders requestHeaders, HttpServletRequest request) {
+        return serve(storageKey, length, contentType, filename, null, etag, lastModified, requestHeaders, request);
+    }
+
+    /** Stored bytes as they are; with a contentEncoding (e.g. gzip) they are that encoding of the file and ranges apply to it */
+    public ResponseEntity<?> serve(String storageKey, long length, MediaType contentType, String filename, String contentEncoding,
+                                   String etag, long lastModified,
+                                   HttpHeaders requestHeaders, HttpServletRequest request) {
+        List<Range> ranges;
+        try {
+            ranges = ConditionalRequestHelper.ifRangeMatches(requestHeaders, etag, lastModified)
+                    ? toRanges(requestHeaders.getRange(), length)
+                    : List.of();  // representation changed since the client's partial copy: send it whole
+        } catch (IllegalArgumentException e) {  // malformed, too many, more than the file, or nothing inside it
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                    .build();
+        }
+
+        ResponseEntity.BodyBuilder response;
+        Range range;
+        if (ranges.isEmpty()) {
+            response = ResponseEntity.ok();
+            range = new Range(0, length);
+        } else if (ranges.size() == 1) {
+            range = ranges.get(0);
+            response = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .header(HttpHeaders.CONTENT_RANGE, range.contentRange(length));
+        } else {
+            if (contentEncoding == null) {
+                return multipart(contentType, length, filename, etag, lastModified, ranges, false,
+                        (part, outputStream) -> transfer(storageKey, length, part, outputStream));  // channel to channel
+            }
+            response = ResponseEntity.ok();  // parts of an encoded body would need their own coding: send it whole
+            range = new Range(0, length);
+        }
+        if (contentEncoding != null) {
+            response.header(HttpHeaders.CONTENT_ENCODING, contentEncoding)
+                    .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        response.eTag(etag)
+                .lastModified(lastModified)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .contentType(contentType)
+                .contentLength(range.length());
+
+        Optional<Path> localPath = storageBackend.localPath(storageKey);
+        if (range.length() > 0 && localPath.isPresent()
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {  // zero-copy, the bytes never enter the JVM
+            request.setAttribute(SENDFILE_FILENAME, localPath.get().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, range.start());
+            request.setAttribute(SENDFILE_END, range.end());
+            return response.build();
+        }
+
+        StreamingResponseBody body = outputStream -> transfer(storageKey, length, range, outputStream);
+        return response.body(body);
+    }
+
+    // multipart/byteranges: each part gets its own headers, then its bytes from the writer
+    private static ResponseEntity<?> multipart(MediaType contentType, long length, String filename, String etag,
+                                               long lastModified, List<Range> ranges, boolean decoded, RangeWriter writer) {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+
+        StreamingResponseBody body = outputStream -> {
+            try (writer) {
+                for (Range range : ranges) {
+                    String partHeader = "\r\n--" + boundary + "\r\n"
+                            + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                            + HttpHeaders.CONTENT_RANGE + ": " + range.contentRange(length) + "\r\n\r\n";
+                    outputStream.write(partHeader.getBytes(StandardCharsets.US_ASCII));
+                    writer.write(range, outputStream);
+                }
+            }
+            outputStream.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT);
+        if (decoded) {
+            response.varyBy(HttpHeaders.ACCEPT_ENCODING);
+        }
+        return response.eTag(etag)
+                .lastModified(lastModified)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .contentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary))
+                .body(body);
+    }
+
+    /**
+     * A compressed blob decoded on the fly for a client that does not take its encoding. Ranges apply to the decoded
+     * bytes: gzip has no index to seek with, so the blob is decoded once from the start and the bytes between the
+     * (sorted, merged) ranges are dropped.
+     */
+    public ResponseEntity<?> serveDecoded(String storageKey, String codec, long storedLength, long length, MediaType contentType,
+                                          String filename, String etag, long lastModified,
+                                          HttpHeaders requestHeaders) {
+        List<Range> ranges;
+        try {
+            ranges = ConditionalRequestHelper.ifRangeMatches(requestHeaders, etag, lastModified)
+                    ? toRanges(requestHeaders.getRange(), length)
+                    : List.of();
+        } catch (IllegalArgumentException e) {  // offsets are in the decoded file
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                    .build();
+        }
+
+        if (ranges.size() > 1) {
+            return multipart(contentType, length, filename, etag, lastModified, ranges, true,
+                    new DecodedRangeWriter(storageKey, codec, storedLength));
+        }
+
+        ResponseEntity.BodyBuilder response;
+        Range range;
+        if (ranges.isEmpty()) {
+            response = ResponseEntity.ok();
+            range = new Range(0, length);
+        } else {
+            range = ranges.get(0);
+            response = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .header(HttpHeaders.CONTENT_RANGE, range.contentRange(length));
+        }
+
+        StreamingResponseBody body = outputStream -> {
+            try (DecodedRangeWriter writer = new DecodedRangeWriter(storageKey, codec, storedLength)) {
+                writer.write(range, outputStream);
+            }
+        };
+        return response
+                .eTag(etag)
+                .lastModified(lastModified)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .contentType(contentType)
+                .contentLength(range.length())
+                .body(body);
+    }
+
+    // Hot blobs come from the read cache, local ones go channel to channel, other backends stream the range through
+    private void transfer(String storageKey, long length, Range range, OutputStream outputStream) throws IOException {
+        Optional<ByteBuffer> cached = blobReadCache.get(storageKey, length);
+        if (cached.isPresent()) {
+            ByteBuffer slice = cached.get().slice((int) range.start(), (int) range.length());
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            while (slice.hasRemaining()) {
+                target.write(slice);
+            }
+            return;
+        }
+
+        Optional<Path> localPath = storageBackend.localPath(storageKey);
+        if (localPath.isEmpty()) {
+            try (InputStream in = storageBackend.getRange(storageKey, range.start(), range.end())) {
+                in.transferTo(outputStream);
+            }
+            return;
+        }
+
+        Path blobPath = localPath.get();
+        try (FileChannel channel = FileChannel.open(blobPath, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            long position = range.start();
+            while (position < range.end()) {
+                long sent = channel.transferTo(position, range.end() - position, target);
+                if (sent <= 0) {
+                    throw new IOException("Blob ended before the requested range: " + blobPath.getFileName());
+                }
+                position += sent;
+            }
+        }
+    }
+
+    /*
+     * The requested ranges in file order, overlapping and adjacent ones merged into one. Asking for more bytes in
+     * total than the file has is refused, as Spring's HttpRange.toResourceRegions does, so a handful of header bytes
+     * can't make the response many times the file.
+     */
+    private static List<Range> toRanges(List<HttpRange> httpRanges, long length) {
+        List<Range> ranges = new ArrayList<>();
+        long requested = 0;
+        for (HttpRange httpRange : httpRanges) {
+            long start = httpRange.getRangeStart(length);  // throws when the range starts past the end
+            long end = httpRange.getRangeEnd(length) + 1;
+            if (start >= end) {  // e.g. a suffix range of an empty file
+                throw new IllegalArgumentException("Range not satisfiable: " + httpRange);
+            }
+            requested += end - start;
+            ranges.add(new Range(start, end));
+        }
+        if (requested > length) {
+            throw new IllegalArgumentException("Ranges request " + requested + " bytes of " + length);
+        }
+
+        ranges.sort(Comparator.comparingLong(Range::start));
+        List<Range> merged = new ArrayList<>();
+        for (Range range : ranges) {
+            Range last = merged.isEmpty() ? null : merged.getLast();
+            if (last != null && range.start() <= last.end()) {
+                merged.set(merged.size() - 1, new Range(last.start(), Math.max(last.end(), range.end())));
+            } else {
+                merged.add(range);
+            }
+        }
+        return merged;
+    }
+
+    /** Writes the bytes of one range to the response; closed once every part is written */
+    @FunctionalInterface
+    private interface RangeWriter extends Closeable {
+        void write(Range range, OutputStream outputStream) throws IOException;
+
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    /** Decodes a compressed blob once for ranges in ascending order, dropping the bytes between them */
+    private final class DecodedRangeWriter implements RangeWriter {
+
+        private final String storageKey;
+        private final String codec;
+        private final long storedLength;
+        private InputStream in;
+        private long position;
+
+        DecodedRangeWriter(String storageKey, String codec, long storedLength) {
+            this.storageKey = storageKey;
+            this.codec = codec;
+            this.storedLength = storedLength;
+        }
+
+        @Override
+        public void write(Range range, OutputStream outputStream) throws IOException {
+            if (in == null) {
+                Optional<ByteBuffer> cached = blobReadCache.get(storageKey, storedLength);
+                InputStream stored = cached.isPresent() ? new ByteBufferInputStream(cached.get()) : storageBackend.open(storageKey);
+                in = CompressionHelper.decode(stored, codec);
+            }
+            in.skipNBytes(range.start() - position);
+            byte[] buffer = new byte[DECODE_BUFFER_SIZE];
+            long remaining = range.length();
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new IOException("Blob ended before the requested range: " + storageKey);
+                }
+                outputStream.write(buffer, 0, read);
+                remaining -= read;
+            }
+            position = range.end();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+
+    /** Byte range [start, end) */
+    private record Range(long start, long end) {
+        long length() {
+            return end - start;
+        }
+
+        String contentRange(long total) {
+            return "bytes " + start + "-" + (end - 1) + "/" + total;
+        }
+    }
+}
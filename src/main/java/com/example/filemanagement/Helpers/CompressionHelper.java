@@ -0,0 +1,195 @@
+package com.example.filemanagement.Helpers;
+
+import com.example.filemanagement.Models.BlobModel;
+import com.example.filemanagement.Repositories.BlobRepository;
+import com.example.filemanagement.Storage.StorageBackend;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/** Compression at rest: which blobs get gzipped when stored, and reading them back */
+@Component
+public class CompressionHelper {
+
+    public static final String GZIP = "gzip";
+
+    private static final int SAMPLE_SIZE = 64 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int IN_CLAUSE_CHUNK = 1000;
+    private static final double SAMPLE_RATIO = 0.7;  // sampled deflate output over input, below which compression pays
+    private static final double KEEP_RATIO = 0.9;    // compressed blobs that save less than this are stored raw
+
+    private static final List<String> COMPRESSIBLE_TYPES = List.of(
+            "text/", "json", "xml", "csv", "javascript", "yaml", "sql", "x-log");
+    private static final List<String> COMPRESSED_TYPES = List.of(
+            "image/", "video/", "audio/", "zip", "gzip", "x-7z", "x-rar", "x-bzip2", "x-xz", "zstd");
+
+    private final BlobRepository blobRepository;
+    private final StorageBackend storageBackend;
+    private final boolean enabled;
+    private final long minSize;
+
+    public CompressionHelper(BlobRepository blobRepository, StorageBackend storageBackend,
+                             @Value("${storage.compression.enabled:true}") boolean enabled,
+                             @Value("${storage.compression.min-size-kb:1}") long minSizeKb) {
+        this.blobRepository = blobRepository;
+        this.storageBackend = storageBackend;
+        this.enabled = enabled;
+        this.minSize = minSizeKb * 1024;
+    }
+
+    /**
+     * Gzip a committed incoming file into a copy beside it when worth it, before any blob row is locked; empty when it
+     * is to be stored raw. Content the backend already holds is not compressed again. The caller deletes the copy.
+     */
+    public Optional<Compressed> compress(String storageKey, Path incoming, long size, String contentType) throws IOException {
+        if (!enabled || size < minSize || !worthCompressing(contentType, incoming) || storageBackend.stat(storageKey).isPresent()) {
+            return Optional.empty();
+        }
+
+        Path compressed = incoming.resolveSibling(incoming.getFileName() + ".gz");
+        boolean kept = false;
+        try {
+            try (InputStream in = Files.newInputStream(incoming);
+                 OutputStream out = new GZIPOutputStream(Files.newOutputStream(compressed), BUFFER_SIZE)) {
+                in.transferTo(out);
+            }
+            long storedSize = Files.size(compressed);
+            if (storedSize >= size * KEEP_RATIO) {
+                return Optional.empty();
+            }
+            kept = true;
+            return Optional.of(new Compressed(compressed, storedSize));
+        } finally {
+            if (!kept) {
+                Files.deleteIfExists(compressed);
+            }
+        }
+    }
+
+    /**
+     * Hand a committed incoming file to the backend, as its compressed copy when there is one. Runs under the blob row
+     * lock, so the codec recorded on the row always describes the bytes that were actually stored for it; the
+     * compressing itself is done before, so the lock is only held to publish.
+     */
+    @Transactional
+    public void store(String storageKey, Path incoming, long size, Compressed compressed) throws IOException {
+        List<BlobModel> blobs = blobRepository.lockAllByStorageKeyIn(List.of(storageKey));
+        if (blobs.isEmpty() || compressed == null) {
+            storageBackend.put(storageKey, incoming, size);
+            return;
+        }
+        if (storageBackend.stat(storageKey).isPresent()) {
+            Files.deleteIfExists(incoming);  // content stored meanwhile, raw or not
+            return;
+        }
+
+        storageBackend.put(storageKey, compressed.path(), compressed.storedSize());
+        BlobModel blob = blobs.get(0);
+        blob.setCodec(GZIP);
+        blob.setStoredSize(compressed.storedSize());
+        Files.deleteIfExists(incoming);
+    }
+
+    // The content type decides when it is conclusive, otherwise a deflate of the first 64 KB does
+    private static boolean worthCompressing(String contentType, Path incoming) throws IOException {
+        String type = contentType != null ? contentType.toLowerCase() : "";
+        if (COMPRESSED_TYPES.stream().anyMatch(type::contains) && !type.contains("svg")) {
+            return false;
+        }
+        if (COMPRESSIBLE_TYPES.stream().anyMatch(type::contains)) {
+            return true;
+        }
+
+        byte[] sample;
+        try (InputStream in = Files.newInputStream(incoming)) {
+            sample = in.readNBytes(SAMPLE_SIZE);
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(sample);
+            deflater.finish();
+            byte[] out = new byte[sample.length + 64];
+            long compressed = 0;
+            while (!deflater.finished()) {
+                compressed += deflater.deflate(out);
+            }
+            return compressed < sample.length * SAMPLE_RATIO;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Codec of a stored blob, empty when it is stored raw */
+    public Optional<String> codecOf(String storageKey) {
+        return blobRepository.findById(storageKey).map(BlobModel::getCodec);
+    }
+
+    /** Codecs of many blobs at once, keyed by storage key; raw blobs are left out */
+    public Map<String, String> codecsOf(Collection<String> storageKeys) {
+        List<String> keys = new ArrayList<>(storageKeys);
+        Map<String, String> codecs = new HashMap<>();
+        for (int i = 0; i < keys.size(); i += IN_CLAUSE_CHUNK) {
+            for (BlobModel blob : blobRepository.findAllById(keys.subList(i, Math.min(i + IN_CLAUSE_CHUNK, keys.size())))) {
+                if (blob.getCodec() != null) {
+                    codecs.put(blob.getStorageKey(), blob.getCodec());
+                }
+            }
+        }
+        return codecs;
+    }
+
+    /** The original content of a blob, decompressed on the fly when stored with a codec */
+    public InputStream openDecoded(String storageKey, String codec) throws IOException {
+        return decode(storageBackend.open(storageKey), codec);
+    }
+
+    /** Wrap stored bytes so they read as the original content */
+    public static InputStream decode(InputStream stored, String codec) throws IOException {
+        if (codec == null) {
+            return stored;
+        }
+        if (!GZIP.equals(codec)) {
+            stored.close();
+            throw new IOException("Unknown codec " + codec);
+        }
+        return new GZIPInputStream(stored, BUFFER_SIZE);
+    }
+
+    /** A gzipped copy of an incoming file and its size */
+    public record Compressed(Path path, long storedSize) {
+    }
+
+    /** Whether the client takes gzip as a content coding (Accept-Encoding, q > 0) */
+    public static boolean acceptsGzip(HttpHeaders requestHeaders) {
+        for (String header : requestHeaders.getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+            for (String coding : header.split(",")) {
+                String[] parts = coding.trim().split(";");
+                if (!parts[0].trim().equalsIgnoreCase(GZIP) && !parts[0].trim().equals("*")) {
+                    continue;
+                }
+                boolean refused = parts.length > 1 && parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+                if (!refused) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
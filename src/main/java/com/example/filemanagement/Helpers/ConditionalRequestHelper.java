@@ -0,0 +1,84 @@
+package com.example.filemanagement.Helpers;
+
+import org.springframework.http.HttpHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HexFormat;
+import java.util.List;
+
+/** ETag / Last-Modified validators and the If-None-Match, If-Modified-Since and If-Range checks */
+public final class ConditionalRequestHelper {
+
+    private ConditionalRequestHelper() {
+    }
+
+    /** Strong ETag from a content hash, null when the hash is unknown */
+    public static String strongEtag(String contentHash) {
+        return contentHash != null ? "\"" + contentHash + "\"" : null;
+    }
+
+    /** Strong ETag of a content-coded representation; it must differ from the identity one */
+    public static String strongEtag(String contentHash, String contentEncoding) {
+        return contentHash != null ? "\"" + contentHash + "-" + contentEncoding + "\"" : null;
+    }
+
+    /** Weak ETag over a list of values that change whenever the listing does */
+    public static String weakEtag(List<?> parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Object part : parts) {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return "W/\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Epoch millis (second precision, as in HTTP dates) or -1 */
+    public static long toHttpMillis(LocalDateTime time) {
+        if (time == null) {
+            return -1;
+        }
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() / 1000 * 1000;
+    }
+
+    /** If-None-Match wins over If-Modified-Since, as RFC 9110 asks */
+    public static boolean isNotModified(HttpHeaders requestHeaders, String etag, long lastModified) {
+        List<String> ifNoneMatch = requestHeaders.getIfNoneMatch();
+        if (!ifNoneMatch.isEmpty()) {
+            return etag != null && ifNoneMatch.stream().anyMatch(candidate -> candidate.equals("*") || weakMatch(candidate, etag));
+        }
+        long ifModifiedSince = requestHeaders.getIfModifiedSince();
+        return ifModifiedSince != -1 && lastModified != -1 && lastModified <= ifModifiedSince;
+    }
+
+    /** Whether a Range header may be honoured: no If-Range, or one that still matches the representation */
+    public static boolean ifRangeMatches(HttpHeaders requestHeaders, String etag, long lastModified) {
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return etag != null && !ifRange.startsWith("W/") && ifRange.equals(etag);  // If-Range needs a strong match
+        }
+        try {
+            return lastModified != -1 && lastModified == requestHeaders.getFirstDate(HttpHeaders.IF_RANGE);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static boolean weakMatch(String a, String b) {
+        return stripWeak(a).equals(stripWeak(b));
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+}
@@ -1,31 +1,82 @@
 package com.example.filemanagement.Helpers;
 
 import com.example.filemanagement.DTOs.FileDto;
+import com.example.filemanagement.Models.BlobModel;
 import com.example.filemanagement.Models.FileModel;
 import com.example.filemanagement.Models.FolderModel;
 import com.example.filemanagement.Models.UserModel;
+import com.example.filemanagement.Repositories.BlobRepository;
 import com.example.filemanagement.Repositories.FileRepository;
-import org.springframework.beans.factory.annotation.Value;
+import com.example.filemanagement.Storage.BlobReadCache;
+import com.example.filemanagement.Storage.StorageBackend;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.time.LocalDateTime;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Component
 public class FileHelper {
 
-    @Value("${file.upload-dir}")
-    private String uploadDir;
+    private static final Logger log = LoggerFactory.getLogger(FileHelper.class);
+
+    private static final String INCOMING_PREFIX = "incoming-";
+    private static final String UPLOAD_PART_PREFIX = "upload-";
+    private static final int IN_CLAUSE_CHUNK = 1000;
+    private static final int HASH_BUFFER_SIZE = 1024 * 1024;
 
     private final FileRepository fileRepository;
+    private final BlobRepository blobRepository;
+    private final StorageKeyResolver storageKeyResolver;
+    private final StorageBackend storageBackend;
+    private final CompressionHelper compressionHelper;
+    private final BlobReadCache blobReadCache;
+    private final FolderListingCache folderListingCache;
+    private final FolderRollupHelper folderRollupHelper;
+    private final TransactionTemplate newTransaction;
 
-    public FileHelper(FileRepository fileRepository) {
+    public FileHelper(FileRepository fileRepository, BlobRepository blobRepository,
+                      StorageKeyResolver storageKeyResolver, StorageBackend storageBackend,
+                      CompressionHelper compressionHelper, BlobReadCache blobReadCache,
+                      FolderListingCache folderListingCache, FolderRollupHelper folderRollupHelper,
+                      PlatformTransactionManager transactionManager) {
         this.fileRepository = fileRepository;
+        this.blobRepository = blobRepository;
+        this.storageKeyResolver = storageKeyResolver;
+        this.storageBackend = storageBackend;
+        this.compressionHelper = compressionHelper;
+        this.blobReadCache = blobReadCache;
+        this.folderListingCache = folderListingCache;
+        this.folderRollupHelper = folderRollupHelper;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);  // after commit, the old one is done
     }
 
     /** Generate unique storage key */
@@ -41,23 +92,229 @@ public class FileHelper {
         return "";
     }
 
-    /** Save file to disk (flat storage) and return storage key */
-    public String saveFileToDisk(MultipartFile file) throws IOException {
-        String storageKey = generateStorageKey(file.getOriginalFilename());
-        Path uploadPath = Paths.get(uploadDir);
-        Files.createDirectories(uploadPath);
+    /** Save file to content-addressed storage, hashing it on the way */
+    public StoredBlob saveFileToDisk(MultipartFile file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            String contentType = file.getContentType() != null ? file.getContentType() : guessContentType(file.getOriginalFilename());
+            return saveStreamToDisk(in, file.getOriginalFilename(), contentType);
+        }
+    }
+
+    /** Copy a stream into content-addressed storage until it ends; identical content is kept once. The stream is left open */
+    public StoredBlob saveStreamToDisk(InputStream in, String originalFilename, String contentType) throws IOException {
+        Path incoming = prepareIncomingPath(newIncomingKey());
+        MessageDigest digest = newDigest();
+
+        long size;
+        try {
+            size = Files.copy(new DigestInputStream(in, digest), incoming);
+        } catch (IOException e) {
+            Files.deleteIfExists(incoming);
+            throw e;
+        }
+        return commitBlob(incoming, HexFormat.of().formatHex(digest.digest()), size, contentType);
+    }
+
+    /** Key for a blob still being written, before its hash is known; same directory so committing it is a rename */
+    public static String newIncomingKey() {
+        return INCOMING_PREFIX + UUID.randomUUID();
+    }
+
+    /** Incoming key of a resumable upload session's part file, written in place chunk by chunk */
+    public static String uploadPartKey(String sessionId) {
+        return INCOMING_PREFIX + UPLOAD_PART_PREFIX + sessionId;
+    }
+
+    /** Session id of an upload part file's key, null for any other incoming blob */
+    public static String uploadSessionIdOf(String incomingKey) {
+        String prefix = INCOMING_PREFIX + UPLOAD_PART_PREFIX;
+        return incomingKey.startsWith(prefix) ? incomingKey.substring(prefix.length()) : null;
+    }
+
+    /** SHA-256 (hex) of a file already on disk, read sequentially through one direct buffer */
+    public static String hashFile(Path path) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /** Turn a completely written incoming file into the shared blob for its hash and take one reference to it */
+    public StoredBlob commitBlob(Path incoming, String contentHash, long size, String contentType) throws IOException {
+        CompressionHelper.Compressed compressed = compressionHelper.compress(contentHash, incoming, size, contentType).orElse(null);  // before the row is locked
+        try {
+            blobRepository.acquire(contentHash, size);  // reference first: a concurrent release of this content waits on the row, then sees it in use
+
+            try {
+                compressionHelper.store(contentHash, incoming, size, compressed);  // kept once: an already stored hash just drops the incoming file
+            } catch (IOException | RuntimeException e) {
+                releaseUnsaved(List.of(contentHash));  // nothing will point at it
+                throw e;
+            }
+        } finally {
+            if (compressed != null) {
+                Files.deleteIfExists(compressed.path());  // only left over when it wasn't stored
+            }
+        }
+        deleteBlobFilesOnRollback(List.of(contentHash));
+        return new StoredBlob(contentHash, size, contentHash);
+    }
+
+    /**
+     * Drop one reference per storage key (a key may repeat) and delete blobs nobody uses anymore.
+     * Keys without a blob row predate content addressing and belong to a single file, so they go right away.
+     * Rows go with the transaction, their files only once it commits.
+     */
+    @Transactional
+    public void releaseBlobs(List<String> storageKeys) {
+        Map<String, Long> releases = storageKeys.stream()
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+        List<String> keys = new ArrayList<>(releases.keySet());
+        List<String> unused = new ArrayList<>();
+
+        for (int i = 0; i < keys.size(); i += IN_CLAUSE_CHUNK) {
+            List<String> chunk = keys.subList(i, Math.min(i + IN_CLAUSE_CHUNK, keys.size()));
+            Set<String> shared = new HashSet<>();
+            List<BlobModel> unreferenced = new ArrayList<>();
+
+            for (BlobModel blob : blobRepository.lockAllByStorageKeyIn(chunk)) {
+                shared.add(blob.getStorageKey());
+                blob.setRefCount(blob.getRefCount() - releases.get(blob.getStorageKey()));
+                if (blob.getRefCount() <= 0) {
+                    unreferenced.add(blob);
+                    unused.add(blob.getStorageKey());
+                }
+            }
+            for (String key : chunk) {
+                if (!shared.contains(key)) {
+                    unused.add(key);
+                }
+            }
+            blobRepository.deleteAll(unreferenced);
+        }
+        deleteBlobFilesAfterCommit(unused);
+    }
+
+    /** Take back references whose file rows were never saved; inside a transaction its rollback already does */
+    public void releaseUnsaved(List<String> storageKeys) {
+        if (storageKeys.isEmpty() || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return;
+        }
+        try {
+            newTransaction.executeWithoutResult(status -> releaseBlobs(storageKeys));
+        } catch (RuntimeException e) {
+            log.warn("Could not release {} unsaved blobs, leaving them to the garbage collector: {}", storageKeys.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Delete the stored files of blobs whose rows are gone, once the transaction that removed the rows commits
+     * (right away outside of one), so a rollback never leaves a row without its file. A file that can't be
+     * deleted is left to the garbage collector.
+     */
+    public void deleteBlobFilesAfterCommit(Collection<String> storageKeys) {
+        if (storageKeys.isEmpty()) {
+            return;
+        }
+        List<String> keys = List.copyOf(storageKeys);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            deleteBlobFiles(keys);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                deleteBlobFiles(keys);
+            }
+        });
+    }
+
+    // a rollback takes back the reference; content nobody else had stored yet must not stay behind as a file
+    private void deleteBlobFilesOnRollback(List<String> keys) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    deleteBlobFiles(keys);
+                }
+            }
+        });
+    }
+
+    // the locking read covers keys without a row too: content uploaded again meanwhile keeps its file,
+    // and an upload of it from now on waits, then stores it afresh
+    private void deleteBlobFiles(List<String> keys) {
+        for (int i = 0; i < keys.size(); i += IN_CLAUSE_CHUNK) {
+            List<String> chunk = keys.subList(i, Math.min(i + IN_CLAUSE_CHUNK, keys.size()));
+            try {
+                newTransaction.executeWithoutResult(status -> {
+                    Set<String> acquired = new HashSet<>();
+                    for (BlobModel blob : blobRepository.lockAllByStorageKeyIn(chunk)) {
+                        acquired.add(blob.getStorageKey());
+                    }
+                    for (String key : chunk) {
+                        if (!acquired.contains(key)) {
+                            deleteBlobFile(key);
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                log.warn("Could not delete {} released blobs, leaving them to the garbage collector: {}", chunk.size(), e.getMessage());
+            }
+        }
+    }
+
+    private void deleteBlobFile(String storageKey) {
+        blobReadCache.invalidate(storageKey);
+        try {
+            storageBackend.delete(storageKey);
+        } catch (IOException e) {
+            log.warn("Could not delete stored file {}, leaving it to the garbage collector: {}", storageKey, e.getMessage());
+        }
+    }
+
+    /** SHA-256, the digest behind FileModel.contentHash */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-        Path filePath = uploadPath.resolve(storageKey);
-        file.transferTo(filePath.toFile());
-        return storageKey;
+    /** Local path an incoming blob is written to before it is committed, whatever the backend; flat in the upload root */
+    public Path prepareIncomingPath(String incomingKey) throws IOException {
+        Files.createDirectories(storageKeyResolver.getRoot());
+        return storageKeyResolver.flatPath(incomingKey);
+    }
+
+    /** Whether a file name in the upload root is an incoming blob rather than a stored one */
+    public static boolean isIncomingKey(String name) {
+        return name.startsWith(INCOMING_PREFIX);
+    }
+
+    /** Guess a content type from the file name alone */
+    public static String guessContentType(String filename) {
+        String type = URLConnection.guessContentTypeFromName(filename);
+        return type != null ? type : "application/octet-stream";
     }
 
     /** Build FileModel */
-    public FileModel buildFileModel(MultipartFile file, String storageKey, FolderModel folder, UserModel user) {
+    public FileModel buildFileModel(MultipartFile file, StoredBlob blob, FolderModel folder, UserModel user) {
         return FileModel.builder()
                 .name(file.getOriginalFilename())
-                .storageKey(storageKey)
-                .size(file.getSize())
+                .storageKey(blob.storageKey())
+                .size(blob.size())
+                .contentHash(blob.contentHash())
                 .type(file.getContentType())
                 .deletedAt(null)
                 .folder(folder)
@@ -65,6 +322,20 @@ public class FileHelper {
                 .build();
     }
 
+    /** Build FileModel for content that was stored without a MultipartFile */
+    public FileModel buildFileModel(String name, String contentType, StoredBlob blob, FolderModel folder, UserModel user) {
+        return FileModel.builder()
+                .name(name)
+                .storageKey(blob.storageKey())
+                .size(blob.size())
+                .contentHash(blob.contentHash())
+                .type(contentType)
+                .deletedAt(null)
+                .folder(folder)
+                .uploadedBy(user)
+                .build();
+    }
+
     /** Map FileModel to FileDto */
     public FileDto mapToDto(FileModel fileModel) {
         FileDto dto = new FileDto();
@@ -76,13 +347,25 @@ public class FileHelper {
         dto.setCreatedAt(fileModel.getCreatedAt());
         dto.setModifiedAt(fileModel.getModifiedAt());
         dto.setDeletedAt(fileModel.getDeletedAt());
-        dto.setFolderId(fileModel.getFolder() != null ? fileModel.getFolder().getId() : null);
+        dto.setFolderId(folderIdOf(fileModel));
         dto.setUploadedBy(fileModel.getUploadedBy().getId());
         return dto;
     }
 
-    /** Save FileModel to DB */
+    /** Id of the folder a file is in, null at the top level */
+    public static Long folderIdOf(FileModel fileModel) {
+        return fileModel.getFolder() != null ? fileModel.getFolder().getId() : null;
+    }
+
+    /** Save a new FileModel to DB and add it to its folders' rollups */
     public FileModel saveFileModel(FileModel fileModel) {
-        return fileRepository.save(fileModel);
+        FileModel saved = fileRepository.save(fileModel);
+        folderListingCache.invalidate(folderIdOf(saved));  // shows up in its folder's listing
+        folderRollupHelper.apply(folderIdOf(saved), saved.getDeletedAt(), FolderRollupHelper.of(saved));
+        return saved;
+    }
+
+    /** Where a blob ended up, how many bytes it holds and their SHA-256 (hex, when computed) */
+    public record StoredBlob(String storageKey, long size, String contentHash) {
     }
 }
@@ -6,37 +6,45 @@ import com.example.filemanagement.Models.FolderModel;
 import com.example.filemanagement.Models.UserModel;
 import com.example.filemanagement.Repositories.FileRepository;
 import com.example.filemanagement.Repositories.FolderRepository;
-import jakarta.validation.constraints.NotNull;
-import org.apache.commons.io.IOUtils;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.transaction.annotation.Transactional;
 
 
-import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 @Component
 public class FolderHelper {
 
-    @Value("${file.upload-dir}") // e.g., "/uploads"
-    private String uploadDir;
+    private static final int IN_CLAUSE_CHUNK = 1000;
 
     private final FolderRepository folderRepository;
     private final FileRepository fileRepository;
     private final FileHelper fileHelper;
-
-    public FolderHelper(FolderRepository folderRepository, FileRepository fileRepository, FileHelper fileHelper) {
+    private final CompressionHelper compressionHelper;
+    private final FolderListingCache folderListingCache;
+    private final FolderRollupHelper folderRollupHelper;
+    private final UploadSessionPurger uploadSessionPurger;
+
+    public FolderHelper(FolderRepository folderRepository, FileRepository fileRepository, FileHelper fileHelper,
+                        CompressionHelper compressionHelper, FolderListingCache folderListingCache,
+                        FolderRollupHelper folderRollupHelper, UploadSessionPurger uploadSessionPurger) {
         this.folderRepository = folderRepository;
         this.fileRepository = fileRepository;
         this.fileHelper = fileHelper;
+        this.compressionHelper = compressionHelper;
+        this.folderListingCache = folderListingCache;
+        this.folderRollupHelper = folderRollupHelper;
+        this.uploadSessionPurger = uploadSessionPurger;
     }
 
     public FolderDto mapToDto(FolderModel model) {
@@ -56,6 +64,10 @@ public class FolderHelper {
         dto.setModifiedAt(model.getModifiedAt());
         dto.setDeletedAt(model.getDeletedAt());
 
+        dto.setTotalSize(model.getTotalSize());
+        dto.setFileCount(model.getFileCount());
+        dto.setFolderCount(model.getFolderCount());
+
         return dto;
     }
 
@@ -87,213 +99,242 @@ public class FolderHelper {
         return model;
     }
 
-    public void addFolderToZip(FolderModel folder, String parentPath, ZipOutputStream zos) throws IOException {
-        String folderPath = parentPath + folder.getName() + "/";
+    /** Path of a folder created directly under the given parent (null = top level) */
+    public static String childPath(FolderModel parent) {
+        return parent == null ? "/" : parent.descendantPathPrefix();
+    }
 
-        zos.putNextEntry(new ZipEntry(folderPath)); //Add folder entry itself (even if empty)
-        zos.closeEntry();
+    /** Id of a folder's parent, null at the top level */
+    public static Long parentIdOf(FolderModel folder) {
+        return folder.getParentFolder() != null ? folder.getParentFolder().getId() : null;
+    }
 
-        List<FolderModel> subFolders = folderRepository.findByParentFolderAndDeletedAtIsNull(folder);  //Add subfolders recursively (not deleted)
-        for (FolderModel subFolder : subFolders) {
-            addFolderToZip(subFolder, folderPath, zos);
-        }
+    /** Whether folder lies somewhere below ancestor (a folder is not below itself) */
+    public static boolean isDescendantOf(FolderModel folder, FolderModel ancestor) {
+        return folder.getPath().startsWith(ancestor.descendantPathPrefix());
+    }
 
-        List<FileModel> files = fileRepository.findByFolderAndDeletedAtIsNull(folder);   //Add files inside this folder (not deleted)
-        for (FileModel file : files) {
-            Path filePath = Paths.get(uploadDir).resolve(file.getStorageKey()).normalize();
-            if (Files.exists(filePath)) {
-                ZipEntry zipEntry = new ZipEntry(folderPath + file.getName());
-                zos.putNextEntry(zipEntry);
-                Files.copy(filePath, zos);
-                zos.closeEntry();
+    /** Move a folder under a new parent and rewrite the paths of its whole subtree */
+    @Transactional
+    public FolderModel moveFolder(FolderModel folder, FolderModel newParent) {
+        String oldPrefix = folder.descendantPathPrefix();
+        Long newParentId = newParent != null ? newParent.getId() : null;
+        folderListingCache.invalidate(folder.getId(), parentIdOf(folder), newParentId);  // leaves one listing, joins another
+        folderRollupHelper.transfer(parentIdOf(folder), folder.getDeletedAt(), newParentId, folder.getDeletedAt(),
+                folderRollupHelper.lockedOf(folder));  // its whole subtree moves between the two ancestor chains
+
+        folder.setParentFolder(newParent);
+        folder.setPath(childPath(newParent));
+        FolderModel saved = folderRepository.save(folder);
+
+        folderRepository.rewritePathPrefix(oldPrefix, oldPrefix.length(), saved.descendantPathPrefix());
+        return saved;
+    }
+
+    /** Ids of a folder's ancestors from the top level down, read from its path */
+    public static List<Long> ancestorIds(FolderModel folder) {
+        List<Long> ids = new ArrayList<>();
+        for (String part : folder.getPath().split("/")) {
+            if (!part.isEmpty()) {
+                ids.add(Long.valueOf(part));
             }
         }
+        return ids;
     }
 
-    public void softDeleteFolderRecursively(FolderModel folder) {
-        LocalDateTime now = LocalDateTime.now();
-
-        // mark this folder deleted
-        folder.setDeletedAt(now);
-        folderRepository.save(folder);
+    /** Ancestors of a folder from the top level down, itself included, fetched in one query */
+    public List<FolderModel> getBreadcrumb(FolderModel folder) {
+        List<Long> ids = ancestorIds(folder);
 
-        // mark all files in this folder deleted
-        List<FileModel> files = fileRepository.findByFolderAndDeletedAtIsNull(folder);
-        for (FileModel file : files) {
-            file.setDeletedAt(now);
-            fileRepository.save(file);
+        Map<Long, FolderModel> ancestors = new HashMap<>();
+        for (FolderModel ancestor : folderRepository.findAllById(ids)) {
+            ancestors.put(ancestor.getId(), ancestor);
         }
 
-        // mark all subfolders deleted (recursive)
-        List<FolderModel> subFolders = folderRepository.findByParentFolderAndDeletedAtIsNull(folder);
-        for (FolderModel subFolder : subFolders) {
-            softDeleteFolderRecursively(subFolder);
+        List<FolderModel> breadcrumb = new ArrayList<>();
+        for (Long id : ids) {
+            breadcrumb.add(ancestors.get(id));
         }
+        breadcrumb.add(folder);
+        return breadcrumb;
     }
 
-    public void deleteFolderRecursively(FolderModel folder) {
-        // delete all files in this folder
-        List<FileModel> files = fileRepository.findByFolder(folder);
-        for (FileModel file : files) {
-            fileRepository.delete(file);
-        }
+    /** Load a folder's whole subtree (folders + files) in a constant number of queries */
+    @Transactional(readOnly = true)
+    public FolderTree loadSubtree(FolderModel root) {
+        List<FolderModel> folders = folderRepository.findSubtree(root.getId(), root.descendantPathPrefix());
+        List<FileModel> files = fileRepository.findInSubtree(root.getId(), root.descendantPathPrefix());
+        return new FolderTree(root, folders, files);
+    }
 
-        // delete all subfolders (recursive)
-        List<FolderModel> subFolders = folderRepository.findByParentFolder(folder);
-        for (FolderModel subFolder : subFolders) {
-            deleteFolderRecursively(subFolder);
-        }
+    public void addFolderToZip(FolderTree tree, FolderModel folder, String parentPath, ZipOutputStream zos) throws IOException {
+        addFolderToZip(tree, folder, parentPath, zos, JobProgress.NONE);
+    }
 
-        // delete this folder itself
-        folderRepository.delete(folder);
+    /** Same, reporting each folder and file written (with its bytes) to progress */
+    public void addFolderToZip(FolderTree tree, FolderModel folder, String parentPath, ZipOutputStream zos,
+                               JobProgress progress) throws IOException {
+        Map<String, String> codecs = compressionHelper.codecsOf(tree.getFiles().stream().map(FileModel::getStorageKey).distinct().toList());
+        addFolderToZip(tree, codecs, folder, parentPath, zos, progress);
     }
 
-    public void restoreFolderRecursively(FolderModel folder) {
-        // restore this folder
-        folder.setDeletedAt(null);
-        folderRepository.save(folder);
+    private void addFolderToZip(FolderTree tree, Map<String, String> codecs, FolderModel folder, String parentPath,
+                                ZipOutputStream zos, JobProgress progress) throws IOException {
+        String folderPath = parentPath + folder.getName() + "/";
 
-        // restore all files inside this folder
-        List<FileModel> files = fileRepository.findByFolder(folder);
-        for (FileModel file : files) {
-            if (file.getDeletedAt() != null) {
-                file.setDeletedAt(null);
-                fileRepository.save(file);
+        zos.putNextEntry(new ZipEntry(folderPath)); //Add folder entry itself (even if empty)
+        zos.closeEntry();
+        progress.add(1, 0);
+
+        for (FolderModel subFolder : tree.getChildFolders(folder)) {  //Add subfolders recursively (not deleted)
+            if (subFolder.getDeletedAt() == null) {
+                addFolderToZip(tree, codecs, subFolder, folderPath, zos, progress);
             }
         }
 
-        // restore all subfolders (recursive)
-        List<FolderModel> subFolders = folderRepository.findByParentFolder(folder);
-        for (FolderModel subFolder : subFolders) {
-            if (subFolder.getDeletedAt() != null) {
-                restoreFolderRecursively(subFolder);
+        for (FileModel file : tree.getFiles(folder)) {   //Add files inside this folder (not deleted)
+            if (file.getDeletedAt() != null) {
+                continue;
+            }
+            try (InputStream in = compressionHelper.openDecoded(file.getStorageKey(), codecs.get(file.getStorageKey()))) {  // zip entries hold the original bytes
+                ZipEntry zipEntry = new ZipEntry(folderPath + file.getName());
+                zos.putNextEntry(zipEntry);
+                long bytes = in.transferTo(zos);
+                zos.closeEntry();
+                progress.add(1, bytes);
+            } catch (NoSuchFileException e) {
+                // blob missing from storage: leave the entry out
             }
         }
     }
 
-    //Process directories found on extracted zip file
-    public void processDirectory(File directory, FolderModel parentFolder, UserModel user) throws IOException {
-        FolderModel currentFolder = folderRepository.findByNameAndParentFolder(directory.getName(), parentFolder)  //check for folder already exist ( same name under same parentFolder )
-                .orElseGet(() -> {                                      //if no existing folder found, create new Folder Record
-                    FolderModel newFolder = FolderModel.builder()
-                            .name(directory.getName())
-                            .parentFolder(parentFolder)
-                            .createdBy(user)
-                            .build();
-                    return folderRepository.save(newFolder);
-                });
-
-        File[] contents = directory.listFiles();  // get content ( files and folders) of the current directory
-        if (contents != null) {  // if it has content
-            for (File item : contents) {  // recursively handle them
-                if (item.isDirectory()) {
-                    processDirectory(item, currentFolder, user);
-                } else {
-                    processFile(item, currentFolder, user);
-                }
-            }
-        }
+    /** Bin a folder with everything below it in two set-based updates sharing one timestamp */
+    @Transactional
+    public SubtreeUpdate softDeleteFolderRecursively(FolderModel folder) {
+        return softDeleteFolderRecursively(folder, JobProgress.NONE);
     }
 
-    //process files found in content array
-    public void processFile(File file, FolderModel folder, UserModel user) throws IOException {
-        try (FileInputStream input = new FileInputStream(file)) {  // get file content from input stram
-            MultipartFile multipartFile = new MockMultipartFile(   // create new multipart file using input stream of the file
-                    file.getName(),
-                    file.getName(),
-                    Files.probeContentType(file.toPath()),
-                    input
-            );
-
-            String storageKey = fileHelper.saveFileToDisk(multipartFile);   // save file into disk and get storageKey
-            FileModel fileModel = fileHelper.buildFileModel(multipartFile, storageKey, folder, user); // crate a file Model
-            fileHelper.saveFileModel(fileModel);  // save the file model in the DB
+    /** Same, for a job: the updates go a chunk of folders at a time, reporting the items and bytes of each to progress */
+    @Transactional
+    public SubtreeUpdate softDeleteFolderRecursively(FolderModel folder, JobProgress progress) {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);  // what the column keeps, so restore can match it
+        List<Long> subtreeIds = invalidateSubtree(folder);
+        // inside the subtree everything stays counted (binned together); only its totals leave the ancestors
+        folderRollupHelper.transfer(parentIdOf(folder), folder.getDeletedAt(), parentIdOf(folder),
+                folder.getDeletedAt() != null ? folder.getDeletedAt() : now, folderRollupHelper.lockedOf(folder));
+
+        if (progress == JobProgress.NONE) {
+            int files = fileRepository.softDeleteInSubtree(folder.getId(), folder.descendantPathPrefix(), now);
+            int folders = folderRepository.softDeleteSubtree(folder.getId(), folder.descendantPathPrefix(), now);
+            return new SubtreeUpdate(folders, files);
+        }
+        int files = 0;
+        int folders = 0;
+        for (List<Long> chunk : partition(subtreeIds)) {
+            int chunkFiles = fileRepository.softDeleteInFolders(chunk, now);
+            int chunkFolders = folderRepository.softDeleteByIds(chunk, now);
+            progress.add(chunkFiles + chunkFolders, fileRepository.sumSizeInFoldersDeletedAt(chunk, now));
+            files += chunkFiles;
+            folders += chunkFolders;
         }
+        return new SubtreeUpdate(folders, files);
     }
 
-    public void extractZip(ZipInputStream zipIn, File destDir) throws IOException {
-        ZipEntry entry; // one item
-        byte[] buffer = new byte[4096];
-
-        while ((entry = zipIn.getNextEntry()) != null) {  // check next entry ( file or folder ) exist then
-            File newFile = new File(destDir, entry.getName());  // get name of the next entry ( path/name.type)
-
-            if (!newFile.toPath().normalize().startsWith(destDir.toPath().normalize())) { // Ensure the file will be created inside destDir ( path should start with destDir)
-                throw new IOException("Entry is outside of target directory: " + entry.getName());
-            }
+    @Transactional
+    public void deleteFolderRecursively(FolderModel folder) {
+        deleteFolderRecursively(folder, JobProgress.NONE);
+    }
 
-            if (entry.isDirectory()) {  // if entry ends with "/"
-                if (!newFile.isDirectory() && !newFile.mkdirs()) {  // create new directory
-                    throw new IOException("Failed to create directory " + newFile);
-                }
-            } else {  // entry is a file
-                File parent = newFile.getParentFile();  // set parent as current directory
-                if (!parent.isDirectory() && !parent.mkdirs()) {  // parent folder is Not existed
-                    throw new IOException("Failed to create directory " + parent);
-                }
-
-                try (FileOutputStream fos = new FileOutputStream(newFile)) { // Write file contents
-                    int len;
-                    while ((len = zipIn.read(buffer)) > 0) {
-                        fos.write(buffer, 0, len);
-                    }
-                }
-            }
-            zipIn.closeEntry();
+    /** Delete a folder and everything below it for good, reporting each chunk of files and folders deleted to progress */
+    @Transactional
+    public void deleteFolderRecursively(FolderModel folder, JobProgress progress) {
+        FolderTree tree = loadSubtree(folder);
+        List<Long> touched = new ArrayList<>(tree.getFolders().stream().map(FolderModel::getId).toList());
+        touched.add(parentIdOf(folder));
+        folderListingCache.invalidate(touched);
+        folderRollupHelper.apply(parentIdOf(folder), folder.getDeletedAt(), folderRollupHelper.lockedOf(folder).negate());
+
+        // delete all files of the subtree
+        Map<Long, Long> sizes = new HashMap<>();
+        for (FileModel file : tree.getFiles()) {
+            sizes.put(file.getId(), file.getSize() != null ? file.getSize() : 0L);
         }
-    }
-    // Helper class for converting File to MultipartFile
-    public static class MockMultipartFile implements MultipartFile {
-        private final String name;
-        private final String originalFilename;
-        private final String contentType;
-        private final byte[] content;
-
-        public MockMultipartFile(String name, String originalFilename, String contentType, FileInputStream contentStream)
-                throws IOException {
-            this.name = name;
-            this.originalFilename = originalFilename;
-            this.contentType = contentType;
-            this.content = IOUtils.toByteArray(contentStream);
+        List<Long> fileIds = tree.getFiles().stream().map(FileModel::getId).toList();
+        for (List<Long> chunk : partition(fileIds)) {
+            fileRepository.deleteByIds(chunk);
+            progress.add(chunk.size(), chunk.stream().mapToLong(sizes::get).sum());
         }
 
-        @Override
-        public String getName() {
-            return name;
+        // uploads still going into the subtree are aborted, they would have nowhere to land
+        List<Long> folderIds = tree.getFolders().stream().map(FolderModel::getId).toList();
+        for (List<Long> chunk : partition(folderIds)) {
+            uploadSessionPurger.purgeInFolders(chunk);
         }
 
-        @Override
-        public String getOriginalFilename() {
-            return originalFilename;
+        // unlink the folders from each other first so they can go in any order, then delete them
+        for (List<Long> chunk : partition(folderIds)) {
+            folderRepository.detachParents(chunk);
         }
-
-        @Override
-        public String getContentType() {
-            return contentType;
+        for (List<Long> chunk : partition(folderIds)) {
+            folderRepository.deleteByIds(chunk);
+            progress.add(chunk.size(), 0);
         }
 
-        @Override
-        public boolean isEmpty() {
-            return content.length == 0;
-        }
+        // give back their blobs; content still used by other files stays
+        fileHelper.releaseBlobs(tree.getFiles().stream().map(FileModel::getStorageKey).toList());
+    }
 
-        @Override
-        public long getSize() {
-            return content.length;
-        }
+    /** Restore what was binned together with this folder; items binned separately before stay in the bin */
+    @Transactional
+    public SubtreeUpdate restoreFolderRecursively(FolderModel folder) {
+        return restoreFolderRecursively(folder, JobProgress.NONE);
+    }
 
-        @Override
-        public byte[] getBytes() throws IOException {
-            return content;
+    /** Same, for a job: a chunk of folders at a time, reporting the items and bytes of each to progress */
+    @Transactional
+    public SubtreeUpdate restoreFolderRecursively(FolderModel folder, JobProgress progress) {
+        LocalDateTime deletedAt = folder.getDeletedAt();
+        List<Long> subtreeIds = invalidateSubtree(folder);
+        folderRollupHelper.transfer(parentIdOf(folder), deletedAt, parentIdOf(folder), null, folderRollupHelper.lockedOf(folder));  // frozen totals come back
+
+        if (progress == JobProgress.NONE) {
+            int files = fileRepository.restoreInSubtree(folder.getId(), folder.descendantPathPrefix(), deletedAt);
+            int folders = folderRepository.restoreSubtree(folder.getId(), folder.descendantPathPrefix(), deletedAt);
+            return new SubtreeUpdate(folders, files);
         }
-
-        public InputStream getInputStream() throws IOException {
-            return new ByteArrayInputStream(content);
+        int files = 0;
+        int folders = 0;
+        for (List<Long> chunk : partition(subtreeIds)) {
+            long bytes = fileRepository.sumSizeInFoldersDeletedAt(chunk, deletedAt);  // before they leave the bin
+            int chunkFiles = fileRepository.restoreInFolders(chunk, deletedAt);
+            int chunkFolders = folderRepository.restoreByIds(chunk, deletedAt);
+            progress.add(chunkFiles + chunkFolders, bytes);
+            files += chunkFiles;
+            folders += chunkFolders;
         }
+        return new SubtreeUpdate(folders, files);
+    }
+
+    // binning or restoring a folder changes its parent's listing and every listing and details inside it; returns the subtree's ids
+    private List<Long> invalidateSubtree(FolderModel folder) {
+        List<Long> subtreeIds = folderRepository.findSubtreeIds(folder.getId(), folder.descendantPathPrefix());
+        List<Long> touched = new ArrayList<>(subtreeIds);
+        touched.add(parentIdOf(folder));
+        folderListingCache.invalidate(touched);
+        return subtreeIds;
+    }
+
+    /** Rows touched by a subtree-wide update */
+    public record SubtreeUpdate(int folders, int files) {
+    }
 
-        public void transferTo(File dest) throws IOException, IllegalStateException {
-            Files.write(dest.toPath(), content);
+    /** Split ids into IN-clause sized chunks */
+    private static List<List<Long>> partition(List<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += IN_CLAUSE_CHUNK) {
+            chunks.add(ids.subList(i, Math.min(i + IN_CLAUSE_CHUNK, ids.size())));
         }
+        return chunks;
     }
 
 }
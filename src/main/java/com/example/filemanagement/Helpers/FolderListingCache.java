@@ -0,0 +1,189 @@
+package com.example.filemanagement.Helpers;
+
+import com.example.filemanagement.DTOs.ContentDto;
+import com.example.filemanagement.DTOs.FolderDto;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Folder listings and details held in memory, one entry per folder id (ROOT for the top level) with every cached
+ * page of it. Folders are read far more often than written, so an entry stays until a mutation of that folder
+ * evicts it. Eviction runs after the mutating transaction commits, and a page is only stored into the entry it
+ * was looked up in, so a reader that queried before the commit can never put the old rows back.
+ */
+@Component
+public class FolderListingCache {
+
+    /** Key of the top-level listing, which has no folder id */
+    public static final long ROOT = 0L;
+
+    private static final int MAX_PAGES_PER_FOLDER = 16;
+
+    private final boolean enabled;
+    private final Cache<Long, Entry> cache;
+    private final AtomicLong epochs = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter invalidations;
+    private final Timer age;
+
+    public FolderListingCache(MeterRegistry meterRegistry,
+                              @Value("${listing.cache.enabled:true}") boolean enabled,
+                              @Value("${listing.cache.max-rows:200000}") long maxRows,
+                              @Value("${listing.cache.ttl-seconds:600}") long ttlSeconds) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxRows)
+                .weigher((Long key, Entry entry) -> entry.rows())
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))  // backstop for rows changed behind the application's back
+                .build();
+
+        // hit ratio = hits / (hits + misses); age of what a hit served is how stale it can be
+        this.hits = Counter.builder("folder.listing.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("folder.listing.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.invalidations = Counter.builder("folder.listing.cache.invalidations")
+                .description("Folders evicted by a mutation")
+                .register(meterRegistry);
+        this.age = Timer.builder("folder.listing.cache.age")
+                .description("Time since a served listing was read from the database")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("folder.listing.cache.hit.ratio", this, FolderListingCache::hitRatio)
+                .register(meterRegistry);
+        Gauge.builder("folder.listing.cache.rows", cache,
+                        c -> c.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L))
+                .description("Listed rows held by the cache")
+                .register(meterRegistry);
+    }
+
+    /** One page of a folder's listing (ROOT for the top level), read through the loader on a miss */
+    public ContentDto page(long folderId, Page page, Supplier<ContentDto> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        Entry entry = cache.get(folderId, key -> new Entry(epochs.incrementAndGet(), null, Map.of()));
+        Loaded<ContentDto> cached = entry.pages().get(page);
+        if (cached != null) {
+            return hit(cached);
+        }
+
+        misses.increment();
+        Loaded<ContentDto> loaded = load(loader);
+        cache.asMap().computeIfPresent(folderId,
+                (key, current) -> current.epoch() == entry.epoch() ? current.withPage(page, loaded) : current);
+        return loaded.value();
+    }
+
+    /** A folder's own details, read through the loader on a miss */
+    public FolderDto details(long folderId, Supplier<FolderDto> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        Entry entry = cache.get(folderId, key -> new Entry(epochs.incrementAndGet(), null, Map.of()));
+        if (entry.details() != null) {
+            return hit(entry.details());
+        }
+
+        misses.increment();
+        Loaded<FolderDto> loaded = load(loader);
+        cache.asMap().computeIfPresent(folderId,
+                (key, current) -> current.epoch() == entry.epoch() ? current.withDetails(loaded) : current);
+        return loaded.value();
+    }
+
+    /** Evict folders (null = top level) once the current transaction commits, or right away outside of one */
+    public void invalidate(Long... folderIds) {
+        invalidate(Arrays.asList(folderIds));
+    }
+
+    public void invalidate(Collection<Long> folderIds) {
+        Set<Long> keys = new HashSet<>();
+        for (Long folderId : folderIds) {
+            keys.add(folderId != null ? folderId : ROOT);
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evict(keys);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                evict(keys);  // after a rollback too: harmless
+            }
+        });
+    }
+
+    private void evict(Set<Long> keys) {
+        cache.invalidateAll(keys);
+        invalidations.increment(keys.size());
+    }
+
+    private <T> T hit(Loaded<T> cached) {
+        hits.increment();
+        age.record(System.nanoTime() - cached.loadedAt(), TimeUnit.NANOSECONDS);
+        return cached.value();
+    }
+
+    // timestamp taken before the query, so the age covers everything the rows could have missed
+    private static <T> Loaded<T> load(Supplier<T> loader) {
+        long loadedAt = System.nanoTime();
+        return new Loaded<>(loader.get(), loadedAt);
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total > 0 ? hits.count() / total : 0;
+    }
+
+    /** What a page is asked for with; the same parameters give the same page */
+    public record Page(String sort, String direction, Integer limit, String cursor) {
+    }
+
+    private record Loaded<T>(T value, long loadedAt) {
+    }
+
+    /** Everything cached for one folder; replaced, never changed, so the weigher sees each new size */
+    private record Entry(long epoch, Loaded<FolderDto> details, Map<Page, Loaded<ContentDto>> pages) {
+
+        Entry withDetails(Loaded<FolderDto> loaded) {
+            return new Entry(epoch, loaded, pages);
+        }
+
+        Entry withPage(Page page, Loaded<ContentDto> loaded) {
+            if (pages.size() >= MAX_PAGES_PER_FOLDER) {  // deep paging through a huge folder: leave it to the index
+                return this;
+            }
+            Map<Page, Loaded<ContentDto>> copy = new HashMap<>(pages);
+            copy.put(page, loaded);
+            return new Entry(epoch, details, copy);
+        }
+
+        int rows() {
+            int rows = 1 + (details != null ? 1 : 0);
+            for (Loaded<ContentDto> page : pages.values()) {
+                rows += page.value().getFolders().size() + page.value().getFiles().size();
+            }
+            return rows;
+        }
+    }
+}
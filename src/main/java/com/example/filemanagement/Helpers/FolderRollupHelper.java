@@ -0,0 +1,234 @@
+package com.example.filemanagement.Helpers;
+
+import com.example.filemanagement.Models.FileModel;
+import com.example.filemanagement.Models.FolderModel;
+import com.example.filemanagement.Repositories.FileRepository;
+import com.example.filemanagement.Repositories.FolderRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps every folder's subtree rollups (bytes, files, folders) current by adding deltas up its ancestor chain.
+ * An item counts toward its folder when both are live or both were binned together (same deletedAt). Binning or
+ * restoring a subtree then only moves its root's totals out of or into the ancestors, and the rollups of a binned
+ * folder stay frozen at what a restore brings back.
+ */
+@Component
+public class FolderRollupHelper {
+
+    private final FolderRepository folderRepository;
+    private final FileRepository fileRepository;
+    private final FolderListingCache folderListingCache;
+
+    public FolderRollupHelper(FolderRepository folderRepository, FileRepository fileRepository,
+                              FolderListingCache folderListingCache) {
+        this.folderRepository = folderRepository;
+        this.fileRepository = fileRepository;
+        this.folderListingCache = folderListingCache;
+    }
+
+    /** Whether an item with this deletedAt counts toward a folder with that one */
+    public static boolean counts(LocalDateTime itemDeletedAt, LocalDateTime folderDeletedAt) {
+        return Objects.equals(itemDeletedAt, folderDeletedAt);
+    }
+
+    /** What a file adds to each folder it counts toward */
+    public static Delta of(FileModel file) {
+        return new Delta(file.getSize() != null ? file.getSize() : 0, 1, 0);
+    }
+
+    /** What a folder adds to each folder it counts toward: its own rollups plus itself */
+    public static Delta of(FolderModel folder) {
+        return new Delta(folder.getTotalSize(), folder.getFileCount(), folder.getFolderCount() + 1);
+    }
+
+    /**
+     * What these folders add, read from their rows under a write lock: totals loaded earlier can miss changes committed
+     * below them since, and a change landing between the read and the move would be carried up the wrong chain.
+     */
+    @Transactional
+    public Map<Long, Delta> lockedOf(Collection<FolderModel> folders) {
+        Map<Long, Delta> deltas = new HashMap<>();
+        if (folders.isEmpty()) {
+            return deltas;
+        }
+        for (Object[] row : folderRepository.lockRollups(folders.stream().map(FolderModel::getId).toList())) {
+            deltas.put(((Number) row[0]).longValue(), new Delta(((Number) row[1]).longValue(),
+                    ((Number) row[2]).longValue(), ((Number) row[3]).longValue() + 1));
+        }
+        return deltas;
+    }
+
+    /** Same for a single folder */
+    @Transactional
+    public Delta lockedOf(FolderModel folder) {
+        Delta delta = lockedOf(List.of(folder)).get(folder.getId());
+        if (delta == null) {
+            throw new IllegalArgumentException("Folder not found with id: " + folder.getId());
+        }
+        return delta;
+    }
+
+    /** An item with this deletedAt came into (positive delta) or left (negative) a folder; null is the top level */
+    @Transactional
+    public void apply(Long folderId, LocalDateTime itemDeletedAt, Delta delta) {
+        applyAll(List.of(new Change(folderId, itemDeletedAt, delta)));
+    }
+
+    /** An item moved between folders or deleted states: out of where it was, into where it is now */
+    @Transactional
+    public void transfer(Long fromFolderId, LocalDateTime fromDeletedAt, Long toFolderId, LocalDateTime toDeletedAt, Delta delta) {
+        applyAll(List.of(new Change(fromFolderId, fromDeletedAt, delta.negate()), new Change(toFolderId, toDeletedAt, delta)));
+    }
+
+    /**
+     * Add up the changes per folder along their ancestor chains, then one in-place update per touched folder. The
+     * updates run in ascending id order, as lockedOf locks, so transactions with overlapping chains cannot deadlock.
+     */
+    @Transactional
+    public void applyAll(Collection<Change> changes) {
+        Map<Long, FolderModel> folders = loadChains(changes);
+
+        Map<Long, Delta> totals = new TreeMap<>();
+        for (Change change : changes) {
+            LocalDateTime itemDeletedAt = change.itemDeletedAt();
+            FolderModel folder = change.folderId() != null ? folders.get(change.folderId()) : null;
+            while (folder != null && counts(itemDeletedAt, folder.getDeletedAt())) {  // stops above the first folder not counted in its parent
+                totals.merge(folder.getId(), change.delta(), Delta::plus);
+                itemDeletedAt = folder.getDeletedAt();
+                Long parentId = FolderHelper.parentIdOf(folder);
+                folder = parentId != null ? folders.get(parentId) : null;
+            }
+        }
+
+        List<Long> touched = new ArrayList<>();
+        totals.forEach((id, delta) -> {
+            if (!delta.isZero()) {
+                folderRepository.addToRollups(id, delta.size(), delta.files(), delta.folders());
+                touched.add(id);
+                touched.add(FolderHelper.parentIdOf(folders.get(id)));
+            }
+        });
+        folderListingCache.invalidate(touched);  // their details, and their rows in the parent's listing
+    }
+
+    /**
+     * Rebuild all rollups from the rows: deepest folders first, so each hands a finished subtree to its parent.
+     * Only rows that differ are written. Deltas applied while it runs can be lost, so run it while the tree is quiet.
+     */
+    @Transactional
+    public Map<String, Object> recompute() {
+        long start = System.nanoTime();
+
+        Map<Long, Delta> totals = new HashMap<>();
+        for (Object[] row : fileRepository.sumDirectRollups()) {
+            totals.put((Long) row[0], new Delta(((Number) row[1]).longValue(), ((Number) row[2]).longValue(), 0));
+        }
+
+        List<Node> nodes = new ArrayList<>();
+        Map<Long, Node> byId = new HashMap<>();
+        for (Object[] row : folderRepository.findRollupNodes()) {
+            Node node = new Node((Long) row[0], (Long) row[1], (LocalDateTime) row[2], depth((String) row[3]),
+                    new Delta((Long) row[4], (Long) row[5], (Long) row[6]));
+            nodes.add(node);
+            byId.put(node.id(), node);
+        }
+        nodes.sort(Comparator.comparingInt(Node::depth).reversed());
+
+        List<Long> touched = new ArrayList<>();
+        for (Node node : nodes) {
+            Delta total = totals.getOrDefault(node.id(), Delta.ZERO);
+            Node parent = node.parentId() != null ? byId.get(node.parentId()) : null;
+            if (parent != null && counts(node.deletedAt(), parent.deletedAt())) {
+                totals.merge(parent.id(), total.plus(new Delta(0, 0, 1)), Delta::plus);
+            }
+            if (!total.equals(node.stored())) {
+                folderRepository.setRollups(node.id(), total.size(), total.files(), total.folders());
+                touched.add(node.id());
+                touched.add(node.parentId());
+            }
+        }
+        folderListingCache.invalidate(touched);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("folders", nodes.size());
+        result.put("updated", touched.size() / 2);
+        result.put("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return result;
+    }
+
+    // the folders changes land in and all their ancestors, in two queries
+    private Map<Long, FolderModel> loadChains(Collection<Change> changes) {
+        Set<Long> origins = new HashSet<>();
+        for (Change change : changes) {
+            if (change.folderId() != null) {
+                origins.add(change.folderId());
+            }
+        }
+
+        Map<Long, FolderModel> folders = new HashMap<>();
+        if (origins.isEmpty()) {
+            return folders;
+        }
+        Set<Long> ancestors = new HashSet<>();
+        for (FolderModel folder : folderRepository.findAllById(origins)) {
+            folders.put(folder.getId(), folder);
+            ancestors.addAll(FolderHelper.ancestorIds(folder));
+        }
+        ancestors.removeAll(folders.keySet());
+        for (FolderModel ancestor : folderRepository.findAllById(ancestors)) {
+            folders.put(ancestor.getId(), ancestor);
+        }
+        return folders;
+    }
+
+    // levels below the top, from the materialized path ("/" is 0, "/1/5/" is 2)
+    private static int depth(String path) {
+        int slashes = 0;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) == '/') {
+                slashes++;
+            }
+        }
+        return slashes - 1;
+    }
+
+    /** Bytes, files and folders added to (or, negative, taken from) a rollup */
+    public record Delta(long size, long files, long folders) {
+
+        static final Delta ZERO = new Delta(0, 0, 0);
+
+        public Delta plus(Delta other) {
+            return new Delta(size + other.size, files + other.files, folders + other.folders);
+        }
+
+        public Delta negate() {
+            return new Delta(-size, -files, -folders);
+        }
+
+        boolean isZero() {
+            return size == 0 && files == 0 && folders == 0;
+        }
+    }
+
+    /** A delta landing directly in a folder, from an item with the given deletedAt */
+    public record Change(Long folderId, LocalDateTime itemDeletedAt, Delta delta) {
+    }
+
+    private record Node(Long id, Long parentId, LocalDateTime deletedAt, int depth, Delta stored) {
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.filemanagement.Helpers;
+
+import com.example.filemanagement.Models.FileModel;
+import com.example.filemanagement.Models.FolderModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** In-memory view of a folder subtree, loaded once and walked without further queries */
+public class FolderTree {
+
+    private final FolderModel root;
+    private final List<FolderModel> folders;
+    private final List<FileModel> files;
+    private final Map<Long, List<FolderModel>> childrenByParentId = new HashMap<>();
+    private final Map<Long, List<FileModel>> filesByFolderId = new HashMap<>();
+
+    public FolderTree(FolderModel root, List<FolderModel> folders, List<FileModel> files) {
+        this.root = root;
+        this.folders = folders;
+        this.files = files;
+
+        for (FolderModel folder : folders) {
+            if (folder.getParentFolder() != null && !folder.getId().equals(root.getId())) {
+                childrenByParentId.computeIfAbsent(folder.getParentFolder().getId(), k -> new ArrayList<>()).add(folder);
+            }
+        }
+        for (FileModel file : files) {
+            filesByFolderId.computeIfAbsent(file.getFolder().getId(), k -> new ArrayList<>()).add(file);
+        }
+    }
+
+    public FolderModel getRoot() {
+        return root;
+    }
+
+    /** All folders of the subtree, root included */
+    public List<FolderModel> getFolders() {
+        return folders;
+    }
+
+    /** All files of the subtree */
+    public List<FileModel> getFiles() {
+        return files;
+    }
+
+    public List<FolderModel> getChildFolders(FolderModel folder) {
+        return childrenByParentId.getOrDefault(folder.getId(), Collections.emptyList());
+    }
+
+    public List<FileModel> getFiles(FolderModel folder) {
+        return filesByFolderId.getOrDefault(folder.getId(), Collections.emptyList());
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.filemanagement.Helpers;
+
+/** Where a long-running operation reports what it got through; called from any of its threads */
+@FunctionalInterface
+public interface JobProgress {
+
+    /** Nobody is listening, for operations run inside a request */
+    JobProgress NONE = (items, bytes) -> {
+    };
+
+    void add(long items, long bytes);
+}
@@ -0,0 +1,357 @@
+package com.example.filemanagement.Helpers;
+
+import com.example.filemanagement.DTOs.JobDto;
+import com.example.filemanagement.Models.FolderModel;
+import com.example.filemanagement.Models.JobModel;
+import com.example.filemanagement.Models.UserModel;
+import com.example.filemanagement.Repositories.FolderRepository;
+import com.example.filemanagement.Repositories.JobRepository;
+import com.example.filemanagement.Repositories.UserRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Runs long folder operations (zip import and export, recursive bin, restore and delete) outside the request.
+ * The jobs table is the queue: a submitted row is handed to a bounded worker pool right away, or picked up by the
+ * dispatcher once the pool has room, and after a restart. Inputs and results live under file.upload-dir/jobs.
+ */
+@Component
+public class JobRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(JobRunner.class);
+
+    private static final List<JobModel.Status> ACTIVE = List.of(JobModel.Status.QUEUED, JobModel.Status.RUNNING);
+    private static final List<JobModel.Status> FINISHED = List.of(JobModel.Status.SUCCEEDED, JobModel.Status.FAILED);
+    private static final Set<JobModel.Type> IN_ONE_TRANSACTION = EnumSet.of(JobModel.Type.BIN, JobModel.Type.RESTORE, JobModel.Type.DELETE);
+    private static final int ZIP_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_MESSAGE_LENGTH = 1000;
+    private static final int CLEANUP_BATCH_SIZE = 500;
+
+    private final JobRepository jobRepository;
+    private final FolderRepository folderRepository;
+    private final UserRepository userRepository;
+    private final FolderHelper folderHelper;
+    private final ZipImportHelper zipImportHelper;
+    private final TransactionTemplate transactionTemplate;
+    private final Path jobDir;
+    private final int maxPerUser;
+    private final Duration retention;
+
+    private final ThreadPoolExecutor workers;
+    private final Map<String, Run> runs = new ConcurrentHashMap<>();  // dispatched to this instance's pool
+
+    public JobRunner(JobRepository jobRepository, FolderRepository folderRepository, UserRepository userRepository,
+                     FolderHelper folderHelper, ZipImportHelper zipImportHelper, StorageKeyResolver storageKeyResolver,
+                     TransactionTemplate transactionTemplate, MeterRegistry meterRegistry,
+                     @Value("${jobs.workers:4}") int workerCount,
+                     @Value("${jobs.queue-capacity:100}") int queueCapacity,
+                     @Value("${jobs.max-per-user:3}") int maxPerUser,
+                     @Value("${jobs.retention-hours:24}") long retentionHours) {
+        this.jobRepository = jobRepository;
+        this.folderRepository = folderRepository;
+        this.userRepository = userRepository;
+        this.folderHelper = folderHelper;
+        this.zipImportHelper = zipImportHelper;
+        this.transactionTemplate = transactionTemplate;
+        this.jobDir = storageKeyResolver.getRoot().resolve("jobs");
+        this.maxPerUser = maxPerUser;
+        this.retention = Duration.ofHours(retentionHours);
+
+        int threads = Math.max(1, workerCount);
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                Thread.ofPlatform().name("job-worker-", 1).daemon().factory());
+
+        Gauge.builder("jobs.workers.busy", workers, ThreadPoolExecutor::getActiveCount)
+                .description("Workers running a job")
+                .register(meterRegistry);
+        Gauge.builder("jobs.workers.queued", workers, pool -> pool.getQueue().size())
+                .description("Jobs handed to the pool and waiting for a worker")
+                .register(meterRegistry);
+    }
+
+    /** Whether the user may submit another job right now; queued and running ones count. Only submit decides */
+    public boolean hasRoomFor(Long userId) {
+        return jobRepository.countByUser_IdAndStatusIn(userId, ACTIVE) < maxPerUser;
+    }
+
+    /** Where a job's input (an uploaded zip) waits until the job ran */
+    public Path inputPath(String jobId) throws IOException {
+        Files.createDirectories(jobDir);
+        return jobDir.resolve(jobId + "-input.zip");
+    }
+
+    /** The file a job produced (an export), kept for jobs.retention-hours after it finished */
+    public Path resultPath(String jobId) {
+        return jobDir.resolve(jobId + ".zip");
+    }
+
+    /**
+     * Persist a new job and hand it to a worker once committed; when the pool is full it waits in the table for the
+     * dispatcher. Empty when the user already has jobs.max-per-user jobs queued or running: the count and the insert
+     * happen under the user's row lock, so concurrent submits of one user take turns for the last slot.
+     */
+    public Optional<JobModel> submit(JobModel job) {
+        JobModel saved = transactionTemplate.execute(status -> {
+            Long userId = job.getUser().getId();
+            userRepository.lockById(userId).orElseThrow(() -> new IllegalArgumentException("User not found"));
+            if (jobRepository.countByUser_IdAndStatusIn(userId, ACTIVE) >= maxPerUser) {
+                return null;
+            }
+            job.setStatus(JobModel.Status.QUEUED);
+            return jobRepository.save(job);
+        });
+        if (saved == null) {
+            return Optional.empty();
+        }
+        dispatch(saved.getId());
+        return Optional.of(saved);
+    }
+
+    /** A job as the API shows it, with live progress when it runs here */
+    public JobDto describe(JobModel job) {
+        long items = job.getItemsDone();
+        long bytes = job.getBytesDone();
+        Run run = runs.get(job.getId());
+        if (run != null && job.getStatus() == JobModel.Status.RUNNING) {
+            items = Math.max(items, run.items.get());
+            bytes = Math.max(bytes, run.bytes.get());
+        }
+
+        double seconds = elapsedSeconds(job);
+        return JobDto.builder()
+                .id(job.getId())
+                .type(job.getType().name())
+                .status(job.getStatus().name())
+                .folderId(job.getFolderId())
+                .userId(job.getUser() != null ? job.getUser().getId() : null)
+                .itemsTotal(job.getItemsTotal())
+                .bytesTotal(job.getBytesTotal())
+                .itemsDone(items)
+                .bytesDone(bytes)
+                .itemsPerSecond(seconds > 0 ? items / seconds : null)
+                .bytesPerSecond(seconds > 0 ? bytes / seconds : null)
+                .message(job.getMessage())
+                .resultName(job.getResultName())
+                .createdAt(job.getCreatedAt())
+                .startedAt(job.getStartedAt())
+                .finishedAt(job.getFinishedAt())
+                .build();
+    }
+
+    /**
+     * Jobs a restart interrupted: imports fail (their committed batches stay), everything else runs again. Bin,
+     * restore and delete record their outcome in the transaction of the operation, so one still RUNNING never
+     * happened; an export just starts over. Only rows still RUNNING change, so running it twice does no harm.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        for (JobModel job : jobRepository.findByStatus(JobModel.Status.RUNNING)) {
+            if (job.getType() == JobModel.Type.ZIP_IMPORT) {
+                jobRepository.finishIfRunning(job.getId(), JobModel.Status.FAILED, job.getItemsDone(), job.getBytesDone(),
+                        "Interrupted by a restart; what was imported before stays", LocalDateTime.now());
+                deleteQuietly(jobDir.resolve(job.getId() + "-input.zip"));
+            } else {
+                jobRepository.changeStatus(job.getId(), JobModel.Status.RUNNING, JobModel.Status.QUEUED, null);
+            }
+        }
+        dispatchQueued();
+    }
+
+    /** Queued jobs the pool had no room for, or left from before a restart, oldest first */
+    @Scheduled(fixedDelayString = "${jobs.dispatch-interval-ms:5000}", initialDelayString = "${jobs.dispatch-interval-ms:5000}")
+    public void dispatchQueued() {
+        for (String id : jobRepository.findIdsByStatus(JobModel.Status.QUEUED)) {
+            if (workers.getQueue().remainingCapacity() == 0) {
+                return;
+            }
+            dispatch(id);
+        }
+    }
+
+    /** Write the progress of running jobs to their rows, for pollers and other instances */
+    @Scheduled(fixedDelayString = "${jobs.progress-flush-ms:1000}")
+    public void flushProgress() {
+        runs.forEach((id, run) -> {
+            if (run.started) {
+                jobRepository.updateProgress(id, run.items.get(), run.bytes.get());
+            }
+        });
+    }
+
+    /** Drop finished jobs past retention together with their result files */
+    @Scheduled(fixedDelayString = "${jobs.cleanup-interval-ms:3600000}", initialDelayString = "${jobs.cleanup-interval-ms:3600000}")
+    public void deleteExpired() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(retention);
+        List<JobModel> expired;
+        while (!(expired = jobRepository.findFinishedBefore(FINISHED, cutoff, Limit.of(CLEANUP_BATCH_SIZE))).isEmpty()) {
+            for (JobModel job : expired) {
+                deleteQuietly(resultPath(job.getId()));
+            }
+            jobRepository.deleteAll(expired);
+        }
+    }
+
+    private void dispatch(String id) {
+        if (runs.putIfAbsent(id, new Run()) != null) {
+            return;  // already with the pool
+        }
+        try {
+            workers.execute(() -> run(id));
+        } catch (RejectedExecutionException e) {
+            runs.remove(id);  // stays queued in the table
+        }
+    }
+
+    private void run(String id) {
+        Run run = runs.get(id);
+        try {
+            if (!jobRepository.claim(id)) {
+                return;  // started elsewhere, or gone
+            }
+            JobModel job = jobRepository.findById(id).orElseThrow(() -> new IllegalArgumentException("Job not found"));
+            run.started = true;
+            if (IN_ONE_TRANSACTION.contains(job.getType())) {
+                // the outcome commits with the operation: a crash can't leave it done but still RUNNING, to be run again.
+                // Progress is reported chunk by chunk into run, which describe and flushProgress read outside of it
+                transactionTemplate.executeWithoutResult(status -> succeed(job, run, executeUnchecked(job, run)));
+            } else {
+                succeed(job, run, execute(job, run));
+            }
+        } catch (Exception e) {
+            log.warn("Job {} failed: {}", id, e.getMessage());
+            deleteQuietly(resultPath(id));
+            jobRepository.finish(id, JobModel.Status.FAILED, run.items.get(), run.bytes.get(), failureMessage(e), LocalDateTime.now());
+        } finally {
+            runs.remove(id);
+            deleteQuietly(jobDir.resolve(id + "-input.zip"));
+        }
+    }
+
+    private void succeed(JobModel job, Run run, String message) {
+        jobRepository.finish(job.getId(), JobModel.Status.SUCCEEDED, run.items.get(), run.bytes.get(), message, LocalDateTime.now());
+    }
+
+    private String executeUnchecked(JobModel job, Run run) {
+        try {
+            return execute(job, run);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // the operation itself, with the same helpers the synchronous endpoints use; returns the summary
+    private String execute(JobModel job, Run run) throws IOException {
+        switch (job.getType()) {
+            case ZIP_IMPORT -> {
+                UserModel user = userRepository.findById(job.getUser().getId())
+                        .orElseThrow(() -> new IllegalArgumentException("User not found"));
+                FolderModel parent = job.getFolderId() != null ? folder(job.getFolderId()) : null;
+                ZipImportHelper.ImportResult result;
+                try (InputStream zip = Files.newInputStream(inputPath(job.getId()))) {
+                    result = zipImportHelper.importZip(zip, parent, user, run);
+                }
+                return result.directories() + " folders and " + result.files() + " files imported";
+            }
+            case ZIP_EXPORT -> {
+                FolderModel folder = folder(job.getFolderId());
+                FolderTree tree = folderHelper.loadSubtree(folder);
+                Files.createDirectories(jobDir);  // the first job on this instance may well be an export
+                try (ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(resultPath(job.getId())), ZIP_BUFFER_SIZE))) {
+                    folderHelper.addFolderToZip(tree, folder, "", zos, run);
+                }
+                return "Folder exported";
+            }
+            case BIN -> {
+                FolderModel folder = folder(job.getFolderId());
+                FolderHelper.SubtreeUpdate updated = folderHelper.softDeleteFolderRecursively(folder, run);
+                return "Folder moved to Bin: " + updated.folders() + " folders, " + updated.files() + " files";
+            }
+            case RESTORE -> {
+                FolderModel folder = folder(job.getFolderId());
+                if (folder.getDeletedAt() == null) {
+                    throw new IllegalArgumentException("Folder is not deleted");
+                }
+                FolderHelper.SubtreeUpdate updated = folderHelper.restoreFolderRecursively(folder, run);
+                return "Folder restored: " + updated.folders() + " folders, " + updated.files() + " files";
+            }
+            case DELETE -> {
+                FolderModel folder = folder(job.getFolderId());
+                folderHelper.deleteFolderRecursively(folder, run);
+                return "Folder was permanently deleted";
+            }
+        }
+        throw new IllegalArgumentException("Unknown job type " + job.getType());
+    }
+
+    private FolderModel folder(Long folderId) {
+        return folderRepository.findById(folderId)
+                .orElseThrow(() -> new IllegalArgumentException("Folder not found with id: " + folderId));
+    }
+
+    private static String failureMessage(Exception e) {
+        String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        return message.length() > MAX_MESSAGE_LENGTH ? message.substring(0, MAX_MESSAGE_LENGTH) : message;
+    }
+
+    // from its start to now, or to its end once finished
+    private static double elapsedSeconds(JobModel job) {
+        if (job.getStartedAt() == null) {
+            return 0;
+        }
+        LocalDateTime end = job.getFinishedAt() != null ? job.getFinishedAt() : LocalDateTime.now();
+        return Duration.between(job.getStartedAt(), end).toNanos() / 1e9;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // a leftover file under jobs/ only takes space
+        }
+    }
+
+    /** Progress of one job dispatched here, added to from every thread the operation uses */
+    private static final class Run implements JobProgress {
+        final AtomicLong items = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        volatile boolean started;
+
+        @Override
+        public void add(long items, long bytes) {
+            this.items.addAndGet(items);
+            this.bytes.addAndGet(bytes);
+        }
+    }
+}
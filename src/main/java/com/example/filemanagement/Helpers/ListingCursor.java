@@ -0,0 +1,44 @@
+package com.example.filemanagement.Helpers;
+
+import com.example.filemanagement.Repositories.ListingQueries;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque position in a paginated listing: folders are listed before files, so the cursor says which section it is in
+ * and the last (sort value, id) seen there. It also carries the sort it was made for, so it cannot be replayed under another.
+ */
+public record ListingCursor(ListingQueries.Sort sort, boolean descending, boolean inFiles, Long lastId, String lastValue) {
+
+    public String encode() {
+        String raw = sort.name() + "|" + (descending ? "desc" : "asc") + "|" + (inFiles ? "files" : "folders") + "|" + (lastId != null ? lastId : "") + "|" + lastValue;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ListingCursor decode(String cursor, ListingQueries.Sort sort, boolean descending) {
+        ListingCursor decoded;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 5);  // the value goes last: names may contain '|'
+            decoded = new ListingCursor(ListingQueries.Sort.valueOf(parts[0]), parts[1].equals("desc"),
+                    parts[2].equals("files"), parts[3].isEmpty() ? null : Long.valueOf(parts[3]), parts[4]);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (decoded.sort() != sort || decoded.descending() != descending) {
+            throw new IllegalArgumentException("Cursor was issued for a different sort order");
+        }
+        return decoded;
+    }
+
+    /** Start of the files section, when the previous page ended exactly after the last folder */
+    public static ListingCursor startOfFiles(ListingQueries.Sort sort, boolean descending) {
+        return new ListingCursor(sort, descending, true, null, "");
+    }
+
+    /** Keyset position inside the section, null at its start */
+    public ListingQueries.After after() {
+        return lastId != null ? new ListingQueries.After(lastValue, lastId) : null;
+    }
+}
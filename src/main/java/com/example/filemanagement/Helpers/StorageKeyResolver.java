@@ -0,0 +1,89 @@
+package com.example.filemanagement.Helpers;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HexFormat;
+
+/**
+ * Maps storage keys to files under file.upload-dir. Blobs live in a two-level fan-out, ab/cd/abcd..., so no
+ * directory grows past 65536 entries per level; blobs written before that still sit flat in the root until migrated.
+ */
+@Component
+public class StorageKeyResolver {
+
+    private static final int FAN_OUT_CHARS = 2;
+
+    private final Path root;
+
+    public StorageKeyResolver(@Value("${file.upload-dir}") String uploadDir) {
+        this.root = Paths.get(uploadDir).toAbsolutePath().normalize();
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /** Where a key lives: sharded, else flat (not migrated yet), else sharded again in case a migration moved it in between */
+    public Path resolve(String storageKey) {
+        Path sharded = shardedPath(storageKey);
+        if (Files.exists(sharded)) {
+            return sharded;
+        }
+        Path flat = flatPath(storageKey);
+        return Files.exists(flat) ? flat : sharded;
+    }
+
+    public boolean exists(String storageKey) {
+        return Files.exists(resolve(storageKey));
+    }
+
+    /** Sharded path for a new blob, with its directories in place */
+    public Path prepareForWrite(String storageKey) throws IOException {
+        Path sharded = shardedPath(storageKey);
+        Files.createDirectories(sharded.getParent());
+        return sharded;
+    }
+
+    /** Delete a key in both layouts; flat first, so a concurrent migration cannot move it out of reach */
+    public void delete(String storageKey) throws IOException {
+        Files.deleteIfExists(flatPath(storageKey));
+        Files.deleteIfExists(shardedPath(storageKey));
+    }
+
+    public Path flatPath(String storageKey) {
+        return checked(root.resolve(storageKey).normalize());
+    }
+
+    public Path shardedPath(String storageKey) {
+        String shard = shardOf(storageKey);
+        return checked(root.resolve(shard.substring(0, FAN_OUT_CHARS))
+                .resolve(shard.substring(FAN_OUT_CHARS, 2 * FAN_OUT_CHARS))
+                .resolve(storageKey)
+                .normalize());
+    }
+
+    // Content hashes and UUID keys are already uniformly spread hex; anything else is hashed first
+    private static String shardOf(String storageKey) {
+        if (storageKey.length() >= 2 * FAN_OUT_CHARS && isHex(storageKey.substring(0, 2 * FAN_OUT_CHARS))) {
+            return storageKey.toLowerCase();
+        }
+        return HexFormat.of().formatHex(FileHelper.newDigest().digest(storageKey.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static boolean isHex(String value) {
+        return value.chars().allMatch(c -> Character.digit(c, 16) >= 0);
+    }
+
+    private Path checked(Path path) {
+        if (!path.startsWith(root)) {
+            throw new IllegalArgumentException("Invalid storage key");
+        }
+        return path;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.filemanagement.Helpers;
+
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves blobs from the flat upload root into the sharded layout while the application keeps serving.
+ * Each blob moves with one atomic rename, and StorageKeyResolver finds a key in either place meanwhile.
+ */
+@Component
+public class StorageMigrationHelper {
+
+    private static final int MAX_PARALLELISM = 64;
+
+    private final StorageKeyResolver storageKeyResolver;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong moved = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+    private volatile String lastError;
+
+    public StorageMigrationHelper(StorageKeyResolver storageKeyResolver) {
+        this.storageKeyResolver = storageKeyResolver;
+    }
+
+    /** Start a migration in the background; false when one is already running */
+    public boolean start(int parallelism) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        scanned.set(0);
+        moved.set(0);
+        skipped.set(0);
+        failed.set(0);
+        lastError = null;
+        startedAt = LocalDateTime.now();
+        finishedAt = null;
+
+        int threads = Math.max(1, Math.min(parallelism, MAX_PARALLELISM));
+        Thread.ofPlatform().name("storage-migration").daemon().start(() -> {
+            try {
+                migrate(threads);
+            } finally {
+                finishedAt = LocalDateTime.now();
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", running.get());
+        status.put("startedAt", startedAt);
+        status.put("finishedAt", finishedAt);
+        status.put("scanned", scanned.get());
+        status.put("moved", moved.get());
+        status.put("skipped", skipped.get());
+        status.put("failed", failed.get());
+        status.put("lastError", lastError);
+        return status;
+    }
+
+    private void migrate(int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Semaphore inFlight = new Semaphore(threads * 4);  // the directory is streamed, never listed into memory
+
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(storageKeyResolver.getRoot())) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (!Files.isRegularFile(entry) || FileHelper.isIncomingKey(name)) {
+                    continue;  // shard directories and blobs still being written
+                }
+                scanned.incrementAndGet();
+                inFlight.acquire();
+                pool.execute(() -> {
+                    try {
+                        moveToShard(name);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } catch (IOException e) {
+            lastError = "Could not list " + storageKeyResolver.getRoot() + ": " + e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(1, TimeUnit.HOURS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void moveToShard(String storageKey) {
+        Path flat = storageKeyResolver.flatPath(storageKey);
+        try {
+            Path sharded = storageKeyResolver.prepareForWrite(storageKey);
+            try {
+                Files.move(flat, sharded, StandardCopyOption.ATOMIC_MOVE);
+                moved.incrementAndGet();
+            } catch (FileAlreadyExistsException e) {
+                Files.deleteIfExists(flat);  // same key, same content: the sharded copy wins
+                skipped.incrementAndGet();
+            }
+        } catch (NoSuchFileException e) {
+            skipped.incrementAndGet();  // deleted since it was listed
+        } catch (IOException e) {
+            failed.incrementAndGet();
+            lastError = storageKey + ": " + e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.filemanagement.Helpers;
+
+import com.example.filemanagement.Models.UploadSessionModel;
+import com.example.filemanagement.Repositories.UploadChunkRepository;
+import com.example.filemanagement.Repositories.UploadSessionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Deletes resumable upload sessions nobody sent a chunk to for the expiry period, with their chunk rows and part
+ * files. Each session goes in its own short transaction under its row lock, so a chunk arriving at the last moment
+ * either keeps the session alive or is refused.
+ */
+@Component
+public class UploadSessionPurger {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadSessionPurger.class);
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final UploadChunkRepository uploadChunkRepository;
+    private final FileHelper fileHelper;
+    private final TransactionTemplate transactionTemplate;
+    private final long expiryHours;
+    private final int batchSize;
+    private final ReentrantLock running = new ReentrantLock();
+
+    public UploadSessionPurger(UploadSessionRepository uploadSessionRepository, UploadChunkRepository uploadChunkRepository,
+                               FileHelper fileHelper, TransactionTemplate transactionTemplate,
+                               @Value("${uploads.session-expiry-hours:24}") long expiryHours,
+                               @Value("${uploads.purge.batch-size:500}") int batchSize) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.uploadChunkRepository = uploadChunkRepository;
+        this.fileHelper = fileHelper;
+        this.transactionTemplate = transactionTemplate;
+        this.expiryHours = expiryHours;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${uploads.purge.interval-ms:3600000}", initialDelayString = "${uploads.purge.interval-ms:3600000}")
+    public void scheduledPurge() {
+        purge();
+    }
+
+    /** Purge every idle session now; returns how many went */
+    public int purge() {
+        if (!running.tryLock()) {
+            return 0;
+        }
+        int purged = 0;
+        try {
+            LocalDateTime cutoff = LocalDateTime.now().minusHours(expiryHours);
+            List<String> ids;
+            do {
+                ids = uploadSessionRepository.findIdsIdleSince(cutoff, Limit.of(batchSize));
+                for (String id : ids) {
+                    if (Boolean.TRUE.equals(transactionTemplate.execute(status -> purgeSession(id, cutoff)))) {
+                        purged++;
+                    }
+                }
+            } while (ids.size() == batchSize);
+        } catch (RuntimeException e) {
+            log.warn("Upload session purge stopped, retrying next run: {}", e.getMessage());
+        } finally {
+            running.unlock();
+        }
+
+        if (purged > 0) {
+            log.info("Purged {} upload sessions idle for more than {} hours", purged, expiryHours);
+        }
+        return purged;
+    }
+
+    /**
+     * Abort the sessions uploading into these folders, for a permanent delete of the folders. Their rows go with
+     * the transaction, their part files once it commits. A completion in progress finds its session gone and fails.
+     */
+    @Transactional
+    public void purgeInFolders(Collection<Long> folderIds) {
+        if (folderIds.isEmpty()) {
+            return;
+        }
+        List<String> ids = new ArrayList<>();
+        for (UploadSessionModel session : uploadSessionRepository.lockAllByFolderIdIn(folderIds)) {
+            uploadChunkRepository.deleteBySession(session);
+            uploadSessionRepository.delete(session);
+            ids.add(session.getId());
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            deletePartFiles(ids);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                deletePartFiles(ids);
+            }
+        });
+    }
+
+    private void deletePartFiles(List<String> ids) {
+        for (String id : ids) {
+            try {
+                Files.deleteIfExists(fileHelper.prepareIncomingPath(FileHelper.uploadPartKey(id)));
+            } catch (IOException e) {
+                log.warn("Could not delete the part file of upload {}, leaving it to the garbage collector: {}", id, e.getMessage());
+            }
+        }
+    }
+
+    // a session still completing after the expiry period belongs to a completion that died with its process
+    private boolean purgeSession(String id, LocalDateTime cutoff) {
+        UploadSessionModel session = uploadSessionRepository.lockById(id).orElse(null);
+        if (session == null || !session.getModifiedAt().isBefore(cutoff)) {
+            return false;  // completed, aborted or written to meanwhile
+        }
+        try {
+            Files.deleteIfExists(fileHelper.prepareIncomingPath(FileHelper.uploadPartKey(id)));
+        } catch (IOException e) {
+            log.warn("Could not delete the part file of upload {}, leaving it to the garbage collector: {}", id, e.getMessage());
+        }
+        uploadChunkRepository.deleteBySession(session);
+        uploadSessionRepository.delete(session);
+        return true;
+    }
+}
@@ -0,0 +1,467 @@
+package com.example.filemanagement.Helpers;
+
+import com.example.filemanagement.Models.FileModel;
+import com.example.filemanagement.Models.FolderModel;
+import com.example.filemanagement.Models.UserModel;
+import com.example.filemanagement.Repositories.FolderRepository;
+import jakarta.persistence.EntityManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Imports a zip as a pipeline: the request thread inflates entries, virtual threads hash and write
+ * the blobs, and a single thread persists folder and file rows in batches. Bounded queues between
+ * the stages keep memory flat whatever the archive size.
+ */
+@Component
+public class ZipImportHelper {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int CHUNK_SIZE = 256 * 1024;
+    private static final int MAX_CHUNKS_IN_FLIGHT = 256;  // 64 MB of inflated data waiting to be written
+    private static final int MAX_WRITERS = 64;  // entries being written at the same time
+    private static final int ENTRY_QUEUE_SIZE = 4;
+    private static final int BATCH_SIZE = 500;  // keep in line with hibernate.jdbc.batch_size
+    private static final long PERSIST_IDLE_MILLIS = 50;  // write a partial batch when nothing new arrives for this long
+
+    private static final Chunk END_OF_ENTRY = new Chunk(null, 0);
+    private static final Object END_OF_IMPORT = new Object();
+
+    private final FolderRepository folderRepository;
+    private final FileHelper fileHelper;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final FolderListingCache folderListingCache;
+    private final FolderRollupHelper folderRollupHelper;
+
+    public ZipImportHelper(FolderRepository folderRepository, FileHelper fileHelper,
+                           EntityManager entityManager, TransactionTemplate transactionTemplate,
+                           FolderListingCache folderListingCache, FolderRollupHelper folderRollupHelper) {
+        this.folderRepository = folderRepository;
+        this.fileHelper = fileHelper;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.folderListingCache = folderListingCache;
+        this.folderRollupHelper = folderRollupHelper;
+    }
+
+    /** Import a zip entry by entry, streaming each file from the inflater straight into storage */
+    public ImportResult importZip(InputStream zip, FolderModel parentFolder, UserModel user) throws IOException {
+        return importZip(zip, parentFolder, user, JobProgress.NONE);
+    }
+
+    /** Same, reporting every committed batch (folders and files, file bytes) to progress */
+    public ImportResult importZip(InputStream zip, FolderModel parentFolder, UserModel user, JobProgress progress) throws IOException {
+        return new ImportRun(parentFolder, user, progress).execute(zip);
+    }
+
+    // entry names are only ever used as folder/file names, but reject anything trying to climb out of the archive
+    private static List<String> splitEntryName(String entryName) throws IOException {
+        List<String> parts = new ArrayList<>();
+        for (String part : entryName.replace('\\', '/').split("/")) {
+            if (part.isEmpty() || part.equals(".")) {
+                continue;
+            }
+            if (part.equals("..")) {
+                throw new IOException("Entry is outside of target directory: " + entryName);
+            }
+            parts.add(part);
+        }
+        return parts;
+    }
+
+    /** One import: the three stages and the state they share */
+    private class ImportRun {
+
+        private final FolderModel parentFolder;
+        private final UserModel user;
+        private final JobProgress progress;
+        private final Map<String, FolderModel> foldersByPath = new HashMap<>();  // "a/b/" -> folder, reader thread only
+        private final Set<FolderModel> createdFolders = Collections.newSetFromMap(new IdentityHashMap<>());  // can't have children in the db yet
+
+        private final Semaphore chunkPermits = new Semaphore(MAX_CHUNKS_IN_FLIGHT);
+        private final ConcurrentLinkedQueue<byte[]> freeBuffers = new ConcurrentLinkedQueue<>();
+        private final Semaphore writerPermits = new Semaphore(MAX_WRITERS);
+        private final BlockingQueue<Object> persistQueue = new ArrayBlockingQueue<>(BATCH_SIZE * 2);
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        private final StageStats inflateStats = new StageStats();
+        private final StageStats writeStats = new StageStats();
+        private final StageStats persistStats = new StageStats();
+        private int directories;
+
+        ImportRun(FolderModel parentFolder, UserModel user, JobProgress progress) {
+            this.parentFolder = parentFolder;
+            this.user = user;
+            this.progress = progress;
+        }
+
+        ImportResult execute(InputStream zip) throws IOException {
+            long start = System.nanoTime();
+            Thread persister = Thread.ofPlatform().name("zip-import-persist").start(this::persistLoop);
+            ExecutorService writers = Executors.newVirtualThreadPerTaskExecutor();
+
+            try {
+                readEntries(zip, writers);
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+                writers.shutdownNow();  // writers waiting for chunks that will never come
+            } catch (InterruptedException e) {
+                fail(e);
+                writers.shutdownNow();
+                Thread.currentThread().interrupt();
+            } finally {
+                writers.close();  // waits for the writers still running
+                finishPersisting(persister);
+            }
+
+            Throwable error = failure.get();
+            if (error instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (error != null) {
+                throw new IOException("Zip import failed: " + error.getMessage(), error);
+            }
+
+            Map<String, Map<String, Object>> stages = new LinkedHashMap<>();
+            stages.put("inflate", inflateStats.toMap());
+            stages.put("write", writeStats.toMap());
+            stages.put("persist", persistStats.toMap());
+            return new ImportResult(directories, (int) writeStats.items.sum(), writeStats.bytes.sum(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), stages);
+        }
+
+        // ---- stage 1: inflate (request thread) ----
+
+        private void readEntries(InputStream zip, ExecutorService writers) throws IOException, InterruptedException {
+            try (ZipInputStream zipIn = new ZipInputStream(new BufferedInputStream(zip, BUFFER_SIZE))) {
+                ZipEntry entry;
+                while ((entry = zipIn.getNextEntry()) != null) {
+                    checkFailure();
+                    List<String> parts = splitEntryName(entry.getName());
+                    if (parts.isEmpty()) {
+                        continue;
+                    }
+
+                    if (entry.isDirectory()) {
+                        resolveFolder(parts);
+                        directories++;
+                    } else {
+                        FolderModel folder = resolveFolder(parts.subList(0, parts.size() - 1));
+                        String name = parts.get(parts.size() - 1);
+
+                        writerPermits.acquire();
+                        BlockingQueue<Chunk> pipe = new ArrayBlockingQueue<>(ENTRY_QUEUE_SIZE);
+                        writers.submit(() -> writeEntry(pipe, name, folder));
+                        pumpEntry(zipIn, pipe);
+                    }
+                    zipIn.closeEntry();
+                }
+            }
+        }
+
+        // inflate one entry into pooled chunks for its writer; blocks when too much is waiting to be written
+        private void pumpEntry(ZipInputStream zipIn, BlockingQueue<Chunk> pipe) throws IOException, InterruptedException {
+            while (true) {
+                checkFailure();
+                chunkPermits.acquire();
+                byte[] buffer = freeBuffers.poll();
+                if (buffer == null) {
+                    buffer = new byte[CHUNK_SIZE];
+                }
+
+                long started = System.nanoTime();
+                int filled = zipIn.readNBytes(buffer, 0, CHUNK_SIZE);
+                inflateStats.record(filled, System.nanoTime() - started);
+
+                if (filled == 0) {
+                    recycle(buffer);
+                    break;
+                }
+                pipe.put(new Chunk(buffer, filled));
+                if (filled < CHUNK_SIZE) {
+                    break;
+                }
+            }
+            inflateStats.items.increment();
+            pipe.put(END_OF_ENTRY);
+        }
+
+        // find or create each directory of the path; new folders are handed to the persist stage right away
+        private FolderModel resolveFolder(List<String> parts) throws InterruptedException {
+            FolderModel current = parentFolder;
+            StringBuilder path = new StringBuilder();
+
+            for (String part : parts) {
+                path.append(part).append('/');
+                FolderModel folder = foldersByPath.get(path.toString());
+                if (folder == null) {
+                    if (current == null || !createdFolders.contains(current)) {
+                        folder = folderRepository.findByNameAndParentFolder(part, current).orElse(null);  //check for folder already exist ( same name under same parentFolder )
+                    }
+                    if (folder == null) {
+                        folder = FolderModel.builder()  //if no existing folder found, create new Folder Record
+                                .name(part)
+                                .parentFolder(current)
+                                .createdBy(user)
+                                .build();
+                        createdFolders.add(folder);
+                        persistQueue.put(folder);  // queued before any file inside it can be
+                    }
+                    foldersByPath.put(path.toString(), folder);
+                }
+                current = folder;
+            }
+            return current;
+        }
+
+        // ---- stage 2: hash + write (one virtual thread per entry) ----
+
+        private void writeEntry(BlockingQueue<Chunk> pipe, String name, FolderModel folder) {
+            Path target = null;
+            FileHelper.StoredBlob blob = null;
+            try {
+                target = fileHelper.prepareIncomingPath(FileHelper.newIncomingKey());  // renamed to its hash once complete
+                MessageDigest digest = FileHelper.newDigest();
+                long size = 0;
+
+                try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                    Chunk chunk;
+                    while ((chunk = pipe.take()) != END_OF_ENTRY) {
+                        long started = System.nanoTime();
+                        digest.update(chunk.data(), 0, chunk.length());
+                        ByteBuffer buffer = ByteBuffer.wrap(chunk.data(), 0, chunk.length());
+                        while (buffer.hasRemaining()) {
+                            channel.write(buffer);
+                        }
+                        size += chunk.length();
+                        writeStats.record(chunk.length(), System.nanoTime() - started);
+                        recycle(chunk.data());
+                    }
+                }
+
+                String contentType = FileHelper.guessContentType(name);
+                blob = fileHelper.commitBlob(target, HexFormat.of().formatHex(digest.digest()), size, contentType);  // dedup against what is stored
+                target = null;  // committed, nothing to clean up
+                writeStats.items.increment();
+                persistQueue.put(fileHelper.buildFileModel(name, contentType, blob, folder, user));
+                blob = null;  // the persist stage owns its reference now
+            } catch (InterruptedException e) {
+                fail(e);
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                fail(e);
+                drain(pipe);  // let the reader finish the entry so it notices the failure
+            } finally {
+                writerPermits.release();
+                deleteQuietly(target);
+                if (blob != null) {
+                    fileHelper.releaseUnsaved(List.of(blob.storageKey()));
+                }
+            }
+        }
+
+        private void drain(BlockingQueue<Chunk> pipe) {
+            try {
+                Chunk chunk;
+                while ((chunk = pipe.take()) != END_OF_ENTRY) {
+                    recycle(chunk.data());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void recycle(byte[] buffer) {
+            freeBuffers.offer(buffer);
+            chunkPermits.release();
+        }
+
+        // ---- stage 3: persist (single thread, batched) ----
+
+        private void persistLoop() {
+            List<FolderModel> folders = new ArrayList<>();
+            List<FileModel> files = new ArrayList<>();
+            try {
+                while (true) {
+                    boolean empty = folders.isEmpty() && files.isEmpty();
+                    Object item = empty ? persistQueue.take() : persistQueue.poll(PERSIST_IDLE_MILLIS, TimeUnit.MILLISECONDS);
+                    if (item == END_OF_IMPORT) {
+                        break;
+                    }
+                    if (item instanceof FolderModel folder) {
+                        folders.add(folder);
+                    } else if (item != null) {
+                        files.add((FileModel) item);
+                    }
+                    // idle: write what we have; failed: just keep the queue moving, handing back the blobs
+                    if (item == null || failure.get() != null || folders.size() + files.size() >= BATCH_SIZE) {
+                        persistBatch(folders, files);
+                    }
+                }
+                persistBatch(folders, files);
+            } catch (InterruptedException e) {
+                fail(e);
+            }
+        }
+
+        // folders go first and in arrival order, so every parent has its id (and path) before its children
+        private void persistBatch(List<FolderModel> folders, List<FileModel> files) {
+            if ((folders.isEmpty() && files.isEmpty()) || failure.get() != null) {
+                releaseUnsaved(files);
+                folders.clear();
+                files.clear();
+                return;
+            }
+            long started = System.nanoTime();
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    for (FolderModel folder : folders) {
+                        folder.setPath(FolderHelper.childPath(folder.getParentFolder()));
+                        entityManager.persist(folder);
+                    }
+                    for (FileModel file : files) {
+                        entityManager.persist(file);
+                    }
+                    entityManager.flush();
+                    folderRollupHelper.applyAll(rollupChanges(folders, files));  // with the rows, so totals never count a batch that failed
+                    entityManager.clear();
+                });
+                folderListingCache.invalidate(listingsOf(folders, files));  // committed: evict the listings the batch added to
+                persistStats.items.add(folders.size() + files.size());
+                persistStats.record(0, System.nanoTime() - started);
+                progress.add(folders.size() + files.size(), files.stream().mapToLong(file -> file.getSize() != null ? file.getSize() : 0).sum());
+            } catch (RuntimeException e) {
+                fail(e);
+                releaseUnsaved(files);  // rolled back
+            }
+            folders.clear();
+            files.clear();
+        }
+
+        // blobs written for files whose rows will never be saved
+        private void releaseUnsaved(List<FileModel> files) {
+            fileHelper.releaseUnsaved(files.stream().map(FileModel::getStorageKey).toList());
+        }
+
+        // parents of the new folders, folders of the new files; new folders can already have been listed mid-import
+        private List<Long> listingsOf(List<FolderModel> folders, List<FileModel> files) {
+            List<Long> ids = new ArrayList<>();
+            for (FolderModel folder : folders) {
+                ids.add(folder.getId());
+                ids.add(FolderHelper.parentIdOf(folder));
+            }
+            for (FileModel file : files) {
+                ids.add(FileHelper.folderIdOf(file));
+            }
+            return ids;
+        }
+
+        // each new folder and file lands in its parent; the helper carries it up the chain, batch-wide
+        private List<FolderRollupHelper.Change> rollupChanges(List<FolderModel> folders, List<FileModel> files) {
+            List<FolderRollupHelper.Change> changes = new ArrayList<>();
+            for (FolderModel folder : folders) {
+                changes.add(new FolderRollupHelper.Change(FolderHelper.parentIdOf(folder), null, FolderRollupHelper.of(folder)));
+            }
+            for (FileModel file : files) {
+                changes.add(new FolderRollupHelper.Change(FileHelper.folderIdOf(file), null, FolderRollupHelper.of(file)));
+            }
+            return changes;
+        }
+
+        private void finishPersisting(Thread persister) throws IOException {
+            try {
+                persistQueue.put(END_OF_IMPORT);
+                persister.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while finishing the import", e);
+            }
+        }
+
+        // ---- failure handling ----
+
+        private void fail(Throwable error) {
+            failure.compareAndSet(null, error);
+        }
+
+        private void checkFailure() throws IOException {
+            if (failure.get() != null) {
+                throw new IOException("Zip import aborted", failure.get());
+            }
+        }
+
+        private void deleteQuietly(Path path) {
+            if (path == null) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+                // a leftover blob without a row is harmless
+            }
+        }
+    }
+
+    /** Inflated bytes travelling from the reader to an entry's writer */
+    private record Chunk(byte[] data, int length) {
+    }
+
+    /** Work done by one pipeline stage and the time it spent doing it */
+    private static class StageStats {
+        private final LongAdder items = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+
+        void record(long byteCount, long nanos) {
+            bytes.add(byteCount);
+            busyNanos.add(nanos);
+        }
+
+        Map<String, Object> toMap() {
+            double busySeconds = busyNanos.sum() / 1_000_000_000.0;
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("items", items.sum());
+            map.put("bytes", bytes.sum());
+            map.put("busyMillis", TimeUnit.NANOSECONDS.toMillis(busyNanos.sum()));
+            map.put("itemsPerSecond", busySeconds > 0 ? Math.round(items.sum() / busySeconds) : 0);
+            map.put("megabytesPerSecond", busySeconds > 0 ? Math.round(bytes.sum() / busySeconds / (1024 * 1024)) : 0);
+            return map;
+        }
+    }
+
+    /** What an import created, with per-stage throughput */
+    public record ImportResult(int directories, int files, long bytes, long elapsedMillis,
+                               Map<String, Map<String, Object>> stages) {
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.filemanagement.Models;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "blobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BlobModel {
+
+    // Content-addressed: the key is the SHA-256 of the content
+    @Id
+    @Column(length = 64)
+    private String storageKey;
+
+    private Long size;
+
+    // Content coding of the stored bytes (e.g. "gzip"), null when stored raw; storedSize is then the size on storage
+    @Column(length = 16)
+    private String codec;
+
+    private Long storedSize;
+
+    // Number of FileModel rows pointing at this blob
+    @Column(nullable = false)
+    private Long refCount;
+
+    // Set when the blob is stored inside a pack segment instead of a file of its own; it spans size bytes from packOffset
+    private Integer packSegment;
+
+    private Long packOffset;
+
+    private LocalDateTime createdAt;
+
+    // Last time a file took a reference; the garbage collector leaves recently touched blobs alone
+    private LocalDateTime touchedAt;
+
+    @PrePersist
+    public void onCreate() {
+        this.createdAt = LocalDateTime.now();
+        this.touchedAt = this.createdAt;
+    }
+
+    /** Bytes the blob takes on storage */
+    public long storedLength() {
+        return storedSize != null ? storedSize : size;
+    }
+}
@@ -5,7 +5,16 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "files")
+// indexes are created by the Flyway migrations (db/migration); listed here to keep them next to the queries' columns
+@Table(name = "files", indexes = {
+        @Index(name = "idx_files_storage_key", columnList = "storageKey"),
+        @Index(name = "idx_files_deleted", columnList = "deletedAt, folder_id"),
+        @Index(name = "idx_files_bin_owner", columnList = "uploaded_by, deletedAt"),
+        // keyset listings: one index per sort order, scanned from the cursor on
+        @Index(name = "idx_files_listing_name", columnList = "folder_id, deletedAt, name, id"),
+        @Index(name = "idx_files_listing_size", columnList = "folder_id, deletedAt, size, id"),
+        @Index(name = "idx_files_listing_modified", columnList = "folder_id, deletedAt, modifiedAt, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -13,16 +22,22 @@ import java.time.LocalDateTime;
 public class FileModel {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "files_seq")
+    @SequenceGenerator(name = "files_seq", sequenceName = "files_seq", allocationSize = 500)  // ids handed out in blocks so inserts can be batched
     private Long id;
 
     private String name;
 
-    @Column(unique = true, nullable = false)
+    // Shared by every file with the same content (see BlobModel); older rows have a key of their own
+    @Column(nullable = false)
     private String storageKey;
 
     private Long size;
 
+    // SHA-256 of the content, hex encoded
+    @Column(length = 64)
+    private String contentHash;
+
     private String type;
 
     private LocalDateTime createdAt;
@@ -31,14 +46,18 @@ public class FileModel {
 
     private LocalDateTime deletedAt;
 
-    // The folder this file belongs to
-    @ManyToOne
+    // The folder this file belongs to; lazy, listings read the id from the foreign key
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "folder_id")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     private FolderModel folder;
 
     // The user who uploaded the file
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "uploaded_by")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     private UserModel uploadedBy;
 
 
@@ -6,7 +6,16 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "folders")
+// indexes are created by the Flyway migrations (db/migration); listed here to keep them next to the queries' columns
+@Table(name = "folders", indexes = {
+        @Index(name = "idx_folders_path", columnList = "path"),
+        @Index(name = "idx_folders_parent_name", columnList = "parent_id, name"),
+        @Index(name = "idx_folders_deleted", columnList = "deletedAt, parent_id"),
+        @Index(name = "idx_folders_bin_owner", columnList = "created_by, deletedAt"),
+        // keyset listings: one index per sort order, scanned from the cursor on
+        @Index(name = "idx_folders_listing_name", columnList = "parent_id, deletedAt, name, id"),
+        @Index(name = "idx_folders_listing_modified", columnList = "parent_id, deletedAt, modifiedAt, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -14,22 +23,31 @@ import java.util.List;
 public class FolderModel {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "folders_seq")
+    @SequenceGenerator(name = "folders_seq", sequenceName = "folders_seq", allocationSize = 500)  // ids handed out in blocks so inserts can be batched
     private Long id;
 
     @Column(nullable = false)
     private String name;
 
-    // For nested folders
-    @ManyToOne
+    // For nested folders; lazy, so loading a folder no longer drags in its whole ancestor chain
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "parent_id")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     private FolderModel parentFolder;
 
     // The user who created the folder
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "created_by")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     private UserModel createdBy;
 
+    // Materialized ancestor chain: "/" for top level folders, "/1/5/" for a folder under 5 under 1
+    @Column(length = 760)
+    private String path;
+
     private LocalDateTime createdAt;
 
     private LocalDateTime modifiedAt;
@@ -37,6 +55,25 @@ public class FolderModel {
     @Column(nullable = true)
     private LocalDateTime deletedAt;
 
+    // Rollups of the subtree below: bytes, files and folders. Only ever changed by delta updates in SQL
+    // (FolderRollupHelper), so saving a loaded folder never writes back a stale count
+    @Column(nullable = false, updatable = false)
+    @Builder.Default
+    private Long totalSize = 0L;
+
+    @Column(nullable = false, updatable = false)
+    @Builder.Default
+    private Long fileCount = 0L;
+
+    @Column(nullable = false, updatable = false)
+    @Builder.Default
+    private Long folderCount = 0L;
+
+    /** Path prefix shared by every descendant of this folder */
+    public String descendantPathPrefix() {
+        return path + id + "/";
+    }
+
     @PrePersist
     public void onCreate() {
         this.createdAt = LocalDateTime.now();
@@ -0,0 +1,84 @@
+package com.example.filemanagement.Models;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDateTime;
+
+@Entity
+// indexes are created by the Flyway migrations (db/migration); listed here to keep them next to the queries' columns
+@Table(name = "jobs", indexes = {
+        @Index(name = "idx_jobs_user_status", columnList = "user_id, status"),
+        @Index(name = "idx_jobs_status_finished", columnList = "status, finishedAt")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class JobModel {
+
+    public enum Type {
+        ZIP_IMPORT, ZIP_EXPORT, BIN, RESTORE, DELETE
+    }
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED;
+
+        public boolean isFinished() {
+            return this == SUCCEEDED || this == FAILED;
+        }
+    }
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Type type;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status;
+
+    // The folder worked on; for an import, the folder imported into (null = top level). No foreign key: a delete removes it
+    private Long folderId;
+
+    // The user who submitted the job
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    @JoinColumn(name = "user_id")
+    private UserModel user;
+
+    // What the job expects to get through, from the folder's rollups; null when not known up front (imports)
+    private Long itemsTotal;
+
+    private Long bytesTotal;
+
+    // Progress so far, written every jobs.progress-flush-ms while running
+    @Column(nullable = false)
+    @Builder.Default
+    private Long itemsDone = 0L;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Long bytesDone = 0L;
+
+    // Summary of the outcome, or the error of a failed job
+    @Column(length = 1000)
+    private String message;
+
+    // Download name of the file a job produced (exports)
+    private String resultName;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime startedAt;
+
+    private LocalDateTime finishedAt;
+
+    @PrePersist
+    public void onCreate() {
+        this.createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.filemanagement.Models;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+@Entity
+@Table(name = "upload_chunks", indexes = @Index(name = "idx_upload_chunks_session", columnList = "session_id, startOffset"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UploadChunkModel {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    @JoinColumn(name = "session_id", nullable = false)
+    private UploadSessionModel session;
+
+    // Bytes [startOffset, endOffset) of the file that are on disk
+    @Column(nullable = false)
+    private Long startOffset;
+
+    @Column(nullable = false)
+    private Long endOffset;
+}
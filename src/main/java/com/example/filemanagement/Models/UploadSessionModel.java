@@ -0,0 +1,67 @@
+package com.example.filemanagement.Models;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "upload_sessions", indexes = @Index(name = "idx_upload_sessions_modified", columnList = "modifiedAt"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UploadSessionModel {
+
+    public enum Status {
+        OPEN, COMPLETING
+    }
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Column(nullable = false)
+    private String fileName;
+
+    private String contentType;
+
+    // Size the client announced; chunks must stay inside it
+    @Column(nullable = false)
+    private Long totalSize;
+
+    // The folder the finished file goes into
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    @JoinColumn(name = "folder_id")
+    private FolderModel folder;
+
+    // The user who uploads the file
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    @JoinColumn(name = "user_id")
+    private UserModel user;
+
+    // OPEN takes chunks; COMPLETING while the received file is stored, after which the session is gone
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    @Builder.Default
+    private Status status = Status.OPEN;
+
+    private LocalDateTime createdAt;
+
+    // Last chunk received; sessions idle for longer than uploads.session-expiry-hours are purged
+    private LocalDateTime modifiedAt;
+
+    @PrePersist
+    public void onCreate() {
+        this.createdAt = LocalDateTime.now();
+        this.modifiedAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    public void onUpdate() {
+        this.modifiedAt = LocalDateTime.now();
+    }
+}
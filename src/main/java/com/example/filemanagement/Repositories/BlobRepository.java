@@ -0,0 +1,40 @@
+package com.example.filemanagement.Repositories;
+
+import com.example.filemanagement.Models.BlobModel;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface BlobRepository extends JpaRepository<BlobModel, String> {
+
+    // take a reference, creating the row on first use; MySQL reports 1 row for an insert, 2 for an update
+    @Modifying
+    @Transactional
+    @Query(value = "insert into blobs (storage_key, size, ref_count, created_at, touched_at) values (:storageKey, :size, 1, now(6), now(6)) " +
+            "on duplicate key update ref_count = ref_count + 1, touched_at = now(6)", nativeQuery = true)
+    int acquire(@Param("storageKey") String storageKey, @Param("size") long size);
+
+    // row locks make a concurrent acquire of the same content wait until the blob is gone for good
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from BlobModel b where b.storageKey in :storageKeys")
+    List<BlobModel> lockAllByStorageKeyIn(@Param("storageKeys") Collection<String> storageKeys);
+
+    // live bytes per pack segment; whatever else a segment holds belongs to released blobs
+    @Query("select b.packSegment, sum(coalesce(b.storedSize, b.size)) from BlobModel b where b.packSegment is not null group by b.packSegment")
+    List<Object[]> sumSizeByPackSegment();
+
+    // keyset walk over all blobs, for the garbage collector's incremental passes
+    @Query("select b.storageKey from BlobModel b where b.storageKey > :after order by b.storageKey")
+    List<String> findStorageKeysAfter(@Param("after") String after, Limit limit);
+
+    @Query("select b.storageKey from BlobModel b where b.packSegment = :segment")
+    List<String> findStorageKeysByPackSegment(@Param("segment") Integer segment);
+}
@@ -1,17 +1,97 @@
 package com.example.filemanagement.Repositories;
 
 
+import com.example.filemanagement.DTOs.FileDto;
 import com.example.filemanagement.Models.FileModel;
 import com.example.filemanagement.Models.FolderModel;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface FileRepository extends JpaRepository<FileModel,Long> {
 
+    // metadata without loading the file's folder or uploader
+    @Query("select new com.example.filemanagement.DTOs.FileDto(f.id, f.name, f.storageKey, f.size, f.type, " +
+            "f.createdAt, f.modifiedAt, f.deletedAt, f.folder.id, f.uploadedBy.id) from FileModel f where f.id = :id")
+    Optional<FileDto> findDtoById(@Param("id") Long id);
+
     List<FileModel> findByFolderAndDeletedAtIsNull(FolderModel folder);
 
     List<FileModel> findByFolder(FolderModel folder);
 
-    List<FileModel> findByDeletedAtIsNotNullAndFolderDeletedAtIsNull();
+    // files per storage key, binned ones included: what the blobs' reference counts should be
+    @Query("select f.storageKey, count(f) from FileModel f where f.storageKey in :storageKeys group by f.storageKey")
+    List<Object[]> countByStorageKeyIn(@Param("storageKeys") Collection<String> storageKeys);
+
+    // bin entries past retention, oldest first, through the deleted_at index; skipped ones (never empty) left out
+    @Query("select fi from FileModel fi where fi.deletedAt < :cutoff and fi.id not in :skipped order by fi.deletedAt")
+    List<FileModel> findExpired(@Param("cutoff") LocalDateTime cutoff, @Param("skipped") Collection<Long> skipped, Limit limit);
+
+    // those of the given files still past retention
+    @Query("select fi from FileModel fi where fi.id in :ids and fi.deletedAt < :cutoff")
+    List<FileModel> findExpiredIn(@Param("cutoff") LocalDateTime cutoff, @Param("ids") Collection<Long> ids);
+
+    // every file below the given folder (deleted or not) through the folder path index
+    @Query("select fi from FileModel fi join fi.folder f where f.id = :rootId or f.path like concat(:prefix, '%')")
+    List<FileModel> findInSubtree(@Param("rootId") Long rootId, @Param("prefix") String descendantPrefix);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update FileModel fi set fi.deletedAt = :deletedAt where fi.deletedAt is null and fi.folder.id in " +
+            "(select f.id from FolderModel f where f.id = :rootId or f.path like concat(:prefix, '%'))")
+    int softDeleteInSubtree(@Param("rootId") Long rootId,
+                            @Param("prefix") String descendantPrefix,
+                            @Param("deletedAt") LocalDateTime deletedAt);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update FileModel fi set fi.deletedAt = null where fi.deletedAt = :deletedAt and fi.folder.id in " +
+            "(select f.id from FolderModel f where f.id = :rootId or f.path like concat(:prefix, '%'))")
+    int restoreInSubtree(@Param("rootId") Long rootId,
+                         @Param("prefix") String descendantPrefix,
+                         @Param("deletedAt") LocalDateTime deletedAt);
+
+    // the same two updates for a chunk of the subtree's folders, for jobs reporting progress as they go
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update FileModel fi set fi.deletedAt = :deletedAt where fi.deletedAt is null and fi.folder.id in :folderIds")
+    int softDeleteInFolders(@Param("folderIds") Collection<Long> folderIds, @Param("deletedAt") LocalDateTime deletedAt);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update FileModel fi set fi.deletedAt = null where fi.deletedAt = :deletedAt and fi.folder.id in :folderIds")
+    int restoreInFolders(@Param("folderIds") Collection<Long> folderIds, @Param("deletedAt") LocalDateTime deletedAt);
+
+    // bytes of the files in these folders binned at deletedAt
+    @Query("select coalesce(sum(fi.size), 0) from FileModel fi where fi.deletedAt = :deletedAt and fi.folder.id in :folderIds")
+    long sumSizeInFoldersDeletedAt(@Param("folderIds") Collection<Long> folderIds, @Param("deletedAt") LocalDateTime deletedAt);
+
+    // bytes and files each folder directly holds, counting the files binned together with it (see FolderRollupHelper)
+    @Query("select f.id, sum(fi.size), count(fi) from FileModel fi join fi.folder f " +
+            "where (fi.deletedAt is null and f.deletedAt is null) or fi.deletedAt = f.deletedAt group by f.id")
+    List<Object[]> sumDirectRollups();
+
+    // batch operations: one statement for every file of the selection (null folder = top level)
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update FileModel fi set fi.folder = :folder, fi.modifiedAt = :now where fi.id in :ids")
+    int moveAll(@Param("ids") Collection<Long> ids, @Param("folder") FolderModel folder, @Param("now") LocalDateTime now);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update FileModel fi set fi.deletedAt = :now, fi.modifiedAt = :now where fi.id in :ids and fi.deletedAt is null")
+    int binAll(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update FileModel fi set fi.deletedAt = null, fi.modifiedAt = :now where fi.id in :ids and fi.deletedAt is not null")
+    int restoreAll(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update FileModel fi set fi.name = :name, fi.modifiedAt = :now where fi.id = :id")
+    int rename(@Param("id") Long id, @Param("name") String name, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("delete from FileModel f where f.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
 }
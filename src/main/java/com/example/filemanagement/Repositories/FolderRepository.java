@@ -1,21 +1,128 @@
 package com.example.filemanagement.Repositories;
 
+import com.example.filemanagement.DTOs.FolderDto;
 import com.example.filemanagement.Models.FolderModel;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface FolderRepository extends JpaRepository<FolderModel,Long> {
+
+    // details without loading the parent chain or the creator
+    @Query("select new com.example.filemanagement.DTOs.FolderDto(f.id, f.name, f.parentFolder.id, f.createdBy.id, " +
+            "f.createdAt, f.modifiedAt, f.deletedAt, f.totalSize, f.fileCount, f.folderCount) from FolderModel f where f.id = :id")
+    Optional<FolderDto> findDtoById(@Param("id") Long id);
+
     boolean existsByNameAndParentFolder_Id(String name, Long parentId);
 
+    // a live sibling other than the folder itself already has the name (same collation as the column)
+    boolean existsByParentFolder_IdAndNameAndDeletedAtIsNullAndIdNot(Long parentId, String name, Long id);
+
     List<FolderModel> findByParentFolderAndDeletedAtIsNull(FolderModel folder);
 
     boolean existsByParentFolderAndNameAndDeletedAtIsNull(FolderModel newParent, String name);
 
     List<FolderModel> findByParentFolder(FolderModel folder);
 
-    List<FolderModel> findByDeletedAtIsNotNullAndParentFolderDeletedAtIsNull();
-
     Optional<FolderModel> findByNameAndParentFolder(String name, FolderModel parentFolder);
+
+    // bin folders past retention with nothing left below them (nor an upload heading there), deepest first;
+    // skipped ones (never empty) left out
+    @Query("select f from FolderModel f where f.deletedAt < :cutoff and f.id not in :skipped " +
+            "and not exists (select 1 from FolderModel c where c.parentFolder = f) " +
+            "and not exists (select 1 from FileModel fi where fi.folder = f) " +
+            "and not exists (select 1 from UploadSessionModel s where s.folder = f) " +
+            "order by length(f.path) desc")
+    List<FolderModel> findExpiredLeaves(@Param("cutoff") LocalDateTime cutoff, @Param("skipped") Collection<Long> skipped, Limit limit);
+
+    // those of the given folders still past retention with nothing below them
+    @Query("select f from FolderModel f where f.id in :ids and f.deletedAt < :cutoff " +
+            "and not exists (select 1 from FolderModel c where c.parentFolder = f) " +
+            "and not exists (select 1 from FileModel fi where fi.folder = f) " +
+            "and not exists (select 1 from UploadSessionModel s where s.folder = f)")
+    List<FolderModel> findExpiredLeavesIn(@Param("cutoff") LocalDateTime cutoff, @Param("ids") Collection<Long> ids);
+
+    // whole subtree (root included) through the path index
+    @Query("select f from FolderModel f where f.id = :rootId or f.path like concat(:prefix, '%')")
+    List<FolderModel> findSubtree(@Param("rootId") Long rootId, @Param("prefix") String descendantPrefix);
+
+    // ids only, for evicting a subtree from the listing cache
+    @Query("select f.id from FolderModel f where f.id = :rootId or f.path like concat(:prefix, '%')")
+    List<Long> findSubtreeIds(@Param("rootId") Long rootId, @Param("prefix") String descendantPrefix);
+
+    // moves a subtree: rewrites the path of every folder below the moved one in a single statement
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update FolderModel f set f.path = concat(:newPrefix, substring(f.path, :oldPrefixLength + 1)) " +
+            "where f.path like concat(:oldPrefix, '%')")
+    int rewritePathPrefix(@Param("oldPrefix") String oldPrefix,
+                          @Param("oldPrefixLength") int oldPrefixLength,
+                          @Param("newPrefix") String newPrefix);
+
+    // batch moves: every selected folder under the same new parent in one statement; their subtrees follow via rewritePathPrefix
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update FolderModel f set f.parentFolder = :parent, f.path = :path, f.modifiedAt = :now where f.id in :ids")
+    int moveAll(@Param("ids") Collection<Long> ids, @Param("parent") FolderModel parent,
+                @Param("path") String path, @Param("now") LocalDateTime now);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update FolderModel f set f.name = :name, f.modifiedAt = :now where f.id = :id")
+    int rename(@Param("id") Long id, @Param("name") String name, @Param("now") LocalDateTime now);
+
+    // bin a whole subtree at once; folders already in the bin keep their own timestamp
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update FolderModel f set f.deletedAt = :deletedAt " +
+            "where (f.id = :rootId or f.path like concat(:prefix, '%')) and f.deletedAt is null")
+    int softDeleteSubtree(@Param("rootId") Long rootId,
+                          @Param("prefix") String descendantPrefix,
+                          @Param("deletedAt") LocalDateTime deletedAt);
+
+    // the same for a chunk of the subtree's folder ids
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update FolderModel f set f.deletedAt = :deletedAt where f.id in :ids and f.deletedAt is null")
+    int softDeleteByIds(@Param("ids") Collection<Long> ids, @Param("deletedAt") LocalDateTime deletedAt);
+
+    // restore only what was binned together with the subtree root
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update FolderModel f set f.deletedAt = null " +
+            "where (f.id = :rootId or f.path like concat(:prefix, '%')) and f.deletedAt = :deletedAt")
+    int restoreSubtree(@Param("rootId") Long rootId,
+                       @Param("prefix") String descendantPrefix,
+                       @Param("deletedAt") LocalDateTime deletedAt);
+
+    // rollups: deltas added in place so concurrent changes below a folder never overwrite each other
+    @Modifying
+    @Query(value = "update folders set total_size = total_size + :size, file_count = file_count + :files, " +
+            "folder_count = folder_count + :folders where id = :id", nativeQuery = true)
+    int addToRollups(@Param("id") Long id, @Param("size") long size, @Param("files") long files, @Param("folders") long folders);
+
+    @Modifying
+    @Query(value = "update folders set total_size = :size, file_count = :files, folder_count = :folders where id = :id", nativeQuery = true)
+    int setRollups(@Param("id") Long id, @Param("size") long size, @Param("files") long files, @Param("folders") long folders);
+
+    // id and stored rollups of these folders, row-locked in id order: deltas from changes below them wait until their totals have moved
+    @Query(value = "select id, total_size, file_count, folder_count from folders where id in :ids order by id for update", nativeQuery = true)
+    List<Object[]> lockRollups(@Param("ids") Collection<Long> ids);
+
+    // id, parent id, deletedAt, path and stored rollups of every folder, for the bottom-up recompute
+    @Query("select f.id, f.parentFolder.id, f.deletedAt, f.path, f.totalSize, f.fileCount, f.folderCount from FolderModel f")
+    List<Object[]> findRollupNodes();
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update FolderModel f set f.deletedAt = null where f.id in :ids and f.deletedAt = :deletedAt")
+    int restoreByIds(@Param("ids") Collection<Long> ids, @Param("deletedAt") LocalDateTime deletedAt);
+
+    @Modifying
+    @Query("update FolderModel f set f.parentFolder = null where f.id in :ids")
+    int detachParents(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("delete from FolderModel f where f.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
 }
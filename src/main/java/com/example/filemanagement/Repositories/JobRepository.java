@@ -0,0 +1,62 @@
+package com.example.filemanagement.Repositories;
+
+import com.example.filemanagement.Models.JobModel;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface JobRepository extends JpaRepository<JobModel, String> {
+
+    // a user's jobs waiting or running, against the per-user limit
+    long countByUser_IdAndStatusIn(Long userId, Collection<JobModel.Status> statuses);
+
+    List<JobModel> findByUser_IdOrderByCreatedAtDesc(Long userId, Limit limit);
+
+    @Query("select j.id from JobModel j where j.status = :status order by j.createdAt")
+    List<String> findIdsByStatus(@Param("status") JobModel.Status status);
+
+    List<JobModel> findByStatus(JobModel.Status status);
+
+    // finished jobs past retention, whose results can go
+    @Query("select j from JobModel j where j.status in :statuses and j.finishedAt < :cutoff")
+    List<JobModel> findFinishedBefore(@Param("statuses") Collection<JobModel.Status> statuses,
+                                      @Param("cutoff") LocalDateTime cutoff, Limit limit);
+
+    // only one worker gets to start a queued job
+    @Modifying
+    @Transactional
+    @Query("update JobModel j set j.status = :to, j.startedAt = :now where j.id = :id and j.status = :from")
+    int changeStatus(@Param("id") String id, @Param("from") JobModel.Status from, @Param("to") JobModel.Status to,
+                     @Param("now") LocalDateTime now);
+
+    default boolean claim(String id) {
+        return changeStatus(id, JobModel.Status.QUEUED, JobModel.Status.RUNNING, LocalDateTime.now()) == 1;
+    }
+
+    @Modifying
+    @Transactional
+    @Query("update JobModel j set j.itemsDone = :items, j.bytesDone = :bytes where j.id = :id")
+    int updateProgress(@Param("id") String id, @Param("items") long items, @Param("bytes") long bytes);
+
+    @Modifying
+    @Transactional
+    @Query("update JobModel j set j.status = :status, j.itemsDone = :items, j.bytesDone = :bytes, j.message = :message, " +
+            "j.finishedAt = :now where j.id = :id")
+    int finish(@Param("id") String id, @Param("status") JobModel.Status status, @Param("items") long items,
+               @Param("bytes") long bytes, @Param("message") String message, @Param("now") LocalDateTime now);
+
+    // same, unless the job finished meanwhile
+    @Modifying
+    @Transactional
+    @Query("update JobModel j set j.status = :status, j.itemsDone = :items, j.bytesDone = :bytes, j.message = :message, " +
+            "j.finishedAt = :now where j.id = :id and j.status = com.example.filemanagement.Models.JobModel.Status.RUNNING")
+    int finishIfRunning(@Param("id") String id, @Param("status") JobModel.Status status, @Param("items") long items,
+                        @Param("bytes") long bytes, @Param("message") String message, @Param("now") LocalDateTime now);
+}
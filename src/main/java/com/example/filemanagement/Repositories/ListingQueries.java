@@ -0,0 +1,143 @@
+package com.example.filemanagement.Repositories;
+
+import com.example.filemanagement.DTOs.FileDto;
+import com.example.filemanagement.DTOs.FolderDto;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Keyset-paginated listings. Each page continues after the (sort value, id) of the previous page's last row,
+ * so it costs one index range scan however deep the client pages. The JPQL is assembled per scope and sort,
+ * since derived queries cannot express the keyset predicate. Rows come back as DTOs holding just the listed
+ * columns; parent and user ids are read from the foreign keys, no entity or association is loaded.
+ */
+@Repository
+public class ListingQueries {
+
+    public enum Scope {
+        FOLDER,  // live children of a folder
+        ROOT,    // everything at the top level
+        BIN      // one user's binned items whose parent is not binned too
+    }
+
+    public enum Sort {
+        NAME, SIZE, MODIFIED_AT;
+
+        public static Sort parse(String value) {
+            return switch (value == null ? "name" : value) {
+                case "name" -> NAME;
+                case "size" -> SIZE;
+                case "modifiedAt" -> MODIFIED_AT;
+                default -> throw new IllegalArgumentException("Unknown sort '" + value + "', use name, size or modifiedAt");
+            };
+        }
+    }
+
+    /** Position after which the next page starts; null for the first page */
+    public record After(String value, Long id) {
+    }
+
+    // constructor projections, in the field order of the DTOs
+    private static final String FOLDER_DTO = "select new com.example.filemanagement.DTOs.FolderDto("
+            + "x.id, x.name, x.parentFolder.id, x.createdBy.id, x.createdAt, x.modifiedAt, x.deletedAt, "
+            + "x.totalSize, x.fileCount, x.folderCount)";
+    private static final String FILE_DTO = "select new com.example.filemanagement.DTOs.FileDto("
+            + "x.id, x.name, x.storageKey, x.size, x.type, x.createdAt, x.modifiedAt, x.deletedAt, x.folder.id, x.uploadedBy.id)";
+
+    private final EntityManager entityManager;
+
+    public ListingQueries(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /** scopeId is the parent folder for FOLDER, the owner for BIN, unused for ROOT */
+    public List<FolderDto> folders(Scope scope, Long scopeId, Sort sort, boolean descending, After after, int limit) {
+        String from = switch (scope) {
+            case FOLDER -> FOLDER_DTO + " from FolderModel x where x.parentFolder.id = :scopeId and x.deletedAt is null";
+            case ROOT -> FOLDER_DTO + " from FolderModel x where x.parentFolder is null";
+            case BIN -> FOLDER_DTO + " from FolderModel x left join x.parentFolder p " +
+                    "where x.createdBy.id = :scopeId and x.deletedAt is not null and p.deletedAt is null";
+        };
+        return page(FolderDto.class, from, folderColumn(sort), scopeId, descending, after, limit, folderValue(sort, after));
+    }
+
+    public List<FileDto> files(Scope scope, Long scopeId, Sort sort, boolean descending, After after, int limit) {
+        String from = switch (scope) {
+            case FOLDER -> FILE_DTO + " from FileModel x where x.folder.id = :scopeId and x.deletedAt is null";
+            case ROOT -> FILE_DTO + " from FileModel x where x.folder is null";
+            case BIN -> FILE_DTO + " from FileModel x left join x.folder p " +
+                    "where x.uploadedBy.id = :scopeId and x.deletedAt is not null and p.deletedAt is null";
+        };
+        return page(FileDto.class, from, fileColumn(sort), scopeId, descending, after, limit, fileValue(sort, after));
+    }
+
+    /** Folder rollups change with every upload below them and are not indexed; sorting by size orders folders by name */
+    public static String folderSortValue(FolderDto folder, Sort sort) {
+        return sort == Sort.MODIFIED_AT ? String.valueOf(folder.getModifiedAt()) : folder.getName();
+    }
+
+    public static String fileSortValue(FileDto file, Sort sort) {
+        return switch (sort) {
+            case NAME -> file.getName();
+            case SIZE -> String.valueOf(file.getSize());
+            case MODIFIED_AT -> String.valueOf(file.getModifiedAt());
+        };
+    }
+
+    private <T> List<T> page(Class<T> type, String from, String column, Long scopeId, boolean descending,
+                             After after, int limit, Object afterValue) {
+        String comparison = descending ? "<" : ">";
+        String direction = descending ? "desc" : "asc";
+
+        StringBuilder jpql = new StringBuilder(from);
+        if (after != null) {
+            jpql.append(" and (").append(column).append(' ').append(comparison).append(" :afterValue")
+                    .append(" or (").append(column).append(" = :afterValue and x.id ").append(comparison).append(" :afterId))");
+        }
+        jpql.append(" order by ").append(column).append(' ').append(direction).append(", x.id ").append(direction);
+
+        TypedQuery<T> query = entityManager.createQuery(jpql.toString(), type);
+        if (from.contains(":scopeId")) {
+            query.setParameter("scopeId", scopeId);
+        }
+        if (after != null) {
+            query.setParameter("afterValue", afterValue);
+            query.setParameter("afterId", after.id());
+        }
+        return query.setMaxResults(limit).getResultList();
+    }
+
+    private static String folderColumn(Sort sort) {
+        return sort == Sort.MODIFIED_AT ? "x.modifiedAt" : "x.name";
+    }
+
+    private static String fileColumn(Sort sort) {
+        return switch (sort) {
+            case NAME -> "x.name";
+            case SIZE -> "x.size";
+            case MODIFIED_AT -> "x.modifiedAt";
+        };
+    }
+
+    private static Object folderValue(Sort sort, After after) {
+        if (after == null) {
+            return null;
+        }
+        return sort == Sort.MODIFIED_AT ? LocalDateTime.parse(after.value()) : after.value();
+    }
+
+    private static Object fileValue(Sort sort, After after) {
+        if (after == null) {
+            return null;
+        }
+        return switch (sort) {
+            case NAME -> after.value();
+            case SIZE -> Long.valueOf(after.value());
+            case MODIFIED_AT -> LocalDateTime.parse(after.value());
+        };
+    }
+}
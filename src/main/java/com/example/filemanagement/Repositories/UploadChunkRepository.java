@@ -0,0 +1,19 @@
+package com.example.filemanagement.Repositories;
+
+import com.example.filemanagement.Models.UploadChunkModel;
+import com.example.filemanagement.Models.UploadSessionModel;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface UploadChunkRepository extends JpaRepository<UploadChunkModel, Long> {
+
+    List<UploadChunkModel> findBySessionOrderByStartOffsetAsc(UploadSessionModel session);
+
+    @Modifying
+    @Query("delete from UploadChunkModel c where c.session = :session")
+    int deleteBySession(@Param("session") UploadSessionModel session);
+}
@@ -0,0 +1,31 @@
+package com.example.filemanagement.Repositories;
+
+import com.example.filemanagement.Models.UploadSessionModel;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSessionModel, String> {
+
+    // Serializes recording chunks, complete and abort of one session
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from UploadSessionModel s where s.id = :id")
+    Optional<UploadSessionModel> lockById(@Param("id") String id);
+
+    // sessions uploading into these folders, row-locked like lockById; a folder deleted for good takes them along
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from UploadSessionModel s where s.folder.id in :folderIds")
+    List<UploadSessionModel> lockAllByFolderIdIn(@Param("folderIds") Collection<Long> folderIds);
+
+    // sessions nobody sent a chunk to since the cutoff, oldest first
+    @Query("select s.id from UploadSessionModel s where s.modifiedAt < :cutoff order by s.modifiedAt")
+    List<String> findIdsIdleSince(@Param("cutoff") LocalDateTime cutoff, Limit limit);
+}
@@ -1,8 +1,18 @@
 package com.example.filemanagement.Repositories;
 
 import com.example.filemanagement.Models.UserModel;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<UserModel,Long> {
 
+    // Serializes what is checked and written per user, e.g. submitting jobs against the per-user limit
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select u from UserModel u where u.id = :id")
+    Optional<UserModel> lockById(@Param("id") Long id);
 }
@@ -0,0 +1,57 @@
+package com.example.filemanagement.Service;
+
+import com.example.filemanagement.Helpers.BinPurger;
+import com.example.filemanagement.Helpers.FolderRollupHelper;
+import com.example.filemanagement.Helpers.StorageMigrationHelper;
+import com.example.filemanagement.Storage.BlobGarbageCollector;
+import com.example.filemanagement.Storage.PackCompactor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+@Service
+public class AdminService {
+
+    private final StorageMigrationHelper storageMigrationHelper;
+    private final PackCompactor packCompactor;
+    private final FolderRollupHelper folderRollupHelper;
+    private final BinPurger binPurger;
+    private final BlobGarbageCollector blobGarbageCollector;
+
+    public AdminService(StorageMigrationHelper storageMigrationHelper, PackCompactor packCompactor,
+                        FolderRollupHelper folderRollupHelper, BinPurger binPurger,
+                        BlobGarbageCollector blobGarbageCollector) {
+        this.storageMigrationHelper = storageMigrationHelper;
+        this.packCompactor = packCompactor;
+        this.folderRollupHelper = folderRollupHelper;
+        this.binPurger = binPurger;
+        this.blobGarbageCollector = blobGarbageCollector;
+    }
+
+    public ResponseEntity<?> startStorageMigration(int parallelism) {
+        if (!storageMigrationHelper.start(parallelism)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(storageMigrationHelper.status());  // one at a time
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(storageMigrationHelper.status());
+    }
+
+    public ResponseEntity<?> getStorageMigrationStatus() {
+        return ResponseEntity.ok(storageMigrationHelper.status());
+    }
+
+    public ResponseEntity<?> compactPacks() {
+        return ResponseEntity.ok(packCompactor.compact());
+    }
+
+    public ResponseEntity<?> collectGarbage() {
+        return ResponseEntity.ok(blobGarbageCollector.collect());
+    }
+
+    public ResponseEntity<?> recomputeFolderRollups() {
+        return ResponseEntity.ok(folderRollupHelper.recompute());
+    }
+
+    public ResponseEntity<?> purgeBin() {
+        return ResponseEntity.ok(binPurger.purge());
+    }
+}
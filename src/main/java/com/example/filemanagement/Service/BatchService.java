@@ -0,0 +1,373 @@
+package com.example.filemanagement.Service;
+
+import com.example.filemanagement.DTOs.BatchOperationDto;
+import com.example.filemanagement.DTOs.BatchResultDto;
+import com.example.filemanagement.Helpers.FileHelper;
+import com.example.filemanagement.Helpers.FolderHelper;
+import com.example.filemanagement.Helpers.FolderListingCache;
+import com.example.filemanagement.Helpers.FolderRollupHelper;
+import com.example.filemanagement.Models.FileModel;
+import com.example.filemanagement.Models.FolderModel;
+import com.example.filemanagement.Repositories.FileRepository;
+import com.example.filemanagement.Repositories.FolderRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Many selected files and folders changed in one request and one transaction. Each operation loads its items in
+ * one query and checks them one by one; what passes is applied with set-based statements, what fails is reported
+ * and left as it was while the rest goes through.
+ */
+@Service
+public class BatchService {
+
+    private static final Set<String> ACTIONS = Set.of("move", "rename", "bin", "restore", "delete");
+
+    private final FileRepository fileRepository;
+    private final FolderRepository folderRepository;
+    private final FileHelper fileHelper;
+    private final FolderHelper folderHelper;
+    private final FolderRollupHelper folderRollupHelper;
+    private final FolderListingCache folderListingCache;
+    private final int maxItems;
+
+    public BatchService(FileRepository fileRepository, FolderRepository folderRepository, FileHelper fileHelper,
+                        FolderHelper folderHelper, FolderRollupHelper folderRollupHelper,
+                        FolderListingCache folderListingCache,
+                        @Value("${batch.max-items:1000}") int maxItems) {
+        this.fileRepository = fileRepository;
+        this.folderRepository = folderRepository;
+        this.fileHelper = fileHelper;
+        this.folderHelper = folderHelper;
+        this.folderRollupHelper = folderRollupHelper;
+        this.folderListingCache = folderListingCache;
+        this.maxItems = maxItems;
+    }
+
+    /** Run the operations in order; a malformed operation rejects the whole batch before anything changed */
+    @Transactional
+    public ResponseEntity<BatchResultDto> execute(List<BatchOperationDto> operations) {
+        validate(operations);
+
+        BatchResultDto result = BatchResultDto.builder().build();
+        for (int i = 0; i < operations.size(); i++) {
+            Operation operation = new Operation(i, operations.get(i), result);
+            if ("file".equals(operation.target)) {
+                applyToFiles(operation);
+            } else {
+                applyToFolders(operation);
+            }
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    private void validate(List<BatchOperationDto> operations) {
+        if (operations == null || operations.isEmpty()) {
+            throw new IllegalArgumentException("No operations given");
+        }
+        int items = 0;
+        for (int i = 0; i < operations.size(); i++) {
+            BatchOperationDto operation = operations.get(i);
+            String action = lower(operation.getAction());
+            String target = lower(operation.getTarget());
+            if (action == null || !ACTIONS.contains(action)) {
+                throw new IllegalArgumentException("Operation " + i + ": action must be one of " + ACTIONS);
+            }
+            if (!"file".equals(target) && !"folder".equals(target)) {
+                throw new IllegalArgumentException("Operation " + i + ": target must be file or folder");
+            }
+            if (operation.getIds() == null || operation.getIds().isEmpty() || operation.getIds().contains(null)) {
+                throw new IllegalArgumentException("Operation " + i + ": ids are required");
+            }
+            if ("rename".equals(action) && (operation.getIds().size() != 1 || operation.getName() == null || operation.getName().isBlank())) {
+                throw new IllegalArgumentException("Operation " + i + ": rename takes one id and a new name");
+            }
+            if ("move".equals(action) && "folder".equals(target) && operation.getFolderId() == null) {
+                throw new IllegalArgumentException("Operation " + i + ": moving folders needs a folderId");
+            }
+            items += operation.getIds().size();
+        }
+        if (items > maxItems) {
+            throw new IllegalArgumentException("A batch takes at most " + maxItems + " items, got " + items);
+        }
+    }
+
+    // ---- files: every action is one statement for the whole selection ----
+
+    private void applyToFiles(Operation operation) {
+        FolderModel destination = null;
+        if ("move".equals(operation.action) && operation.dto.getFolderId() != null) {
+            destination = folderRepository.findById(operation.dto.getFolderId()).orElse(null);
+            if (destination == null) {
+                operation.failAll("Folder not found with id: " + operation.dto.getFolderId());
+                return;
+            }
+        }
+
+        Map<Long, FileModel> found = new HashMap<>();
+        for (FileModel file : fileRepository.findAllById(operation.ids)) {
+            found.put(file.getId(), file);
+        }
+        List<FileModel> files = new ArrayList<>();
+        for (Long id : operation.ids) {
+            FileModel file = found.get(id);
+            String problem = file == null ? "File not found with id: " + id : fileProblem(operation.action, file);
+            if (problem != null) {
+                operation.fail(id, problem);
+            } else {
+                files.add(file);
+            }
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);  // what the column keeps, so rollups can match it
+        List<Long> ids = files.stream().map(FileModel::getId).toList();
+        List<FolderRollupHelper.Change> changes = new ArrayList<>();
+        List<Long> listings = new ArrayList<>();
+        Long destinationId = destination != null ? destination.getId() : null;
+
+        for (FileModel file : files) {
+            Long folderId = FileHelper.folderIdOf(file);
+            FolderRollupHelper.Delta delta = FolderRollupHelper.of(file);
+            listings.add(folderId);
+            switch (operation.action) {
+                case "move" -> {
+                    changes.add(new FolderRollupHelper.Change(folderId, file.getDeletedAt(), delta.negate()));
+                    changes.add(new FolderRollupHelper.Change(destinationId, file.getDeletedAt(), delta));
+                }
+                case "bin" -> {  // out of the live totals
+                    changes.add(new FolderRollupHelper.Change(folderId, null, delta.negate()));
+                    changes.add(new FolderRollupHelper.Change(folderId, now, delta));
+                }
+                case "restore" -> {
+                    changes.add(new FolderRollupHelper.Change(folderId, file.getDeletedAt(), delta.negate()));
+                    changes.add(new FolderRollupHelper.Change(folderId, null, delta));
+                }
+                case "delete" -> changes.add(new FolderRollupHelper.Change(folderId, file.getDeletedAt(), delta.negate()));
+                default -> {
+                    // rename: same folder, same totals
+                }
+            }
+        }
+
+        switch (operation.action) {
+            case "move" -> {
+                fileRepository.moveAll(ids, destination, now);
+                listings.add(destinationId);
+            }
+            case "rename" -> fileRepository.rename(ids.getFirst(), operation.dto.getName(), now);
+            case "bin" -> fileRepository.binAll(ids, now);
+            case "restore" -> fileRepository.restoreAll(ids, now);
+            case "delete" -> {
+                fileRepository.deleteByIds(ids);
+                fileHelper.releaseBlobs(files.stream().map(FileModel::getStorageKey).toList());  // blobs still shared stay
+            }
+            default -> throw new IllegalArgumentException("Unknown action " + operation.action);
+        }
+        folderRollupHelper.applyAll(changes);
+        folderListingCache.invalidate(listings);
+        operation.succeeded(files.size());
+    }
+
+    private static String fileProblem(String action, FileModel file) {
+        return switch (action) {
+            case "bin" -> file.getDeletedAt() != null ? "File is already in the bin" : null;
+            case "restore" -> file.getDeletedAt() == null ? "File is not in recycle bin" : null;
+            default -> null;
+        };
+    }
+
+    // ---- folders: checked top-down, so a folder inside another selected one goes with it ----
+
+    private void applyToFolders(Operation operation) {
+        Map<Long, FolderModel> found = new HashMap<>();
+        for (FolderModel folder : folderRepository.findAllById(operation.ids)) {
+            found.put(folder.getId(), folder);
+        }
+        List<FolderModel> folders = new ArrayList<>();
+        for (Long id : operation.ids) {
+            FolderModel folder = found.get(id);
+            if (folder == null) {
+                operation.fail(id, "Folder not found with id: " + id);
+            } else {
+                folders.add(folder);
+            }
+        }
+        folders.sort(Comparator.comparingInt((FolderModel folder) -> folder.getPath().length()));  // ancestors before their subfolders
+
+        switch (operation.action) {
+            case "move" -> moveFolders(operation, folders);
+            case "rename" -> folders.forEach(folder -> renameFolder(operation, folder));
+            default -> {
+                List<FolderModel> accepted = new ArrayList<>();
+                for (FolderModel folder : folders) {
+                    subtreeAction(operation, folder, insideOf(folder, accepted), accepted);
+                }
+            }
+        }
+    }
+
+    // all under one parent in one statement, then one path rewrite per moved subtree
+    private void moveFolders(Operation operation, List<FolderModel> folders) {
+        FolderModel target = folderRepository.findById(operation.dto.getFolderId()).orElse(null);
+        if (target == null) {
+            folders.forEach(folder -> operation.fail(folder.getId(), "Parent folder not found"));
+            return;
+        }
+
+        Set<String> names = new HashSet<>();
+        for (FolderModel child : folderRepository.findByParentFolderAndDeletedAtIsNull(target)) {
+            names.add(child.getName());
+        }
+        List<FolderModel> accepted = new ArrayList<>();
+        int carried = 0;
+        for (FolderModel folder : folders) {
+            if (insideOf(folder, accepted) != null) {
+                carried++;  // moves along with the selected folder it is in
+            } else if (target.getId().equals(FolderHelper.parentIdOf(folder))) {
+                operation.fail(folder.getId(), "cannot move to same directory");
+            } else if (target.getId().equals(folder.getId()) || FolderHelper.isDescendantOf(target, folder)) {
+                operation.fail(folder.getId(), "cannot move a folder into itself or one of its subfolders");
+            } else if (!names.add(folder.getName())) {
+                operation.fail(folder.getId(), "A folder with the same name already exists in the target folder");
+            } else {
+                accepted.add(folder);
+            }
+        }
+        if (accepted.isEmpty()) {
+            return;
+        }
+
+        Map<Long, String> oldPrefixes = new LinkedHashMap<>();
+        List<FolderRollupHelper.Change> changes = new ArrayList<>();
+        List<Long> listings = new ArrayList<>(List.of(target.getId()));
+        Map<Long, FolderRollupHelper.Delta> totals = folderRollupHelper.lockedOf(accepted);
+        for (FolderModel folder : accepted) {
+            FolderRollupHelper.Delta delta = totals.get(folder.getId());
+            oldPrefixes.put(folder.getId(), folder.descendantPathPrefix());
+            changes.add(new FolderRollupHelper.Change(FolderHelper.parentIdOf(folder), folder.getDeletedAt(), delta.negate()));
+            changes.add(new FolderRollupHelper.Change(target.getId(), folder.getDeletedAt(), delta));
+            listings.add(folder.getId());
+            listings.add(FolderHelper.parentIdOf(folder));
+        }
+
+        String newPath = FolderHelper.childPath(target);
+        folderRepository.moveAll(oldPrefixes.keySet(), target, newPath, LocalDateTime.now());
+        oldPrefixes.forEach((id, oldPrefix) ->
+                folderRepository.rewritePathPrefix(oldPrefix, oldPrefix.length(), newPath + id + "/"));  // none is inside another
+        folderRollupHelper.applyAll(changes);
+        folderListingCache.invalidate(listings);
+        operation.succeeded(accepted.size() + carried);
+    }
+
+    // as renameOrMoveFolder: its own name again or a change of case is fine, only another live sibling's name is taken
+    private void renameFolder(Operation operation, FolderModel folder) {
+        String name = operation.dto.getName();
+        Long parentId = FolderHelper.parentIdOf(folder);
+        if (folderRepository.existsByParentFolder_IdAndNameAndDeletedAtIsNullAndIdNot(parentId, name, folder.getId())) {
+            operation.fail(folder.getId(), "A folder with name '" + name + "' already exists in this parent folder.");
+            return;
+        }
+        folderRepository.rename(folder.getId(), name, LocalDateTime.now());
+        folderListingCache.invalidate(folder.getId(), parentId);
+        operation.succeeded(1);
+    }
+
+    // bin, restore and delete work on whole subtrees; a folder inside one already handled went along with it
+    private void subtreeAction(Operation operation, FolderModel folder, FolderModel ancestor, List<FolderModel> accepted) {
+        switch (operation.action) {
+            case "bin" -> {
+                if (ancestor == null && folder.getDeletedAt() != null) {
+                    operation.fail(folder.getId(), "Folder is already in the bin");
+                    return;
+                }
+                if (ancestor == null) {
+                    folderHelper.softDeleteFolderRecursively(folder);
+                }
+            }
+            case "restore" -> {
+                if (ancestor != null) {
+                    folder = folderRepository.findById(folder.getId()).orElse(folder);  // may have come back with it
+                }
+                if (folder.getDeletedAt() == null) {
+                    if (ancestor == null) {
+                        operation.fail(folder.getId(), "Folder is not deleted");
+                        return;
+                    }
+                } else {
+                    folderHelper.restoreFolderRecursively(folder);  // binned separately before: restored on its own
+                }
+            }
+            case "delete" -> {
+                if (ancestor == null) {
+                    folderHelper.deleteFolderRecursively(folder);
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown action " + operation.action);
+        }
+        accepted.add(folder);
+        operation.succeeded(1);
+    }
+
+    // the selected folder, already handled, that this one lies below; null when none
+    private static FolderModel insideOf(FolderModel folder, List<FolderModel> accepted) {
+        for (FolderModel candidate : accepted) {
+            if (FolderHelper.isDescendantOf(folder, candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static String lower(String value) {
+        return value != null ? value.trim().toLowerCase() : null;
+    }
+
+    /** One operation of the batch and where its outcome is tallied */
+    private static final class Operation {
+        final int index;
+        final BatchOperationDto dto;
+        final String action;
+        final String target;
+        final Set<Long> ids;
+        final BatchResultDto result;
+
+        Operation(int index, BatchOperationDto dto, BatchResultDto result) {
+            this.index = index;
+            this.dto = dto;
+            this.action = lower(dto.getAction());
+            this.target = lower(dto.getTarget());
+            this.ids = new LinkedHashSet<>(dto.getIds());
+            this.result = result;
+        }
+
+        void fail(Long id, String message) {
+            result.getFailures().add(new BatchResultDto.Failure(index, target, id, message));
+            result.setFailed(result.getFailed() + 1);
+        }
+
+        void failAll(String message) {
+            ids.forEach(id -> fail(id, message));
+        }
+
+        void succeeded(int count) {
+            result.setSucceeded(result.getSucceeded() + count);
+        }
+    }
+}
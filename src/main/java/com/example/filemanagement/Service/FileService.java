@@ -1,51 +1,65 @@
 package com.example.filemanagement.Service;
 
 import com.example.filemanagement.DTOs.FileDto;
+import com.example.filemanagement.Helpers.ByteRangeHelper;
+import com.example.filemanagement.Helpers.CompressionHelper;
+import com.example.filemanagement.Helpers.ConditionalRequestHelper;
 import com.example.filemanagement.Helpers.FileHelper;
+import com.example.filemanagement.Helpers.FolderListingCache;
+import com.example.filemanagement.Helpers.FolderRollupHelper;
 import com.example.filemanagement.Models.FileModel;
 import com.example.filemanagement.Models.FolderModel;
 import com.example.filemanagement.Models.UserModel;
 import com.example.filemanagement.Repositories.FileRepository;
 import com.example.filemanagement.Repositories.FolderRepository;
 import com.example.filemanagement.Repositories.UserRepository;
-import org.springframework.core.io.Resource;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.UrlResource;
+import com.example.filemanagement.Storage.StorageBackend;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 @Service
 public class FileService {
 
-    @Value("${file.upload-dir}") // e.g., "/uploads"
-    private String uploadDir;
-
     private final FileRepository fileRepository;
     private final FolderRepository folderRepository;
     private final UserRepository userRepository;
     private final FileHelper fileHelper;
+    private final ByteRangeHelper byteRangeHelper;
+    private final StorageBackend storageBackend;
+    private final CompressionHelper compressionHelper;
+    private final FolderListingCache folderListingCache;
+    private final FolderRollupHelper folderRollupHelper;
 
     public FileService(FileRepository fileRepository,
                        FolderRepository folderRepository,
-                       UserRepository userRepository, FileHelper fileHelper) {
+                       UserRepository userRepository, FileHelper fileHelper,
+                       ByteRangeHelper byteRangeHelper, StorageBackend storageBackend,
+                       CompressionHelper compressionHelper, FolderListingCache folderListingCache,
+                       FolderRollupHelper folderRollupHelper) {
         this.fileRepository = fileRepository;
         this.folderRepository = folderRepository;
         this.userRepository = userRepository;
         this.fileHelper = fileHelper;
+        this.byteRangeHelper = byteRangeHelper;
+        this.storageBackend = storageBackend;
+        this.compressionHelper = compressionHelper;
+        this.folderListingCache = folderListingCache;
+        this.folderRollupHelper = folderRollupHelper;
     }
 
+    @Transactional
     public ResponseEntity<?> uploadFiles(List<MultipartFile> files, Long folderId, Long userId) {
         List<FileDto> uploadedFiles = new ArrayList<>();
 
@@ -60,9 +74,8 @@ public class FileService {
 
         for (MultipartFile file : files) {
             try {
-                String storageKey = fileHelper.saveFileToDisk(file);
-                FileModel fileModel = fileHelper.buildFileModel(file, storageKey, folder, user);
-                fileModel = fileHelper.saveFileModel(fileModel);
+                FileHelper.StoredBlob blob = fileHelper.saveFileToDisk(file);  // content hash is computed while it streams in
+                FileModel fileModel = fileHelper.saveFileModel(fileHelper.buildFileModel(file, blob, folder, user));
                 uploadedFiles.add(fileHelper.mapToDto(fileModel));
             } catch (IOException e) {
                 throw new IllegalArgumentException("Failed to store file " + file.getOriginalFilename(), e);
@@ -73,39 +86,63 @@ public class FileService {
     }
 
     public ResponseEntity<FileDto> getFileMetadata(Long id) {
-        FileModel file = fileRepository.findById(id)
+        FileDto dto = fileRepository.findDtoById(id)  // only the DTO columns
                 .orElseThrow(() -> new IllegalArgumentException("File not found with id: " + id));
 
-        FileDto dto = fileHelper.mapToDto(file);
         return ResponseEntity.ok(dto);
     }
 
-    public ResponseEntity<Resource> downloadFile(Long id) {
+    public ResponseEntity<?> downloadFile(Long id, HttpHeaders requestHeaders, HttpServletRequest request) {
 
         FileModel fileModel = fileRepository.findById(id) //Find file metadata
                 .orElseThrow(() -> new IllegalArgumentException("File not found with id: " + id));  //not found
 
-        Path filePath = Paths.get(uploadDir).resolve(fileModel.getStorageKey()).normalize();  //Build path to file
+        String storageKey = fileModel.getStorageKey();
+        String codec = compressionHelper.codecOf(storageKey).orElse(null);  // compressed at rest?
+        boolean passThrough = codec != null && CompressionHelper.acceptsGzip(requestHeaders);
 
-        UrlResource resource = null;
+        long length;
         try {
-            resource = new UrlResource(filePath.toUri());  // Load file as Resource
-        } catch (MalformedURLException e) {
+            length = storageBackend.stat(storageKey)  // size as stored, on disk or in the bucket
+                    .orElseThrow(() -> new IllegalArgumentException("File can't get from the disk"))
+                    .size();
+        } catch (IOException e) {
             throw new IllegalArgumentException("File can't get from the disk" + e);
         }
 
-        return ResponseEntity.ok()   //Build response with headers
-                .contentType(MediaType.parseMediaType(fileModel.getType()))
-                .header(HttpHeaders.CONTENT_DISPOSITION,
-                        "attachment; filename=\"" + fileModel.getName() + "\"")
-                .body(resource);
+        String etag = passThrough
+                ? ConditionalRequestHelper.strongEtag(fileModel.getContentHash(), codec)
+                : ConditionalRequestHelper.strongEtag(fileModel.getContentHash());
+        long lastModified = ConditionalRequestHelper.toHttpMillis(fileModel.getModifiedAt());
+        if (ConditionalRequestHelper.isNotModified(requestHeaders, etag, lastModified)) {  // client copy is still good
+            ResponseEntity.HeadersBuilder<?> notModified = ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .lastModified(lastModified);
+            if (codec != null) {
+                notModified.varyBy(HttpHeaders.ACCEPT_ENCODING);
+            }
+            return notModified.build();
+        }
 
+        MediaType contentType = MediaType.parseMediaType(fileModel.getType());
+        if (passThrough) {  // the stored gzip bytes go out untouched
+            return byteRangeHelper.serve(storageKey, length, contentType, fileModel.getName(), codec,
+                    etag, lastModified, requestHeaders, request);
+        }
+        if (codec != null) {
+            return byteRangeHelper.serveDecoded(storageKey, codec, length, fileModel.getSize(), contentType, fileModel.getName(),
+                    etag, lastModified, requestHeaders);  // Range counts in the original bytes
+        }
+        return byteRangeHelper.serve(storageKey, length, contentType,
+                fileModel.getName(), etag, lastModified, requestHeaders, request);  // full or partial (Range) response
     }
 
+    @Transactional
     public ResponseEntity<FileDto> renameOrMoveFile(Long id, FileDto fileDto) {
 
         FileModel fileModel = fileRepository.findById(id)  //Find the file by ID
                 .orElseThrow(() -> new IllegalArgumentException("File not found with id: " + id));  // not found
+        Long oldFolderId = FileHelper.folderIdOf(fileModel);
 
         if (fileDto.getName() != null && !fileDto.getName().isBlank()) {  //change name ( if not null or blank)
             fileModel.setName(fileDto.getName());
@@ -121,31 +158,46 @@ public class FileService {
         }
 
         fileRepository.save(fileModel);
+        folderListingCache.invalidate(oldFolderId, FileHelper.folderIdOf(fileModel));  // renamed in place, or moved between two listings
+        if (!Objects.equals(oldFolderId, FileHelper.folderIdOf(fileModel))) {
+            folderRollupHelper.transfer(oldFolderId, fileModel.getDeletedAt(), FileHelper.folderIdOf(fileModel), fileModel.getDeletedAt(),
+                    FolderRollupHelper.of(fileModel));
+        }
 
         FileDto updatedDto = fileHelper.mapToDto(fileModel);
 
         return ResponseEntity.ok(updatedDto);
     }
 
+    @Transactional
     public ResponseEntity<FileDto> moveFileToBin(Long id) {
         FileModel fileModel = fileRepository.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("File not found with id: " + id));
 
+        LocalDateTime previouslyDeletedAt = fileModel.getDeletedAt();
         fileModel.setDeletedAt(LocalDateTime.now());
         FileModel updated = fileRepository.save(fileModel);
+        folderListingCache.invalidate(FileHelper.folderIdOf(updated));
+        folderRollupHelper.transfer(FileHelper.folderIdOf(updated), previouslyDeletedAt,
+                FileHelper.folderIdOf(updated), updated.getDeletedAt(), FolderRollupHelper.of(updated));  // out of the live totals
 
         return ResponseEntity.ok(fileHelper.mapToDto(updated));
     }
 
+    @Transactional
     public ResponseEntity<Void> deleteFilePermanently(Long id) {
         FileModel fileModel = fileRepository.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("File not found with id: " + id));
 
         fileRepository.delete(fileModel);
+        folderListingCache.invalidate(FileHelper.folderIdOf(fileModel));
+        folderRollupHelper.apply(FileHelper.folderIdOf(fileModel), fileModel.getDeletedAt(), FolderRollupHelper.of(fileModel).negate());
+        fileHelper.releaseBlobs(List.of(fileModel.getStorageKey()));  // the blob goes once no other file shares it
 
         return ResponseEntity.noContent().build();
     }
 
+    @Transactional
     public ResponseEntity<FileDto> restoreFile(Long id) {
         FileModel fileModel = fileRepository.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("File not found with id: " + id));
@@ -154,8 +206,12 @@ public class FileService {
             throw new IllegalArgumentException("File is not in recycle bin");
         }
 
+        LocalDateTime previouslyDeletedAt = fileModel.getDeletedAt();
         fileModel.setDeletedAt(null);
         FileModel restored = fileRepository.save(fileModel);
+        folderListingCache.invalidate(FileHelper.folderIdOf(restored));
+        folderRollupHelper.transfer(FileHelper.folderIdOf(restored), previouslyDeletedAt,
+                FileHelper.folderIdOf(restored), null, FolderRollupHelper.of(restored));
 
         return ResponseEntity.ok(fileHelper.mapToDto(restored));
     }
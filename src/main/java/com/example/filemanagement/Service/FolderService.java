@@ -3,57 +3,76 @@ package com.example.filemanagement.Service;
 import com.example.filemanagement.DTOs.ContentDto;
 import com.example.filemanagement.DTOs.FileDto;
 import com.example.filemanagement.DTOs.FolderDto;
+import com.example.filemanagement.Helpers.ConditionalRequestHelper;
 import com.example.filemanagement.Helpers.FileHelper;
 import com.example.filemanagement.Helpers.FolderHelper;
-import com.example.filemanagement.Models.FileModel;
+import com.example.filemanagement.Helpers.FolderListingCache;
+import com.example.filemanagement.Helpers.FolderRollupHelper;
+import com.example.filemanagement.Helpers.FolderTree;
+import com.example.filemanagement.Helpers.ListingCursor;
+import com.example.filemanagement.Helpers.ZipImportHelper;
 import com.example.filemanagement.Models.FolderModel;
 import com.example.filemanagement.Models.UserModel;
 import com.example.filemanagement.Repositories.FileRepository;
 import com.example.filemanagement.Repositories.FolderRepository;
+import com.example.filemanagement.Repositories.ListingQueries;
 import com.example.filemanagement.Repositories.UserRepository;
-import org.apache.commons.io.FileUtils;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.*;
-import java.net.MalformedURLException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.zip.ZipInputStream;
+import java.util.Map;
 import java.util.zip.ZipOutputStream;
 
 @Service
 public class FolderService {
 
+    private static final int ZIP_BUFFER_SIZE = 64 * 1024;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final FolderRepository folderRepository;
     private final FileRepository fileRepository;
     private final UserRepository userRepository;
     private final FolderHelper folderHelpers;
     private final FileHelper fileHelper;
+    private final ZipImportHelper zipImportHelper;
+    private final ListingQueries listingQueries;
+    private final FolderListingCache folderListingCache;
+    private final FolderRollupHelper folderRollupHelper;
 
-    public FolderService(FolderRepository folderRepository, FileRepository fileRepository, UserRepository userRepository, FolderHelper folderHelpers, FileHelper fileHelper, FileService fileService) {
+    public FolderService(FolderRepository folderRepository, FileRepository fileRepository, UserRepository userRepository, FolderHelper folderHelpers, FileHelper fileHelper, FileService fileService, ZipImportHelper zipImportHelper, ListingQueries listingQueries, FolderListingCache folderListingCache, FolderRollupHelper folderRollupHelper) {
         this.folderRepository = folderRepository;
         this.fileRepository = fileRepository;
         this.userRepository = userRepository;
         this.folderHelpers = folderHelpers;
         this.fileHelper = fileHelper;
+        this.zipImportHelper = zipImportHelper;
+        this.listingQueries = listingQueries;
+        this.folderListingCache = folderListingCache;
+        this.folderRollupHelper = folderRollupHelper;
     }
 
 
+    @Transactional
     public ResponseEntity<?> createFolder(FolderDto folderDto) {
         Long parentId = folderDto.getParentFolderId();
-        if(parentId!=null && !folderRepository.existsById(parentId)){ // has a parent Id and No folder with that id
-            throw new IllegalArgumentException(
-                    "Parent folder with id "+folderDto.getParentFolderId()+" not exist"
-            );
+        FolderModel parent = null;
+        if (parentId != null) {
+            parent = folderRepository.findById(parentId)  // has a parent Id and No folder with that id
+                    .orElseThrow(() -> new IllegalArgumentException(
+                            "Parent folder with id " + folderDto.getParentFolderId() + " not exist"
+                    ));
         }
 
         if (folderRepository.existsByNameAndParentFolder_Id(folderDto.getName(), parentId)) {  // has a folder with same name under same parent folder
@@ -63,8 +82,12 @@ public class FolderService {
         }
 
         FolderModel folder = folderHelpers.mapToModel(folderDto); // create a model
+        folder.setParentFolder(parent);
+        folder.setPath(FolderHelper.childPath(parent));
 
         FolderModel savedFolder = folderRepository.save(folder);  // save model
+        folderListingCache.invalidate(parentId);  // the parent's listing gained a folder
+        folderRollupHelper.apply(parentId, savedFolder.getDeletedAt(), FolderRollupHelper.of(savedFolder));
 
         FolderDto createdFolder = folderHelpers.mapToDto(savedFolder);  //create dto from saved model
 
@@ -83,121 +106,109 @@ public class FolderService {
                     .orElseThrow(() -> new IllegalArgumentException("Parent folder not found"));
         }
 
-        File tempDir = Files.createTempDirectory("zip_import_").toFile();       // create a temp folder to extract zip file
-        try {
-            try (ZipInputStream zipIn = new ZipInputStream(zipFile.getInputStream())) {  // Extract zip to temp directory
-                folderHelpers.extractZip(zipIn, tempDir);
-            }
-
-            File[] contents = tempDir.listFiles();  // get all files + folders to array.
-            if (contents != null) {  // if content not empty
-                for (File item : contents) {    // for each content
-                    if (item.isDirectory()) {   // if it is a directory
-                        folderHelpers.processDirectory(item, parentFolder, user);
-                    } else {                    // if it is a file
-                        // Handle files in root
-                        folderHelpers.processFile(item, parentFolder, user);
-                    }
-                }
-            }
-        } finally {  // remove the temp file that zip file was extracted into
-            FileUtils.deleteDirectory(tempDir);
+        ZipImportHelper.ImportResult result;
+        try (InputStream zipIn = zipFile.getInputStream()) {  // entries go from the zip stream straight into storage
+            result = zipImportHelper.importZip(zipIn, parentFolder, user);
         }
-        return ResponseEntity.ok("Folder uploaded successfully!");
-    }
-
-    public ResponseEntity<?> getFolderContents(Long folderId) {
 
-        FolderModel folder = folderRepository.findById(folderId)  // Find folder
-                .orElseThrow(() -> new IllegalArgumentException("Folder not found with id: " + folderId));
-
-        List<FolderModel> subFolders = folderRepository.findByParentFolderAndDeletedAtIsNull(folder); // Get child folders (not deleted)
-
-        List<FileModel> files = fileRepository.findByFolderAndDeletedAtIsNull(folder); //Get files inside folder (not deleted)
-
-        List<FolderDto> folderDtos = subFolders.stream() // Map to DTOs
-                .map(folderHelpers::mapToDto)
-                .toList();
-
-        List<FileDto> fileDtos = files.stream()
-                .map(fileHelper::mapToDto)
-                .toList();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("message", "Folder uploaded successfully!");
+        body.put("directories", result.directories());
+        body.put("files", result.files());
+        body.put("bytes", result.bytes());
+        body.put("elapsedMillis", result.elapsedMillis());
+        body.put("stages", result.stages());  // per-stage throughput of the import pipeline
+        return ResponseEntity.ok(body);
+    }
 
-        ContentDto contentDto = new ContentDto(); // create ContentDto
-        contentDto.setFolders(folderDtos);
-        contentDto.setFiles(fileDtos);
+    public ResponseEntity<?> getFolderContents(Long folderId, HttpHeaders requestHeaders,
+                                               String sort, String direction, Integer limit, String cursor) {
 
-        return ResponseEntity.ok(contentDto);
+        ContentDto contentDto = folderListingCache.page(folderId, new FolderListingCache.Page(sort, direction, limit, cursor), () -> {
+            if (!folderRepository.existsById(folderId)) {  // Find folder
+                throw new IllegalArgumentException("Folder not found with id: " + folderId);
+            }
+            return listPage(ListingQueries.Scope.FOLDER, folderId, sort, direction, limit, cursor);  // children not deleted, one page
+        });
+        return listingResponse(contentDto, requestHeaders);
     }
 
     public ResponseEntity<?> getFolderDetails(Long folderId) {
 
-        FolderModel folder = folderRepository.findById(folderId)  // get record
-                .orElseThrow(() -> new IllegalArgumentException("Folder not found with id: " + folderId));  // no record found
+        FolderDto dto = folderListingCache.details(folderId, () -> folderRepository.findDtoById(folderId)  // only the DTO columns
+                .orElseThrow(() -> new IllegalArgumentException("Folder not found with id: " + folderId)));  // no record found
 
-        FolderDto dto = folderHelpers.mapToDto(folder);
         return ResponseEntity.ok(dto);
     }
 
+    public ResponseEntity<?> getBreadcrumb(Long folderId) {
+        FolderModel folder = folderRepository.findById(folderId)
+                .orElseThrow(() -> new IllegalArgumentException("Folder not found with id: " + folderId));
+
+        List<FolderDto> breadcrumb = folderHelpers.getBreadcrumb(folder).stream()
+                .map(folderHelpers::mapToDto)
+                .toList();
+        return ResponseEntity.ok(breadcrumb);
+    }
+
     public ResponseEntity<?> downloadFolder(Long folderId) {
 
         FolderModel rootFolder = folderRepository.findById(folderId) // Find root folder
                 .orElseThrow(() -> new IllegalArgumentException("Folder not found"));
 
-        Path tempZip;  //Create temporary zip file
-        try {
-            tempZip = Files.createTempFile("folder-", ".zip");
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Could not create temp file for ZIP", e);
-        }
-
-        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(tempZip))) {   // Build zip recursively
-            folderHelpers.addFolderToZip(rootFolder, "", zos);
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Failed to create ZIP file", e);
-        }
-
-        Resource resource;
-        try {   // Return as Resource
-            resource = new UrlResource(tempZip.toUri());
-        } catch (MalformedURLException e) {
-            throw new IllegalArgumentException(e);
-        }
+        StreamingResponseBody body = outputStream -> {  // zip is written straight into the response, entry by entry
+            FolderTree tree = folderHelpers.loadSubtree(rootFolder);
+            try (ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(outputStream, ZIP_BUFFER_SIZE))) {
+                folderHelpers.addFolderToZip(tree, rootFolder, "", zos);
+            }
+        };
 
         return ResponseEntity.ok()
                 .contentType(MediaType.APPLICATION_OCTET_STREAM)
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + rootFolder.getName() + ".zip\"")
-                .body(resource);
+                .body(body);
     }
 
+    @Transactional
     public FolderDto renameOrMoveFolder(Long id, FolderDto folderDto) {
 
         FolderModel folder = folderRepository.findById(id)  //Find the folder to update
                 .orElseThrow(() -> new RuntimeException("Folder not found with id: " + id));  // no file found for the id
+        Long currentParentId = FolderHelper.parentIdOf(folder);
+        folderListingCache.invalidate(id, currentParentId);  // its details and the listing it shows up in
 
         if (folderDto.getName() != null && !folderDto.getName().isBlank()) {  // has provided a new name
+            // staying in its parent: its own name again or a change of case is fine, another live sibling's name is not
+            if (folderDto.getParentFolderId() == null && folderRepository.existsByParentFolder_IdAndNameAndDeletedAtIsNullAndIdNot(
+                    currentParentId, folderDto.getName(), id)) {
+                throw new IllegalArgumentException("A folder with name '" + folderDto.getName() + "' already exists in this parent folder.");
+            }
             folder.setName(folderDto.getName()); // set new name
         }
 
+        // Optional: update modifiedAt
+        folder.setModifiedAt(LocalDateTime.now());
+
         if (folderDto.getParentFolderId() != null) { // has a parent folder id
-            if(folderDto.getParentFolderId().equals(folder.getParentFolder().getId())){  //
+            if(folderDto.getParentFolderId().equals(currentParentId)){  //
                 throw new IllegalArgumentException("cannot move to same directory");
             }
             FolderModel newParent = folderRepository.findById(folderDto.getParentFolderId())
                     .orElseThrow(() -> new RuntimeException("Parent folder not found"));
 
+            if (newParent.getId().equals(folder.getId()) || FolderHelper.isDescendantOf(newParent, folder)) {  // would create a cycle
+                throw new IllegalArgumentException("cannot move a folder into itself or one of its subfolders");
+            }
+
             // Validate no folder with the same name exists in new parent
             boolean exists = folderRepository.existsByParentFolderAndNameAndDeletedAtIsNull(newParent, folder.getName());
             if (exists) {
                 throw new RuntimeException("A folder with the same name already exists in the target folder");
             }
 
-            folder.setParentFolder(newParent);
+            return folderHelpers.mapToDto(folderHelpers.moveFolder(folder, newParent));  // re-parents and rewrites the subtree paths
         }
 
-        // Optional: update modifiedAt
-        folder.setModifiedAt(LocalDateTime.now());
-
         // Step 4: Save updated folder
         FolderModel updatedFolder = folderRepository.save(folder);
 
@@ -209,8 +220,11 @@ public class FolderService {
         FolderModel folder = folderRepository.findById(folderId)
                 .orElseThrow(() -> new RuntimeException("Folder not found"));
 
-        folderHelpers.softDeleteFolderRecursively(folder);
-        return ResponseEntity.ok().body("{\"message\": \"Folder moved to Bin\"}");
+        FolderHelper.SubtreeUpdate updated = folderHelpers.softDeleteFolderRecursively(folder);
+        return ResponseEntity.ok().body(Map.of(
+                "message", "Folder moved to Bin",
+                "folders", updated.folders(),
+                "files", updated.files()));
     }
 
     public ResponseEntity<?> deleteFolderPermanently(Long folderId) {
@@ -229,47 +243,85 @@ public class FolderService {
             throw new RuntimeException("Folder is not deleted");
         }
 
-        folderHelpers.restoreFolderRecursively(folder);
-        return ResponseEntity.ok().body("{\"message\": \"Folder restored successfully\"}");
+        FolderHelper.SubtreeUpdate updated = folderHelpers.restoreFolderRecursively(folder);
+        return ResponseEntity.ok().body(Map.of(
+                "message", "Folder restored successfully",
+                "folders", updated.folders(),
+                "files", updated.files()));
     }
 
-    public ResponseEntity<?> getBinContent() {
-        // Find folders that are deleted but parent is not deleted
-        List<FolderModel> deletedFolders = folderRepository.findByDeletedAtIsNotNullAndParentFolderDeletedAtIsNull();
-        List<FolderDto> folderDtos = deletedFolders.stream()
-                .map(folderHelpers::mapToDto)
-                .toList();
-
-        // Find files that are deleted but their folder is not deleted
-        List<FileModel> deletedFiles = fileRepository.findByDeletedAtIsNotNullAndFolderDeletedAtIsNull();
-        List<FileDto> fileDtos = deletedFiles.stream()
-                .map(fileHelper::mapToDto)
-                .toList();
-
-        ContentDto binContent = new ContentDto();
-        binContent.setFolders(folderDtos);
-        binContent.setFiles(fileDtos);
-
+    public ResponseEntity<?> getBinContent(Long userId, String sort, String direction, Integer limit, String cursor) {
+        if (!userRepository.existsById(userId)) {
+            throw new IllegalArgumentException("User not found");
+        }
+        // the user's folders deleted while their parent is not, files deleted while their folder is not
+        ContentDto binContent = listPage(ListingQueries.Scope.BIN, userId, sort, direction, limit, cursor);
         return ResponseEntity.ok(binContent);
     }
 
-    public ResponseEntity<?> rootContent() {
-        ContentDto content = new ContentDto();
+    public ResponseEntity<?> rootContent(HttpHeaders requestHeaders, String sort, String direction, Integer limit, String cursor) {
+        ContentDto content = folderListingCache.page(FolderListingCache.ROOT, new FolderListingCache.Page(sort, direction, limit, cursor),
+                () -> listPage(ListingQueries.Scope.ROOT, null, sort, direction, limit, cursor));
+        return listingResponse(content, requestHeaders);
+    }
 
-        List<FileModel> files = fileRepository.findByFolder(null);
-        List<FolderModel> folders = folderRepository.findByParentFolder(null);
+    // One page of a listing: folders first, then files, each in (sort value, id) order
+    private ContentDto listPage(ListingQueries.Scope scope, Long scopeId, String sort, String direction, Integer limit, String cursor) {
+        ListingQueries.Sort order = ListingQueries.Sort.parse(sort);
+        boolean descending = "desc".equalsIgnoreCase(direction);
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        ListingCursor position = cursor != null && !cursor.isBlank() ? ListingCursor.decode(cursor, order, descending) : null;
+
+        List<FolderDto> folders = List.of();
+        List<FileDto> files = List.of();
+        String nextCursor = null;
+
+        if (position == null || !position.inFiles()) {
+            folders = listingQueries.folders(scope, scopeId, order, descending,
+                    position != null ? position.after() : null, pageSize + 1);  // one extra row tells whether more follow
+            if (folders.size() > pageSize) {
+                folders = folders.subList(0, pageSize);
+                FolderDto last = folders.get(pageSize - 1);
+                nextCursor = new ListingCursor(order, descending, false, last.getId(), ListingQueries.folderSortValue(last, order)).encode();
+            }
+        }
 
-        List<FileDto> fileDtos = files.stream()
-                .map(fileHelper::mapToDto)
-                .toList();
+        if (nextCursor == null) {
+            int room = pageSize - folders.size();
+            ListingQueries.After after = position != null && position.inFiles() ? position.after() : null;
+            files = listingQueries.files(scope, scopeId, order, descending, after, room + 1);
+            if (files.size() > room) {
+                files = files.subList(0, room);
+                nextCursor = room == 0
+                        ? ListingCursor.startOfFiles(order, descending).encode()
+                        : new ListingCursor(order, descending, true, files.get(room - 1).getId(),
+                                ListingQueries.fileSortValue(files.get(room - 1), order)).encode();
+            }
+        }
 
-        List<FolderDto> folderDtos = folders.stream()
-                .map(folderHelpers::mapToDto)
-                .toList();
+        ContentDto content = new ContentDto();
+        content.setFolders(folders);
+        content.setFiles(files);
+        content.setNextCursor(nextCursor);
+        return content;
+    }
 
-        content.setFiles(fileDtos);
-        content.setFolders(folderDtos);
+    // weak ETag over what is listed: any add, remove, move, rename or update of a child changes it,
+    // and so does a change deeper down through the rollups it shows
+    private ResponseEntity<?> listingResponse(ContentDto content, HttpHeaders requestHeaders) {
+        List<Object> parts = new ArrayList<>();
+        for (FolderDto folder : content.getFolders()) {
+            parts.add("d" + folder.getId() + "@" + folder.getModifiedAt() + ":" + folder.getTotalSize()
+                    + "/" + folder.getFileCount() + "/" + folder.getFolderCount());
+        }
+        for (FileDto file : content.getFiles()) {
+            parts.add("f" + file.getId() + "@" + file.getModifiedAt());
+        }
+        String etag = ConditionalRequestHelper.weakEtag(parts);
 
-        return ResponseEntity.ok(content);
+        if (ConditionalRequestHelper.isNotModified(requestHeaders, etag, -1)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(content);
     }
 }
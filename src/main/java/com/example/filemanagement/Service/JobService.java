@@ -0,0 +1,219 @@
+package com.example.filemanagement.Service;
+
+import com.example.filemanagement.DTOs.JobDto;
+import com.example.filemanagement.Helpers.JobRunner;
+import com.example.filemanagement.Models.FolderModel;
+import com.example.filemanagement.Models.JobModel;
+import com.example.filemanagement.Models.UserModel;
+import com.example.filemanagement.Repositories.FolderRepository;
+import com.example.filemanagement.Repositories.JobRepository;
+import com.example.filemanagement.Repositories.UserRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Long folder operations as jobs: submit, then poll or stream the progress, then fetch the result */
+@Service
+public class JobService {
+
+    private static final int MAX_LISTED_JOBS = 50;
+
+    private final JobRepository jobRepository;
+    private final FolderRepository folderRepository;
+    private final UserRepository userRepository;
+    private final JobRunner jobRunner;
+    private final long eventIntervalMillis;
+    private final long eventTimeoutMillis;
+    // a few threads, so one slow client blocks one of them instead of every stream
+    private final ScheduledExecutorService eventTicker;
+
+    public JobService(JobRepository jobRepository, FolderRepository folderRepository, UserRepository userRepository,
+                      JobRunner jobRunner,
+                      @Value("${jobs.events.interval-ms:1000}") long eventIntervalMillis,
+                      @Value("${jobs.events.timeout-ms:1800000}") long eventTimeoutMillis,
+                      @Value("${jobs.events.threads:4}") int eventThreads) {
+        this.jobRepository = jobRepository;
+        this.folderRepository = folderRepository;
+        this.userRepository = userRepository;
+        this.jobRunner = jobRunner;
+        this.eventIntervalMillis = eventIntervalMillis;
+        this.eventTimeoutMillis = eventTimeoutMillis;
+        this.eventTicker = Executors.newScheduledThreadPool(Math.max(1, eventThreads),
+                Thread.ofPlatform().name("job-events-", 1).daemon().factory());
+    }
+
+    @PreDestroy
+    public void close() {
+        eventTicker.shutdownNow();
+    }
+
+    /** The zip is kept under jobs/ until a worker imports it */
+    public ResponseEntity<?> submitZipImport(MultipartFile zipFile, Long userId, Long parentFolderId) {
+        UserModel user = userRepository.findById(userId)
+                .orElseThrow(() -> new IllegalArgumentException("User not found"));
+        if (parentFolderId != null && !folderRepository.existsById(parentFolderId)) {
+            throw new IllegalArgumentException("Parent folder not found");
+        }
+        if (!jobRunner.hasRoomFor(userId)) {  // spares the upload when the answer is already clear
+            return tooManyJobs();
+        }
+
+        JobModel job = JobModel.builder()
+                .id(UUID.randomUUID().toString())
+                .type(JobModel.Type.ZIP_IMPORT)
+                .folderId(parentFolderId)
+                .user(user)
+                .build();
+        Path input;
+        try {
+            input = jobRunner.inputPath(job.getId());
+            zipFile.transferTo(input);  // in place before any worker can look for it
+        } catch (IOException e) {
+            throw new IllegalArgumentException("File upload failed..." + e.getLocalizedMessage());
+        }
+
+        Optional<JobModel> submitted = jobRunner.submit(job);
+        if (submitted.isEmpty()) {  // another submit took the last slot meanwhile
+            try {
+                Files.deleteIfExists(input);
+            } catch (IOException ignored) {
+                // a leftover file under jobs/ only takes space
+            }
+            return tooManyJobs();
+        }
+        return accepted(submitted.get());
+    }
+
+    /** Export, bin, restore or permanently delete a folder; the totals to expect come from its rollups */
+    public ResponseEntity<?> submitFolderJob(JobModel.Type type, Long folderId, Long userId) {
+        UserModel user = userRepository.findById(userId)
+                .orElseThrow(() -> new IllegalArgumentException("User not found"));
+        FolderModel folder = folderRepository.findById(folderId)
+                .orElseThrow(() -> new IllegalArgumentException("Folder not found with id: " + folderId));
+        if (type == JobModel.Type.RESTORE && folder.getDeletedAt() == null) {
+            throw new IllegalArgumentException("Folder is not deleted");
+        }
+        JobModel job = JobModel.builder()
+                .id(UUID.randomUUID().toString())
+                .type(type)
+                .folderId(folderId)
+                .user(user)
+                .itemsTotal(folder.getFileCount() + folder.getFolderCount() + 1)
+                .bytesTotal(folder.getTotalSize())
+                .resultName(type == JobModel.Type.ZIP_EXPORT ? folder.getName() + ".zip" : null)
+                .build();
+        return jobRunner.submit(job)
+                .<ResponseEntity<?>>map(this::accepted)
+                .orElseGet(JobService::tooManyJobs);
+    }
+
+    public ResponseEntity<JobDto> getJob(String jobId) {
+        return ResponseEntity.ok(jobRunner.describe(findJob(jobId)));
+    }
+
+    public ResponseEntity<?> listJobs(Long userId) {
+        if (!userRepository.existsById(userId)) {
+            throw new IllegalArgumentException("User not found");
+        }
+        List<JobDto> jobs = jobRepository.findByUser_IdOrderByCreatedAtDesc(userId, Limit.of(MAX_LISTED_JOBS)).stream()
+                .map(jobRunner::describe)
+                .toList();
+        return ResponseEntity.ok(jobs);
+    }
+
+    /** Server-sent "progress" events every jobs.events.interval-ms, then one "done" event once the job finished */
+    public ResponseEntity<SseEmitter> streamJob(String jobId) {
+        findJob(jobId);
+        SseEmitter emitter = new SseEmitter(eventTimeoutMillis);
+        AtomicReference<ScheduledFuture<?>> ticks = new AtomicReference<>();
+
+        ticks.set(eventTicker.scheduleWithFixedDelay(() -> {
+            try {
+                JobDto job = jobRunner.describe(findJob(jobId));
+                boolean finished = JobModel.Status.valueOf(job.getStatus()).isFinished();
+                emitter.send(SseEmitter.event().name(finished ? "done" : "progress").id(jobId).data(job));
+                if (finished) {
+                    emitter.complete();
+                    cancel(ticks);
+                }
+            } catch (Exception e) {
+                emitter.completeWithError(e);  // client gone, or the job was cleaned up
+                cancel(ticks);
+            }
+        }, 0, eventIntervalMillis, TimeUnit.MILLISECONDS));
+
+        emitter.onCompletion(() -> cancel(ticks));
+        emitter.onTimeout(() -> cancel(ticks));
+        emitter.onError(error -> cancel(ticks));
+        return ResponseEntity.ok(emitter);
+    }
+
+    /** The export's zip, or the summary of any other job; 409 while it has not succeeded */
+    public ResponseEntity<?> getJobResult(String jobId) {
+        JobModel job = findJob(jobId);
+        if (job.getStatus() != JobModel.Status.SUCCEEDED) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(jobRunner.describe(job));
+        }
+        if (job.getType() != JobModel.Type.ZIP_EXPORT) {
+            return ResponseEntity.ok(jobRunner.describe(job));
+        }
+
+        Path result = jobRunner.resultPath(jobId);
+        if (!Files.exists(result)) {
+            throw new IllegalArgumentException("Result of job " + jobId + " is no longer available");
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(job.getResultName(), StandardCharsets.UTF_8).build().toString())
+                .body(new FileSystemResource(result));
+    }
+
+    private JobModel findJob(String jobId) {
+        return jobRepository.findById(jobId)
+                .orElseThrow(() -> new IllegalArgumentException("Job not found with id: " + jobId));
+    }
+
+    // 202 with where to poll
+    private ResponseEntity<?> accepted(JobModel job) {
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/jobs/" + job.getId()))
+                .body(jobRunner.describe(job));
+    }
+
+    private static ResponseEntity<?> tooManyJobs() {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .body(Map.of("message", "Too many jobs queued or running for this user; try again once one finished"));
+    }
+
+    private static void cancel(AtomicReference<ScheduledFuture<?>> ticks) {
+        ScheduledFuture<?> future = ticks.get();
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+}
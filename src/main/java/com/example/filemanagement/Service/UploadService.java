@@ -0,0 +1,365 @@
+package com.example.filemanagement.Service;
+
+import com.example.filemanagement.DTOs.UploadSessionDto;
+import com.example.filemanagement.Helpers.FileHelper;
+import com.example.filemanagement.Models.FileModel;
+import com.example.filemanagement.Models.FolderModel;
+import com.example.filemanagement.Models.UploadChunkModel;
+import com.example.filemanagement.Models.UploadSessionModel;
+import com.example.filemanagement.Models.UserModel;
+import com.example.filemanagement.Repositories.FolderRepository;
+import com.example.filemanagement.Repositories.UploadChunkRepository;
+import com.example.filemanagement.Repositories.UploadSessionRepository;
+import com.example.filemanagement.Repositories.UserRepository;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/** Resumable uploads: the client sends a large file as chunks at byte offsets, in any order, then completes it */
+@Service
+public class UploadService {
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final UploadChunkRepository uploadChunkRepository;
+    private final FolderRepository folderRepository;
+    private final UserRepository userRepository;
+    private final FileHelper fileHelper;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration drainTimeout;
+
+    // chunk writes in progress per session id, like the part files themselves local to this instance; completion waits for them
+    private final Map<String, Integer> writers = new HashMap<>();
+
+    public UploadService(UploadSessionRepository uploadSessionRepository,
+                         UploadChunkRepository uploadChunkRepository,
+                         FolderRepository folderRepository,
+                         UserRepository userRepository,
+                         FileHelper fileHelper,
+                         TransactionTemplate transactionTemplate,
+                         @Value("${uploads.complete.drain-timeout-seconds:60}") long drainTimeoutSeconds) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.uploadChunkRepository = uploadChunkRepository;
+        this.folderRepository = folderRepository;
+        this.userRepository = userRepository;
+        this.fileHelper = fileHelper;
+        this.transactionTemplate = transactionTemplate;
+        this.drainTimeout = Duration.ofSeconds(drainTimeoutSeconds);
+    }
+
+    public ResponseEntity<UploadSessionDto> createSession(UploadSessionDto request) {
+        if (request.getFileName() == null || request.getFileName().isBlank()) {
+            throw new IllegalArgumentException("File name is required");
+        }
+        if (request.getTotalSize() == null || request.getTotalSize() < 0) {
+            throw new IllegalArgumentException("Total size must be zero or more");
+        }
+        if (request.getUserId() == null) {
+            throw new IllegalArgumentException("User not found");
+        }
+
+        FolderModel folder = null;
+        if (request.getFolderId() != null) {
+            folder = folderRepository.findById(request.getFolderId())
+                    .orElseThrow(() -> new IllegalArgumentException("Folder not found"));
+        }
+        UserModel user = userRepository.findById(request.getUserId())
+                .orElseThrow(() -> new IllegalArgumentException("User not found"));
+
+        UploadSessionModel session = UploadSessionModel.builder()
+                .id(UUID.randomUUID().toString())
+                .fileName(request.getFileName())
+                .contentType(request.getContentType() != null ? request.getContentType() : FileHelper.guessContentType(request.getFileName()))
+                .totalSize(request.getTotalSize())
+                .folder(folder)
+                .user(user)
+                .build();
+
+        try {
+            Files.createFile(partPath(session));  // chunks only ever write into an existing part file
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not start upload " + request.getFileName(), e);
+        }
+        session = uploadSessionRepository.save(session);
+
+        return ResponseEntity.status(HttpStatus.CREATED).body(mapToDto(session, List.of()));
+    }
+
+    public ResponseEntity<UploadSessionDto> getSession(String sessionId) {
+        UploadSessionModel session = uploadSessionRepository.findById(sessionId)
+                .orElseThrow(() -> new IllegalArgumentException("Upload session not found"));
+        return ResponseEntity.ok(mapToDto(session, uploadChunkRepository.findBySessionOrderByStartOffsetAsc(session)));
+    }
+
+    /**
+     * Write the request body into the part file at offset. The bytes go from the request channel to the file
+     * channel; nothing is spooled or held for the whole chunk. Chunks may arrive in parallel and overlap.
+     * Once completion has started, chunks are refused and the ones still in flight are not recorded. The write
+     * counts as in progress from before the session's status is read, so completion either waits for it or it
+     * sees completion and writes nothing.
+     */
+    public ResponseEntity<UploadSessionDto> writeChunk(String sessionId, long offset, HttpServletRequest request) {
+        enterWriter(sessionId);
+        try {
+            return write(sessionId, offset, request);
+        } finally {
+            leaveWriter(sessionId);
+        }
+    }
+
+    private ResponseEntity<UploadSessionDto> write(String sessionId, long offset, HttpServletRequest request) {
+        UploadSessionModel session = uploadSessionRepository.findById(sessionId)
+                .orElseThrow(() -> new IllegalArgumentException("Upload session not found"));
+        requireOpen(session);
+
+        long contentLength = request.getContentLengthLong();  // -1 for a chunked request body
+        long limit = contentLength >= 0 ? contentLength : session.getTotalSize() - offset;
+        if (offset < 0 || offset > session.getTotalSize() || offset + limit > session.getTotalSize()) {
+            throw new IllegalArgumentException("Chunk at " + offset + " does not fit into " + session.getTotalSize() + " bytes");
+        }
+
+        long written = 0;
+        try (InputStream body = request.getInputStream();
+             ReadableByteChannel source = Channels.newChannel(body);
+             FileChannel target = FileChannel.open(partPath(session), StandardOpenOption.WRITE)) {
+            while (written < limit) {
+                long transferred = target.transferFrom(source, offset + written, limit - written);
+                if (transferred <= 0) {
+                    break;  // body ended
+                }
+                written += transferred;
+            }
+            if (contentLength < 0 && body.read() != -1) {
+                throw new IllegalArgumentException("Chunk at " + offset + " runs past " + session.getTotalSize() + " bytes");
+            }
+        } catch (NoSuchFileException e) {
+            throw new IllegalArgumentException("Upload session not found");  // completed or aborted meanwhile
+        } catch (IOException e) {
+            // connection dropped: keep what arrived so the client can resume from there
+        } finally {
+            if (written > 0) {
+                recordChunk(sessionId, offset, offset + written);
+            }
+        }
+
+        if (contentLength >= 0 && written < contentLength) {
+            throw new IllegalArgumentException("Chunk at " + offset + " ended after " + written + " of " + contentLength + " bytes");
+        }
+        return ResponseEntity.ok(mapToDto(session, uploadChunkRepository.findBySessionOrderByStartOffsetAsc(session)));
+    }
+
+    // under the session's row lock: completion either sees the chunk or the chunk sees completion and is dropped
+    private void recordChunk(String sessionId, long startOffset, long endOffset) {
+        transactionTemplate.executeWithoutResult(status -> {
+            UploadSessionModel session = uploadSessionRepository.lockById(sessionId)
+                    .orElseThrow(() -> new IllegalArgumentException("Upload session not found"));  // completed or aborted meanwhile
+            requireOpen(session);
+            uploadChunkRepository.save(UploadChunkModel.builder()
+                    .session(session)
+                    .startOffset(startOffset)
+                    .endOffset(endOffset)
+                    .build());
+            session.setModifiedAt(LocalDateTime.now());  // still in use: not expired
+        });
+    }
+
+    /**
+     * Store the received file and create its FileModel. The session is switched to COMPLETING under its row lock
+     * and the chunk writes still in progress are waited for; after that nothing writes into the part file, so it
+     * is hashed where it is and renamed into storage, never copied. If storing fails while the part file is still
+     * there, the session is open again and complete can be retried.
+     */
+    public ResponseEntity<?> completeSession(String sessionId) {
+        UploadSessionModel session = transactionTemplate.execute(status -> startCompleting(sessionId));
+
+        try {
+            if (!awaitWriters(sessionId)) {
+                throw new IllegalArgumentException("Chunks of upload " + session.getFileName() + " are still being written, retry");
+            }
+            Path part = partPath(session);
+            String contentHash = FileHelper.hashFile(part);
+            FileModel fileModel = transactionTemplate.execute(status -> publish(sessionId, part, contentHash));
+            return ResponseEntity.status(HttpStatus.CREATED).body(fileHelper.mapToDto(fileModel));
+        } catch (IOException | UncheckedIOException e) {
+            abandonCompletion(session);
+            throw new IllegalArgumentException("Failed to store file " + session.getFileName(), e);
+        } catch (RuntimeException e) {
+            abandonCompletion(session);
+            throw e;
+        }
+    }
+
+    private UploadSessionModel startCompleting(String sessionId) {
+        UploadSessionModel session = uploadSessionRepository.lockById(sessionId)
+                .orElseThrow(() -> new IllegalArgumentException("Upload session not found"));
+        requireOpen(session);
+
+        long committed = committedOffset(uploadChunkRepository.findBySessionOrderByStartOffsetAsc(session));
+        if (committed < session.getTotalSize()) {
+            throw new IllegalArgumentException("Upload incomplete: " + committed + " of " + session.getTotalSize() + " bytes received");
+        }
+        session.setStatus(UploadSessionModel.Status.COMPLETING);
+        return session;
+    }
+
+    // blob reference, file row and the end of the session commit together
+    private FileModel publish(String sessionId, Path part, String contentHash) {
+        UploadSessionModel session = uploadSessionRepository.lockById(sessionId)
+                .orElseThrow(() -> new IllegalArgumentException("Upload session not found"));
+        if (session.getStatus() != UploadSessionModel.Status.COMPLETING) {
+            throw new IllegalArgumentException("Upload session is no longer completing");
+        }
+
+        FileModel fileModel;
+        try {
+            FileHelper.StoredBlob blob = fileHelper.commitBlob(part, contentHash, session.getTotalSize(), session.getContentType());
+            fileModel = fileHelper.buildFileModel(session.getFileName(), session.getContentType(), blob, session.getFolder(), session.getUser());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fileModel = fileHelper.saveFileModel(fileModel);
+
+        uploadChunkRepository.deleteBySession(session);
+        uploadSessionRepository.delete(session);
+        return fileModel;
+    }
+
+    // open again for a retry; once the part file went into storage and was rolled back there is nothing to resume from
+    private void abandonCompletion(UploadSessionModel completing) {
+        boolean resumable;
+        try {
+            resumable = Files.exists(partPath(completing));
+        } catch (IOException e) {
+            resumable = false;
+        }
+        boolean reopen = resumable;
+        transactionTemplate.executeWithoutResult(status -> uploadSessionRepository.lockById(completing.getId())
+                .filter(session -> session.getStatus() == UploadSessionModel.Status.COMPLETING)
+                .ifPresent(session -> {
+                    if (reopen) {
+                        session.setStatus(UploadSessionModel.Status.OPEN);
+                    } else {
+                        uploadChunkRepository.deleteBySession(session);
+                        uploadSessionRepository.delete(session);
+                    }
+                }));
+    }
+
+    @Transactional
+    public ResponseEntity<?> abortSession(String sessionId) {
+        UploadSessionModel session = uploadSessionRepository.lockById(sessionId)
+                .orElseThrow(() -> new IllegalArgumentException("Upload session not found"));
+        requireOpen(session);
+
+        try {
+            Files.deleteIfExists(partPath(session));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not delete upload " + session.getFileName(), e);
+        }
+        uploadChunkRepository.deleteBySession(session);
+        uploadSessionRepository.delete(session);
+
+        return ResponseEntity.ok("Upload aborted");
+    }
+
+    private static void requireOpen(UploadSessionModel session) {
+        if (session.getStatus() != UploadSessionModel.Status.OPEN) {
+            throw new IllegalArgumentException("Upload session is being completed");
+        }
+    }
+
+    private void enterWriter(String sessionId) {
+        synchronized (writers) {
+            writers.merge(sessionId, 1, Integer::sum);
+        }
+    }
+
+    private void leaveWriter(String sessionId) {
+        synchronized (writers) {
+            writers.computeIfPresent(sessionId, (id, count) -> count > 1 ? count - 1 : null);
+            writers.notifyAll();
+        }
+    }
+
+    // false if chunk writes were still running when the drain timeout ran out
+    private boolean awaitWriters(String sessionId) {
+        long deadline = System.nanoTime() + drainTimeout.toNanos();
+        synchronized (writers) {
+            while (writers.containsKey(sessionId)) {
+                long remainingMillis = (deadline - System.nanoTime()) / 1_000_000;
+                if (remainingMillis <= 0) {
+                    return false;
+                }
+                try {
+                    writers.wait(remainingMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private Path partPath(UploadSessionModel session) throws IOException {
+        return fileHelper.prepareIncomingPath(FileHelper.uploadPartKey(session.getId()));
+    }
+
+    // End of the gap-free prefix of received bytes; chunks are sorted by start offset
+    private static long committedOffset(List<UploadChunkModel> chunks) {
+        long committed = 0;
+        for (UploadChunkModel chunk : chunks) {
+            if (chunk.getStartOffset() > committed) {
+                break;
+            }
+            committed = Math.max(committed, chunk.getEndOffset());
+        }
+        return committed;
+    }
+
+    private static UploadSessionDto mapToDto(UploadSessionModel session, List<UploadChunkModel> chunks) {
+        long received = 0;
+        long coveredUpTo = 0;
+        for (UploadChunkModel chunk : chunks) {  // overlapping chunks count once
+            long start = Math.max(chunk.getStartOffset(), coveredUpTo);
+            if (chunk.getEndOffset() > start) {
+                received += chunk.getEndOffset() - start;
+                coveredUpTo = chunk.getEndOffset();
+            }
+        }
+
+        return UploadSessionDto.builder()
+                .id(session.getId())
+                .fileName(session.getFileName())
+                .contentType(session.getContentType())
+                .totalSize(session.getTotalSize())
+                .status(session.getStatus().name())
+                .folderId(session.getFolder() != null ? session.getFolder().getId() : null)
+                .userId(session.getUser() != null ? session.getUser().getId() : null)
+                .committedOffset(committedOffset(chunks))
+                .receivedBytes(received)
+                .createdAt(session.getCreatedAt())
+                .modifiedAt(session.getModifiedAt())
+                .build();
+    }
+}
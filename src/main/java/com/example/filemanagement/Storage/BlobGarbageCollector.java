@@ -0,0 +1,360 @@
+package com.example.filemanagement.Storage;
+
+import com.example.filemanagement.Helpers.FileHelper;
+import com.example.filemanagement.Helpers.StorageKeyResolver;
+import com.example.filemanagement.Models.BlobModel;
+import com.example.filemanagement.Repositories.BlobRepository;
+import com.example.filemanagement.Repositories.FileRepository;
+import com.example.filemanagement.Repositories.UploadSessionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reclaims storage nobody references anymore, e.g. after a failed upload or a crash between writing a blob and
+ * its file row. Two passes, each picking up where the previous run stopped:
+ * <ul>
+ *   <li>rows: blob rows are checked against the files using them; unreferenced ones are deleted with their data,
+ *   drifted reference counts are corrected</li>
+ *   <li>files: the upload directory is scanned a few top-level shards per run, in parallel; stored files without a
+ *   blob row or a file using them are deleted, as are incoming files left behind by aborted writes</li>
+ * </ul>
+ * Nothing touched within the grace period is considered, so writes in flight are never mistaken for orphans.
+ */
+@Component
+public class BlobGarbageCollector {
+
+    private static final Logger log = LoggerFactory.getLogger(BlobGarbageCollector.class);
+
+    // the 256 two-hex-character shard directories, then the flat root with legacy and incoming files
+    private static final int SHARD_COUNT = 256;
+    private static final int SCAN_UNITS = SHARD_COUNT + 1;
+
+    private final BlobRepository blobRepository;
+    private final FileRepository fileRepository;
+    private final UploadSessionRepository uploadSessionRepository;
+    private final FileHelper fileHelper;
+    private final StorageKeyResolver storageKeyResolver;
+    private final BlobReadCache blobReadCache;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Duration gracePeriod;
+    private final int rowsPerRun;
+    private final int shardsPerRun;
+    private final int parallelism;
+    private final int batchSize;
+    private final ReentrantLock running = new ReentrantLock();
+
+    // where the next run carries on
+    private String rowCursor = "";
+    private int nextScanUnit;
+
+    private final Counter reclaimedBytes;
+    private final Counter reclaimedBlobs;
+    private final Counter scannedRows;
+    private final Counter scannedFiles;
+    private volatile double scanRate;
+
+    public BlobGarbageCollector(BlobRepository blobRepository, FileRepository fileRepository,
+                                UploadSessionRepository uploadSessionRepository, FileHelper fileHelper,
+                                StorageKeyResolver storageKeyResolver, BlobReadCache blobReadCache,
+                                TransactionTemplate transactionTemplate, MeterRegistry meterRegistry,
+                                @Value("${storage.gc.enabled:true}") boolean enabled,
+                                @Value("${storage.gc.grace-period-minutes:1440}") long gracePeriodMinutes,
+                                @Value("${storage.gc.rows-per-run:50000}") int rowsPerRun,
+                                @Value("${storage.gc.shards-per-run:16}") int shardsPerRun,
+                                @Value("${storage.gc.parallelism:4}") int parallelism,
+                                @Value("${storage.gc.batch-size:500}") int batchSize) {
+        this.blobRepository = blobRepository;
+        this.fileRepository = fileRepository;
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.fileHelper = fileHelper;
+        this.storageKeyResolver = storageKeyResolver;
+        this.blobReadCache = blobReadCache;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.gracePeriod = Duration.ofMinutes(gracePeriodMinutes);
+        this.rowsPerRun = rowsPerRun;
+        this.shardsPerRun = Math.max(1, Math.min(shardsPerRun, SCAN_UNITS));
+        this.parallelism = Math.max(1, parallelism);
+        this.batchSize = batchSize;
+
+        this.reclaimedBytes = Counter.builder("storage.gc.reclaimed.bytes")
+                .description("Stored bytes freed by the garbage collector")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.reclaimedBlobs = Counter.builder("storage.gc.reclaimed.blobs")
+                .description("Orphaned blobs and incoming files deleted")
+                .register(meterRegistry);
+        this.scannedRows = Counter.builder("storage.gc.scanned").tag("pass", "rows").register(meterRegistry);
+        this.scannedFiles = Counter.builder("storage.gc.scanned").tag("pass", "files").register(meterRegistry);
+        Gauge.builder("storage.gc.scan.rate", this, gc -> gc.scanRate)
+                .description("Files per second scanned by the last directory pass")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${storage.gc.interval-ms:3600000}", initialDelayString = "${storage.gc.interval-ms:3600000}")
+    public void scheduledCollection() {
+        if (enabled) {
+            collect();
+        }
+    }
+
+    /** One incremental run of both passes; returns what it did */
+    public Map<String, Object> collect() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (!running.tryLock()) {
+            result.put("skipped", "a collection is already running");
+            return result;
+        }
+        long start = System.nanoTime();
+        Tally tally = new Tally();
+        try {
+            LocalDateTime rowCutoff = LocalDateTime.now().minus(gracePeriod);
+            collectRows(rowCutoff, tally);
+            collectFiles(Instant.now().minus(gracePeriod), tally);
+        } finally {
+            running.unlock();
+        }
+
+        if (tally.blobs.get() > 0) {
+            log.info("Reclaimed {} orphaned blobs, {} bytes", tally.blobs.get(), tally.bytes.get());
+        }
+        result.put("rowsScanned", tally.rows.get());
+        result.put("filesScanned", tally.files.get());
+        result.put("refCountsCorrected", tally.corrected.get());
+        result.put("blobsReclaimed", tally.blobs.get());
+        result.put("bytesReclaimed", tally.bytes.get());
+        result.put("filesPerSecond", scanRate);
+        result.put("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return result;
+    }
+
+    // blob rows in key order from the cursor on, a batch per transaction; wraps around once the end is reached
+    private void collectRows(LocalDateTime cutoff, Tally tally) {
+        int checked = 0;
+        while (checked < rowsPerRun) {
+            List<String> keys = blobRepository.findStorageKeysAfter(rowCursor, Limit.of(batchSize));
+            if (keys.isEmpty()) {
+                rowCursor = "";
+                return;
+            }
+            transactionTemplate.executeWithoutResult(status -> checkRows(keys, cutoff, tally));
+            rowCursor = keys.getLast();
+            checked += keys.size();
+            scannedRows.increment(keys.size());
+        }
+    }
+
+    // under the row locks, so a concurrent acquire of the same content waits until the blob is gone for good
+    private void checkRows(List<String> keys, LocalDateTime cutoff, Tally tally) {
+        Map<String, Long> references = references(keys);
+        List<BlobModel> unreferenced = new ArrayList<>();
+        for (BlobModel blob : blobRepository.lockAllByStorageKeyIn(keys)) {
+            tally.rows.incrementAndGet();
+            LocalDateTime touchedAt = blob.getTouchedAt() != null ? blob.getTouchedAt() : blob.getCreatedAt();
+            if (touchedAt != null && touchedAt.isAfter(cutoff)) {
+                continue;  // its file row may not be committed yet
+            }
+            long refs = references.getOrDefault(blob.getStorageKey(), 0L);
+            if (refs == 0) {
+                unreferenced.add(blob);
+            } else if (refs != blob.getRefCount()) {
+                blob.setRefCount(refs);
+                tally.corrected.incrementAndGet();
+            }
+        }
+
+        for (BlobModel blob : unreferenced) {
+            reclaimed(blob.storedLength(), tally);
+        }
+        blobRepository.deleteAll(unreferenced);
+        // packed blobs are left to the compactor once the row is gone
+        fileHelper.deleteBlobFilesAfterCommit(unreferenced.stream().map(BlobModel::getStorageKey).toList());
+    }
+
+    // the next few scan units, one task each; the cursor only advances when all of them finished
+    private void collectFiles(Instant cutoff, Tally tally) {
+        if (!Files.isDirectory(storageKeyResolver.getRoot())) {
+            return;  // nothing stored locally yet
+        }
+        long start = System.nanoTime();
+        long scannedBefore = tally.files.get();
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, shardsPerRun));
+        try {
+            List<Future<?>> units = new ArrayList<>();
+            for (int i = 0; i < shardsPerRun; i++) {
+                int unit = (nextScanUnit + i) % SCAN_UNITS;
+                units.add(pool.submit(() -> scanUnit(unit, cutoff, tally)));
+            }
+            for (Future<?> unit : units) {
+                unit.get();
+            }
+            nextScanUnit = (nextScanUnit + shardsPerRun) % SCAN_UNITS;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Storage scan stopped, retrying the same shards next run: {}", e.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        scanRate = seconds > 0 ? (tally.files.get() - scannedBefore) / seconds : 0;
+    }
+
+    private Void scanUnit(int unit, Instant cutoff, Tally tally) throws IOException {
+        List<Path> batch = new ArrayList<>();
+        if (unit == SHARD_COUNT) {
+            scanDirectory(storageKeyResolver.getRoot(), cutoff, tally, batch);
+        } else {
+            Path shard = storageKeyResolver.getRoot().resolve(String.format("%02x", unit));
+            if (Files.isDirectory(shard)) {
+                try (DirectoryStream<Path> subShards = Files.newDirectoryStream(shard, Files::isDirectory)) {
+                    for (Path subShard : subShards) {
+                        scanDirectory(subShard, cutoff, tally, batch);
+                    }
+                }
+            }
+        }
+        checkFiles(batch, tally);
+        return null;
+    }
+
+    // streamed, never listed into memory; stored files are checked a batch at a time
+    private void scanDirectory(Path directory, Instant cutoff, Tally tally, List<Path> batch) throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, Files::isRegularFile)) {
+            for (Path entry : entries) {
+                tally.files.incrementAndGet();
+                scannedFiles.increment();
+                if (!olderThan(entry, cutoff)) {
+                    continue;
+                }
+                String name = entry.getFileName().toString();
+                if (FileHelper.isIncomingKey(name)) {
+                    collectIncoming(entry, name, tally);
+                    continue;
+                }
+                batch.add(entry);
+                if (batch.size() >= batchSize) {
+                    checkFiles(batch, tally);
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    // an incoming file this old belongs to a write that died, unless an upload session is still open for it
+    private void collectIncoming(Path incoming, String name, Tally tally) throws IOException {
+        String sessionId = FileHelper.uploadSessionIdOf(name);
+        if (sessionId != null && uploadSessionRepository.existsById(sessionId)) {
+            return;
+        }
+        deleteOrphan(incoming, tally);
+    }
+
+    /*
+     * The locking read also covers keys without a row, so an acquire of the same content waits until this
+     * transaction has deleted the file and then stores it afresh.
+     */
+    private void checkFiles(List<Path> batch, Tally tally) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Map<String, Path> byKey = new HashMap<>();
+        for (Path path : batch) {
+            byKey.put(path.getFileName().toString(), path);
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            for (BlobModel blob : blobRepository.lockAllByStorageKeyIn(byKey.keySet())) {
+                byKey.remove(blob.getStorageKey());  // a row owns it; the row pass decides
+            }
+            references(byKey.keySet()).keySet().forEach(byKey::remove);  // legacy files without a row
+            for (Map.Entry<String, Path> orphan : byKey.entrySet()) {
+                try {
+                    deleteOrphan(orphan.getValue(), tally);
+                    blobReadCache.invalidate(orphan.getKey());
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not delete stored file " + orphan.getKey(), e);
+                }
+            }
+        });
+    }
+
+    private void deleteOrphan(Path path, Tally tally) throws IOException {
+        try {
+            long size = Files.size(path);
+            if (Files.deleteIfExists(path)) {
+                reclaimed(size, tally);
+            }
+        } catch (NoSuchFileException e) {
+            // deleted since it was listed
+        }
+    }
+
+    private void reclaimed(long bytes, Tally tally) {
+        tally.blobs.incrementAndGet();
+        tally.bytes.addAndGet(bytes);
+        reclaimedBlobs.increment();
+        reclaimedBytes.increment(bytes);
+    }
+
+    // files per storage key, binned ones included
+    private Map<String, Long> references(Collection<String> keys) {
+        Map<String, Long> references = new HashMap<>();
+        if (keys.isEmpty()) {
+            return references;
+        }
+        for (Object[] row : fileRepository.countByStorageKeyIn(keys)) {
+            references.put((String) row[0], ((Number) row[1]).longValue());
+        }
+        return references;
+    }
+
+    private static boolean olderThan(Path path, Instant cutoff) {
+        try {
+            return Files.getLastModifiedTime(path).toInstant().isBefore(cutoff);
+        } catch (IOException e) {
+            return false;  // gone, or unreadable: not ours to judge this run
+        }
+    }
+
+    /** What one run did, added to from every scan thread */
+    private static final class Tally {
+        final AtomicLong rows = new AtomicLong();
+        final AtomicLong files = new AtomicLong();
+        final AtomicLong corrected = new AtomicLong();
+        final AtomicLong blobs = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+    }
+}
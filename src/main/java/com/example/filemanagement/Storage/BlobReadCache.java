@@ -0,0 +1,107 @@
+package com.example.filemanagement.Storage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Optional;
+
+/**
+ * Whole stored blobs held off-heap for downloads of hot files. Blobs are immutable under their content key,
+ * so entries only go on eviction (size-aware W-TinyLFU, weighed in bytes) or when the blob is deleted.
+ * Direct buffers are released by GC after eviction: keep -XX:MaxDirectMemorySize above storage.cache.max-size-mb.
+ */
+@Component
+public class BlobReadCache {
+
+    private final StorageBackend storageBackend;
+    private final boolean enabled;
+    private final long maxEntrySize;
+    private final Cache<String, ByteBuffer> cache;
+
+    public BlobReadCache(StorageBackend storageBackend, MeterRegistry meterRegistry,
+                         @Value("${storage.cache.enabled:false}") boolean enabled,
+                         @Value("${storage.cache.max-size-mb:256}") long maxSizeMb,
+                         @Value("${storage.cache.max-entry-size-mb:8}") long maxEntrySizeMb) {
+        this.storageBackend = storageBackend;
+        this.enabled = enabled;
+        this.maxEntrySize = maxEntrySizeMb * 1024 * 1024;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSizeMb * 1024 * 1024)
+                .weigher((String key, ByteBuffer blob) -> blob.capacity())
+                .recordStats()
+                .build();
+
+        // cache.gets{result=hit|miss}, cache.evictions, cache.eviction.weight, cache.size
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "blobReadCache");
+        Gauge.builder("blob.read.cache.bytes", cache,
+                        c -> c.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L))
+                .description("Bytes of blob content held by the read cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /** The stored bytes of a blob, loaded on a miss; empty when caching is off or the blob is too large to cache */
+    public Optional<ByteBuffer> get(String storageKey, long storedLength) throws IOException {
+        if (!enabled || storedLength > maxEntrySize) {
+            return Optional.empty();
+        }
+        try {
+            ByteBuffer blob = cache.get(storageKey, key -> load(key, storedLength));  // concurrent misses load once
+            return Optional.of(blob.asReadOnlyBuffer());  // own position and limit per reader
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Drop a blob, once the surrounding transaction completes when there is one: until its row change commits,
+     * a reader can still load the old bytes back in.
+     */
+    public void invalidate(String storageKey) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            cache.invalidate(storageKey);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                cache.invalidate(storageKey);  // after a rollback too: harmless
+            }
+        });
+    }
+
+    // bytes held once pending evictions have run; for tests, the gauge reads without forcing them
+    long weightedSize() {
+        cache.cleanUp();
+        return cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L);
+    }
+
+    private ByteBuffer load(String storageKey, long storedLength) {
+        ByteBuffer blob = ByteBuffer.allocateDirect((int) storedLength);
+        try (InputStream in = storageBackend.open(storageKey);
+             ReadableByteChannel channel = Channels.newChannel(in)) {
+            while (blob.hasRemaining() && channel.read(blob) != -1) {
+                // keep filling
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (blob.hasRemaining()) {
+            throw new UncheckedIOException(new IOException("Blob " + storageKey + " is shorter than " + storedLength + " bytes"));
+        }
+        return blob.flip();
+    }
+}
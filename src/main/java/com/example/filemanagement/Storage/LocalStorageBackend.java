@@ -0,0 +1,78 @@
+package com.example.filemanagement.Storage;
+
+import com.example.filemanagement.Helpers.StorageKeyResolver;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/** Blobs as files under file.upload-dir, in the sharded layout of StorageKeyResolver */
+@Component
+@Qualifier(PackingStorageBackend.BACKING)
+@ConditionalOnProperty(name = "storage.backend", havingValue = "local", matchIfMissing = true)
+public class LocalStorageBackend implements StorageBackend {
+
+    private final StorageKeyResolver storageKeyResolver;
+
+    public LocalStorageBackend(StorageKeyResolver storageKeyResolver) {
+        this.storageKeyResolver = storageKeyResolver;
+    }
+
+    @Override
+    public void put(String storageKey, Path source, long size) throws IOException {
+        if (storageKeyResolver.exists(storageKey)) {
+            Files.deleteIfExists(source);  // content already stored, nothing more to write
+            return;
+        }
+        Path target = storageKeyResolver.prepareForWrite(storageKey);
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);  // incoming files sit on the same disk: a rename
+        } catch (FileAlreadyExistsException e) {
+            Files.deleteIfExists(source);  // same content committed concurrently
+        }
+    }
+
+    @Override
+    public InputStream getRange(String storageKey, long start, long end) throws IOException {
+        FileChannel channel = FileChannel.open(storageKeyResolver.resolve(storageKey), StandardOpenOption.READ);
+        channel.position(start);
+        return new BoundedInputStream(Channels.newInputStream(channel), end - start);
+    }
+
+    @Override
+    public InputStream open(String storageKey) throws IOException {
+        return Files.newInputStream(storageKeyResolver.resolve(storageKey));
+    }
+
+    @Override
+    public void delete(String storageKey) throws IOException {
+        storageKeyResolver.delete(storageKey);
+    }
+
+    @Override
+    public Optional<BlobStat> stat(String storageKey) throws IOException {
+        try {
+            return Optional.of(new BlobStat(Files.size(storageKeyResolver.resolve(storageKey))));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<Path> localPath(String storageKey) {
+        Path path = storageKeyResolver.resolve(storageKey);
+        return Files.exists(path) ? Optional.of(path) : Optional.empty();
+    }
+}
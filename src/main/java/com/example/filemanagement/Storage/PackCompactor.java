@@ -0,0 +1,127 @@
+package com.example.filemanagement.Storage;
+
+import com.example.filemanagement.Models.BlobModel;
+import com.example.filemanagement.Repositories.BlobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reclaims pack space left by released blobs: segments without live blobs are deleted, mostly dead segments
+ * have their live blobs copied into the active segment first and go on a later pass. Segments are only looked
+ * at once sealed for the grace period, and before their live bytes are counted, so no blob whose row has not
+ * committed yet is mistaken for dead space.
+ */
+@Component
+public class PackCompactor {
+
+    private static final Logger log = LoggerFactory.getLogger(PackCompactor.class);
+    private static final int BATCH_SIZE = 500;
+
+    private final PackFileStore packFileStore;
+    private final BlobRepository blobRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final double liveRatioThreshold;
+    private final Duration gracePeriod;
+    private final ReentrantLock running = new ReentrantLock();
+
+    public PackCompactor(PackFileStore packFileStore, BlobRepository blobRepository, TransactionTemplate transactionTemplate,
+                         @Value("${storage.pack.compaction-live-ratio:0.5}") double liveRatioThreshold,
+                         @Value("${storage.pack.compaction-grace-minutes:60}") long graceMinutes) {
+        this.packFileStore = packFileStore;
+        this.blobRepository = blobRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.liveRatioThreshold = liveRatioThreshold;
+        this.gracePeriod = Duration.ofMinutes(graceMinutes);
+    }
+
+    @Scheduled(fixedDelayString = "${storage.pack.compaction-interval-ms:3600000}", initialDelayString = "${storage.pack.compaction-interval-ms:3600000}")
+    public void scheduledCompaction() {
+        if (packFileStore.isInUse()) {
+            compact();
+        }
+    }
+
+    /** One pass over the sealed segments; returns what it did */
+    public Map<String, Object> compact() {
+        Map<String, Object> result = new HashMap<>();
+        if (!running.tryLock()) {
+            result.put("skipped", "a compaction is already running");
+            return result;
+        }
+        int deleted = 0;
+        int relocated = 0;
+        long reclaimed = 0;
+        try {
+            Map<Integer, Long> sealed = packFileStore.sealedSegments(Instant.now().minus(gracePeriod));  // first: counted rows cover all it holds
+            Map<Integer, Long> liveBytes = new HashMap<>();
+            for (Object[] row : blobRepository.sumSizeByPackSegment()) {
+                liveBytes.put((Integer) row[0], ((Number) row[1]).longValue());
+            }
+
+            for (Map.Entry<Integer, Long> segment : sealed.entrySet()) {
+                long live = liveBytes.getOrDefault(segment.getKey(), 0L);
+                if (live == 0) {
+                    try {
+                        packFileStore.deleteSegment(segment.getKey());
+                        deleted++;
+                        reclaimed += segment.getValue();
+                    } catch (IOException e) {
+                        log.warn("Could not delete pack segment {}, retrying next pass: {}", segment.getKey(), e.getMessage());
+                    }
+                } else if (live < segment.getValue() * liveRatioThreshold) {
+                    relocated += relocate(segment.getKey());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Pack compaction stopped: {}", e.getMessage());
+        } finally {
+            running.unlock();
+        }
+
+        result.put("segmentsDeleted", deleted);
+        result.put("bytesReclaimed", reclaimed);
+        result.put("blobsRelocated", relocated);
+        return result;
+    }
+
+    // Live blobs move under their row lock, so a concurrent release either sees the old or the new location
+    private int relocate(int segment) {
+        List<String> keys = blobRepository.findStorageKeysByPackSegment(segment);
+        int moved = 0;
+        for (int i = 0; i < keys.size(); i += BATCH_SIZE) {
+            List<String> batch = keys.subList(i, Math.min(i + BATCH_SIZE, keys.size()));
+            Integer count = transactionTemplate.execute(status -> {
+                int batchMoved = 0;
+                for (BlobModel blob : blobRepository.lockAllByStorageKeyIn(batch)) {
+                    if (!Integer.valueOf(segment).equals(blob.getPackSegment())) {
+                        continue;  // released or moved meanwhile
+                    }
+                    try {
+                        PackFileStore.PackLocation location = packFileStore.copy(segment, blob.getPackOffset(), blob.storedLength());
+                        blob.setPackSegment(location.segment());
+                        blob.setPackOffset(location.offset());
+                        batchMoved++;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return batchMoved;
+            });
+            moved += count != null ? count : 0;
+        }
+        return moved;
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.filemanagement.Storage;
+
+import com.example.filemanagement.Helpers.StorageKeyResolver;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only segment files holding many small blobs back to back, under file.upload-dir/packs.
+ * One segment at a time takes appends; reads go through read-only memory mappings of the segments, one per
+ * window of WINDOW_SIZE bytes, so segments of any size can be mapped.
+ */
+@Component
+public class PackFileStore {
+
+    private static final String SEGMENT_PREFIX = "pack-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    // a window's mapping runs on past its end, so every read starting inside it that is up to WINDOW_SIZE long fits
+    private static final long WINDOW_SIZE = 1L << 30;
+    private static final long MAX_MAPPING_SIZE = 2 * WINDOW_SIZE - 1;
+
+    private final Path packDir;
+    private final long segmentSize;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Map<Window, MappedByteBuffer> mappings = new ConcurrentHashMap<>();
+
+    private FileChannel activeChannel;  // guarded by appendLock
+    private int activeSegment;
+    private long activeSize;
+    private volatile boolean inUse;
+
+    public PackFileStore(StorageKeyResolver storageKeyResolver,
+                         @Value("${storage.pack.segment-size-mb:256}") long segmentSizeMb) throws IOException {
+        this.packDir = storageKeyResolver.getRoot().resolve("packs");
+        this.segmentSize = segmentSizeMb * 1024 * 1024;
+
+        List<Integer> existing = segments();
+        this.inUse = !existing.isEmpty();
+        this.activeSegment = existing.stream().mapToInt(Integer::intValue).max().orElse(0);
+    }
+
+    /** Whether any blob may live in a pack, i.e. whether lookups are worth a query */
+    public boolean isInUse() {
+        return inUse;
+    }
+
+    /** Append a whole file; the returned location is durable once this returns */
+    public PackLocation append(Path source, long size) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            return append(in, 0, size);
+        }
+    }
+
+    /** Copy a blob out of one segment into the active one (compaction) */
+    public PackLocation copy(int segment, long offset, long size) throws IOException {
+        try (FileChannel in = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+            return append(in, offset, size);
+        }
+    }
+
+    private PackLocation append(FileChannel in, long position, long size) throws IOException {
+        appendLock.lock();
+        try {
+            if (activeChannel == null || (activeSize > 0 && activeSize + size > segmentSize)) {
+                rotate();
+            }
+            long offset = activeSize;
+            in.position(position);
+            long written = 0;
+            while (written < size) {
+                long transferred = activeChannel.transferFrom(in, offset + written, size - written);
+                if (transferred <= 0) {
+                    throw new IOException("Source ended after " + written + " of " + size + " bytes");
+                }
+                written += transferred;
+            }
+            activeChannel.force(false);  // the blob row will point here once its transaction commits
+            activeSize += size;
+            inUse = true;
+            return new PackLocation(activeSegment, offset);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // Continue the last segment after a restart while it has room, otherwise start the next one
+    private void rotate() throws IOException {
+        if (activeChannel != null) {
+            activeChannel.close();
+            activeSegment++;
+        }
+        Files.createDirectories(packDir);
+        activeChannel = FileChannel.open(segmentPath(Math.max(activeSegment, 1)),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        activeSegment = Math.max(activeSegment, 1);
+        activeSize = activeChannel.size();  // bytes past the last committed blob are just dead space
+        if (activeSize >= segmentSize) {
+            rotate();
+        }
+    }
+
+    /** Bytes [offset, offset + length) of a segment, read from the memory mapping of the window it starts in */
+    public InputStream read(int segment, long offset, long length) throws IOException {
+        if (length > WINDOW_SIZE) {
+            throw new IOException("Packed blob of " + length + " bytes is larger than a mapping window");
+        }
+        Window window = new Window(segment, offset / WINDOW_SIZE);
+        long start = window.index() * WINDOW_SIZE;
+        long end = offset - start + length;  // within the window's mapping
+
+        MappedByteBuffer mapping;
+        try {
+            mapping = mappings.compute(window, (key, existing) ->
+                    existing != null && existing.capacity() >= end ? existing : map(key));  // the active segment grows: remap
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (mapping.capacity() < end) {
+            throw new IOException("Pack segment " + segment + " is shorter than expected");
+        }
+        return new ByteBufferInputStream(mapping.slice(Math.toIntExact(offset - start), Math.toIntExact(length)));
+    }
+
+    private MappedByteBuffer map(Window window) {
+        try (FileChannel channel = FileChannel.open(segmentPath(window.segment()), StandardOpenOption.READ)) {
+            long start = window.index() * WINDOW_SIZE;
+            long size = Math.max(0, Math.min(channel.size() - start, MAX_MAPPING_SIZE));
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, size);  // stays valid after the channel closes
+        } catch (NoSuchFileException e) {
+            throw new UncheckedIOException(new NoSuchFileException("pack segment " + window.segment()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Segments that no longer take appends and were last written before the cutoff, with their sizes */
+    public Map<Integer, Long> sealedSegments(Instant cutoff) throws IOException {
+        int active;
+        appendLock.lock();
+        try {
+            active = activeSegment;  // before the first append this is the last segment, which appends will reopen
+        } finally {
+            appendLock.unlock();
+        }
+
+        Map<Integer, Long> sealed = new HashMap<>();
+        for (int segment : segments()) {
+            Path path = segmentPath(segment);
+            // blobs appended shortly before it was sealed may still wait for their rows to commit
+            if (segment != active && Files.getLastModifiedTime(path).toInstant().isBefore(cutoff)) {
+                sealed.put(segment, Files.size(path));
+            }
+        }
+        return sealed;
+    }
+
+    /** Delete a segment without live blobs; a mapping still in use elsewhere stays readable until dropped */
+    public void deleteSegment(int segment) throws IOException {
+        mappings.keySet().removeIf(window -> window.segment() == segment);
+        Files.deleteIfExists(segmentPath(segment));
+    }
+
+    private List<Integer> segments() throws IOException {
+        List<Integer> segments = new ArrayList<>();
+        if (!Files.isDirectory(packDir)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(packDir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                segments.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        return segments;
+    }
+
+    private Path segmentPath(int segment) {
+        return packDir.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private record Window(int segment, long index) {
+    }
+
+    /** Where a packed blob starts */
+    public record PackLocation(int segment, long offset) {
+    }
+}
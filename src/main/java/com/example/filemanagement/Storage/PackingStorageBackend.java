@@ -0,0 +1,119 @@
+package com.example.filemanagement.Storage;
+
+import com.example.filemanagement.Models.BlobModel;
+import com.example.filemanagement.Repositories.BlobRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The StorageBackend everyone gets: small blobs go into pack segments (storage.pack.enabled), the rest to the
+ * configured backend. Pack locations live on the blob row, so reads check it before asking the backend.
+ */
+@Component
+@Primary
+public class PackingStorageBackend implements StorageBackend {
+
+    /** Qualifier of the configured backend this one wraps */
+    public static final String BACKING = "backingStorage";
+
+    private final StorageBackend backing;
+    private final PackFileStore packFileStore;
+    private final BlobRepository blobRepository;
+    private final boolean enabled;
+    private final long maxPackedSize;
+
+    public PackingStorageBackend(@Qualifier(BACKING) StorageBackend backing,
+                                 PackFileStore packFileStore,
+                                 BlobRepository blobRepository,
+                                 @Value("${storage.pack.enabled:false}") boolean enabled,
+                                 @Value("${storage.pack.max-blob-size-kb:64}") long maxPackedSizeKb) {
+        this.backing = backing;
+        this.packFileStore = packFileStore;
+        this.blobRepository = blobRepository;
+        this.enabled = enabled;
+        this.maxPackedSize = maxPackedSizeKb * 1024;
+    }
+
+    /** Small blobs are appended to a pack under the blob row lock, so one copy is written per content */
+    @Override
+    @Transactional
+    public void put(String storageKey, Path source, long size) throws IOException {
+        if (!enabled || size > maxPackedSize) {
+            backing.put(storageKey, source, size);
+            return;
+        }
+
+        List<BlobModel> blobs = blobRepository.lockAllByStorageKeyIn(List.of(storageKey));
+        if (blobs.isEmpty()) {
+            backing.put(storageKey, source, size);  // no blob row to record a pack location on
+            return;
+        }
+        BlobModel blob = blobs.get(0);
+        if (blob.getPackSegment() != null || backing.stat(storageKey).isPresent()) {
+            Files.deleteIfExists(source);  // content already stored, nothing more to write
+            return;
+        }
+
+        PackFileStore.PackLocation location = packFileStore.append(source, size);
+        blob.setPackSegment(location.segment());
+        blob.setPackOffset(location.offset());
+        Files.deleteIfExists(source);
+    }
+
+    @Override
+    public InputStream getRange(String storageKey, long start, long end) throws IOException {
+        Optional<BlobModel> packed = findPacked(storageKey);
+        if (packed.isPresent()) {
+            return packFileStore.read(packed.get().getPackSegment(), packed.get().getPackOffset() + start, end - start);
+        }
+        return backing.getRange(storageKey, start, end);
+    }
+
+    @Override
+    public InputStream open(String storageKey) throws IOException {
+        Optional<BlobModel> packed = findPacked(storageKey);
+        if (packed.isPresent()) {
+            return packFileStore.read(packed.get().getPackSegment(), packed.get().getPackOffset(), packed.get().storedLength());
+        }
+        return backing.open(storageKey);
+    }
+
+    /** Packed blobs have no file of their own; their bytes turn into dead space for the compactor once the row goes */
+    @Override
+    public void delete(String storageKey) throws IOException {
+        if (findPacked(storageKey).isEmpty()) {
+            backing.delete(storageKey);
+        }
+    }
+
+    @Override
+    public Optional<BlobStat> stat(String storageKey) throws IOException {
+        Optional<BlobModel> packed = findPacked(storageKey);
+        if (packed.isPresent()) {
+            return Optional.of(new BlobStat(packed.get().storedLength()));
+        }
+        return backing.stat(storageKey);
+    }
+
+    @Override
+    public Optional<Path> localPath(String storageKey) {
+        return findPacked(storageKey).isPresent() ? Optional.empty() : backing.localPath(storageKey);
+    }
+
+    private Optional<BlobModel> findPacked(String storageKey) {
+        if (!packFileStore.isInUse()) {
+            return Optional.empty();  // nothing was ever packed: skip the query
+        }
+        return blobRepository.findById(storageKey).filter(blob -> blob.getPackSegment() != null);
+    }
+}
@@ -0,0 +1,308 @@
+package com.example.filemanagement.Storage;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Blobs as objects in an S3-compatible bucket (AWS, MinIO, ...). Large blobs are uploaded as multipart uploads
+ * with up to storage.s3.parallelism parts in flight per blob, and read back as streamed ranged GETs.
+ */
+@Component
+@Qualifier(PackingStorageBackend.BACKING)
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3")
+public class S3StorageBackend implements StorageBackend {
+
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;  // S3's floor for every part but the last
+
+    private final S3Client s3;
+    private final String bucket;
+    private final long partSize;
+    private final int parallelism;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();  // part transfers just wait on the network
+
+    public S3StorageBackend(@Value("${storage.s3.bucket}") String bucket,
+                            @Value("${storage.s3.region:us-east-1}") String region,
+                            @Value("${storage.s3.endpoint:}") String endpoint,
+                            @Value("${storage.s3.access-key:}") String accessKey,
+                            @Value("${storage.s3.secret-key:}") String secretKey,
+                            @Value("${storage.s3.path-style:false}") boolean pathStyle,
+                            @Value("${storage.s3.part-size-mb:8}") long partSizeMb,
+                            @Value("${storage.s3.parallelism:4}") int parallelism) {
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(region))
+                .forcePathStyle(pathStyle);  // MinIO-style endpoints address buckets by path
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        if (!accessKey.isBlank()) {
+            builder.credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey)));
+        }  // otherwise the default chain: environment, profile, instance role
+
+        this.s3 = builder.build();
+        this.bucket = bucket;
+        this.partSize = Math.max(MIN_PART_SIZE, partSizeMb * 1024 * 1024);
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+        s3.close();
+    }
+
+    @Override
+    public void put(String storageKey, Path source, long size) throws IOException {
+        if (stat(storageKey).isPresent()) {
+            Files.deleteIfExists(source);  // content already stored, nothing more to write
+            return;
+        }
+        try {
+            if (size <= partSize) {
+                s3.putObject(b -> b.bucket(bucket).key(storageKey).contentLength(size), RequestBody.fromFile(source));
+            } else {
+                multipartUpload(storageKey, source, size);
+            }
+        } catch (SdkException e) {
+            throw new IOException("Could not store " + storageKey + " in bucket " + bucket, e);
+        }
+        Files.deleteIfExists(source);
+    }
+
+    // Parts are read straight from the incoming file, each through its own channel, at most `parallelism` at a time
+    private void multipartUpload(String storageKey, Path source, long size) throws IOException {
+        String uploadId = s3.createMultipartUpload(b -> b.bucket(bucket).key(storageKey)).uploadId();
+        Semaphore permits = new Semaphore(parallelism);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Future<CompletedPart>> parts = new ArrayList<>();
+
+        try {
+            for (long offset = 0; offset < size && failure.get() == null; offset += partSize) {
+                int partNumber = parts.size() + 1;
+                long start = offset;
+                long length = Math.min(partSize, size - offset);
+
+                permits.acquire();
+                parts.add(executor.submit(() -> {
+                    try {
+                        String etag = s3.uploadPart(
+                                b -> b.bucket(bucket).key(storageKey).uploadId(uploadId).partNumber(partNumber).contentLength(length),
+                                RequestBody.fromContentProvider(() -> fileSlice(source, start, length), length, "application/octet-stream")
+                        ).eTag();
+                        return CompletedPart.builder().partNumber(partNumber).eTag(etag).build();
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);  // stop queueing further parts
+                        throw e;
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            List<CompletedPart> completed = new ArrayList<>(parts.size());
+            for (Future<CompletedPart> part : parts) {
+                completed.add(part.get());
+            }
+            s3.completeMultipartUpload(b -> b.bucket(bucket).key(storageKey).uploadId(uploadId)
+                    .multipartUpload(m -> m.parts(completed)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abortQuietly(storageKey, uploadId, parts);
+            throw new IOException("Interrupted while storing " + storageKey, e);
+        } catch (ExecutionException | RuntimeException e) {
+            abortQuietly(storageKey, uploadId, parts);
+            throw new IOException("Could not store " + storageKey + " in bucket " + bucket, e instanceof ExecutionException ? e.getCause() : e);
+        }
+    }
+
+    private void abortQuietly(String storageKey, String uploadId, List<Future<CompletedPart>> parts) {
+        parts.forEach(part -> part.cancel(true));
+        try {
+            s3.abortMultipartUpload(b -> b.bucket(bucket).key(storageKey).uploadId(uploadId));
+        } catch (SdkException ignored) {
+            // the bucket's lifecycle rule for incomplete uploads cleans up what is left
+        }
+    }
+
+    private static InputStream fileSlice(Path source, long start, long length) {
+        try {
+            FileChannel channel = FileChannel.open(source, StandardOpenOption.READ);
+            channel.position(start);
+            return new BoundedInputStream(Channels.newInputStream(channel), length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public InputStream getRange(String storageKey, long start, long end) throws IOException {
+        if (end <= start) {
+            return InputStream.nullInputStream();
+        }
+        if (end - start <= partSize) {
+            try {
+                return s3.getObject(b -> b.bucket(bucket).key(storageKey).range(httpRange(start, end)));  // streamed as it arrives
+            } catch (NoSuchKeyException e) {
+                throw new NoSuchFileException(storageKey);
+            } catch (SdkException e) {
+                throw new IOException("Could not read " + storageKey + " from bucket " + bucket, e);
+            }
+        }
+        return new PartedRangeInputStream(storageKey, start, end);
+    }
+
+    @Override
+    public void delete(String storageKey) throws IOException {
+        try {
+            s3.deleteObject(b -> b.bucket(bucket).key(storageKey));  // deleting a missing key succeeds
+        } catch (SdkException e) {
+            throw new IOException("Could not delete " + storageKey + " from bucket " + bucket, e);
+        }
+    }
+
+    @Override
+    public Optional<BlobStat> stat(String storageKey) throws IOException {
+        try {
+            return Optional.of(new BlobStat(s3.headObject(b -> b.bucket(bucket).key(storageKey)).contentLength()));
+        } catch (NoSuchKeyException e) {
+            return Optional.empty();
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return Optional.empty();
+            }
+            throw new IOException("Could not stat " + storageKey + " in bucket " + bucket, e);
+        } catch (SdkException e) {
+            throw new IOException("Could not stat " + storageKey + " in bucket " + bucket, e);
+        }
+    }
+
+    private static String httpRange(long start, long end) {
+        return "bytes=" + start + "-" + (end - 1);
+    }
+
+    /**
+     * Reads a large range as consecutive part-sized GETs streamed one after the other. The next `parallelism - 1`
+     * (at least one) requests are opened ahead so their round trips overlap the current one; their bodies stay on the wire until read,
+     * so at most the socket buffers hold them and nothing accumulates on the heap.
+     */
+    private class PartedRangeInputStream extends InputStream {
+
+        private final String storageKey;
+        private final long end;
+        private final Deque<Future<ResponseInputStream<GetObjectResponse>>> pending = new ArrayDeque<>();
+        private long nextOffset;
+        private InputStream current = InputStream.nullInputStream();
+
+        PartedRangeInputStream(String storageKey, long start, long end) {
+            this.storageKey = storageKey;
+            this.end = end;
+            this.nextOffset = start;
+            prefetch();
+        }
+
+        private void prefetch() {
+            while (pending.size() < Math.max(1, parallelism - 1) && nextOffset < end) {
+                long partStart = nextOffset;
+                long partEnd = Math.min(partStart + partSize, end);
+                pending.add(executor.submit(() -> s3.getObject(b -> b.bucket(bucket).key(storageKey)
+                        .range(httpRange(partStart, partEnd)))));
+                nextOffset = partEnd;
+            }
+        }
+
+        // the next part's stream once the current one is used up, false past the end of the range
+        private boolean advance() throws IOException {
+            Future<ResponseInputStream<GetObjectResponse>> next = pending.poll();
+            if (next == null) {
+                return false;
+            }
+            current.close();
+            try {
+                current = next.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading " + storageKey, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof NoSuchKeyException) {
+                    throw new NoSuchFileException(storageKey);
+                }
+                throw new IOException("Could not read " + storageKey + " from bucket " + bucket, e.getCause());
+            }
+            prefetch();
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value;
+            while ((value = current.read()) < 0) {
+                if (!advance()) {
+                    return -1;
+                }
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            int count;
+            while ((count = current.read(buffer, offset, length)) < 0) {
+                if (!advance()) {
+                    return -1;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            current.close();
+            for (Future<ResponseInputStream<GetObjectResponse>> part : pending) {
+                if (!part.cancel(true) && part.state() == Future.State.SUCCESS) {
+                    part.resultNow().abort();  // opened ahead and never read: drop the connection instead of draining it
+                }
+            }
+            pending.clear();
+        }
+    }
+}
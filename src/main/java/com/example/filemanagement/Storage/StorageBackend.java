@@ -0,0 +1,40 @@
+package com.example.filemanagement.Storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Where blob bytes live, addressed by storage key. Blobs are first written and hashed in a local incoming file,
+ * then handed over with put; the backend selected by storage.backend is the only one in the context.
+ * Missing keys surface as NoSuchFileException.
+ */
+public interface StorageBackend {
+
+    /** Store a completely written local file under the key; the source is consumed on success. A key already stored is kept */
+    void put(String storageKey, Path source, long size) throws IOException;
+
+    /** Bytes [start, end) of a blob */
+    InputStream getRange(String storageKey, long start, long end) throws IOException;
+
+    void delete(String storageKey) throws IOException;
+
+    /** Size of a blob, empty when the key is not stored */
+    Optional<BlobStat> stat(String storageKey) throws IOException;
+
+    /** The whole blob */
+    default InputStream open(String storageKey) throws IOException {
+        BlobStat stat = stat(storageKey).orElseThrow(() -> new NoSuchFileException(storageKey));
+        return getRange(storageKey, 0, stat.size());
+    }
+
+    /** The file behind a key when it is on local disk, so it can be sent with zero-copy I/O */
+    default Optional<Path> localPath(String storageKey) {
+        return Optional.empty();
+    }
+
+    record BlobStat(long size) {
+    }
+}
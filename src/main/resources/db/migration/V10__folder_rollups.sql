@@ -0,0 +1,32 @@
+-- Subtree rollups of every folder, kept current by FolderRollupHelper's delta updates
+alter table folders
+    add column total_size bigint not null default 0,
+    add column file_count bigint not null default 0,
+    add column folder_count bigint not null default 0;
+
+-- Existing folders, the way FolderRollupHelper.recompute counts them: an item counts toward its folder when both are
+-- live or both were binned together (same deleted_at), and a folder's subtree stops below the first one that doesn't.
+create temporary table folder_rollups (
+    id bigint not null,
+    total_size bigint not null,
+    file_count bigint not null,
+    folder_count bigint not null,
+    primary key (id)
+);
+insert into folder_rollups (id, total_size, file_count, folder_count)
+with recursive counted (root_id, folder_id, deleted_at) as (
+    select id, id, deleted_at from folders
+    union all
+    select c.root_id, f.id, f.deleted_at from counted c join folders f on f.parent_id = c.folder_id and f.deleted_at <=> c.deleted_at
+)
+select c.root_id, coalesce(sum(direct.size), 0), coalesce(sum(direct.files), 0), count(*) - 1
+from counted c
+    left join (
+        select folder_id, deleted_at, sum(coalesce(size, 0)) as size, count(*) as files
+        from files where folder_id is not null group by folder_id, deleted_at
+    ) direct on direct.folder_id = c.folder_id and direct.deleted_at <=> c.deleted_at
+group by c.root_id;
+
+update folders f join folder_rollups r on r.id = f.id
+set f.total_size = r.total_size, f.file_count = r.file_count, f.folder_count = r.folder_count;
+drop temporary table folder_rollups;
@@ -0,0 +1,10 @@
+-- Composite indexes for the derived queries in FileRepository and FolderRepository. The listing indexes (V9)
+-- already lead with (parent_id, deleted_at) / (folder_id, deleted_at), so findByParentFolderAndDeletedAtIsNull,
+-- findByFolderAndDeletedAtIsNull and existsByParentFolderAndNameAndDeletedAtIsNull use their prefixes.
+
+-- existsByNameAndParentFolder_Id and findByNameAndParentFolder (zip import): name under a parent, binned or not
+create index idx_folders_parent_name on folders (parent_id, name);
+
+-- the bin: binned rows only, the parent id comes with the index entry for the join
+create index idx_folders_deleted on folders (deleted_at, parent_id);
+create index idx_files_deleted on files (deleted_at, folder_id);
@@ -0,0 +1,3 @@
+-- the bin is listed per user: the owner's binned rows only
+create index idx_files_bin_owner on files (uploaded_by, deleted_at);
+create index idx_folders_bin_owner on folders (created_by, deleted_at);
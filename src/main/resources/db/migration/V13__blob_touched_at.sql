@@ -0,0 +1,3 @@
+-- when a file last took a reference to the blob; the garbage collector skips blobs touched within its grace period
+alter table blobs add column touched_at datetime(6);
+update blobs set touched_at = created_at;
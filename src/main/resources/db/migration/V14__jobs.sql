@@ -0,0 +1,21 @@
+-- long-running folder operations run as jobs; the rows outlive restarts and hold progress and outcome
+create table jobs (
+    id varchar(36) not null,
+    type varchar(16) not null,
+    status varchar(16) not null,
+    folder_id bigint,
+    user_id bigint,
+    items_total bigint,
+    bytes_total bigint,
+    items_done bigint not null default 0,
+    bytes_done bigint not null default 0,
+    message varchar(1000),
+    result_name varchar(255),
+    created_at datetime(6),
+    started_at datetime(6),
+    finished_at datetime(6),
+    primary key (id),
+    index idx_jobs_user_status (user_id, status),
+    index idx_jobs_status_finished (status, finished_at),
+    constraint fk_jobs_user foreign key (user_id) references users (id)
+) engine=InnoDB;
@@ -0,0 +1,3 @@
+-- completion switches a session to COMPLETING so no more chunks are taken; idle sessions are purged by modified_at
+alter table upload_sessions add column status varchar(16) not null default 'OPEN';
+create index idx_upload_sessions_modified on upload_sessions (modified_at);
@@ -0,0 +1,40 @@
+-- The schema as ddl-auto=update created it before migrations took over. Existing databases are baselined at this
+-- version (spring.flyway.baseline-on-migrate) and only run what comes after it.
+
+create table users (
+    id bigint not null auto_increment,
+    email varchar(255) not null,
+    password varchar(255) not null,
+    username varchar(255) not null,
+    primary key (id)
+) engine=InnoDB;
+
+create table folders (
+    id bigint not null auto_increment,
+    created_at datetime(6),
+    deleted_at datetime(6),
+    modified_at datetime(6),
+    name varchar(255) not null,
+    created_by bigint,
+    parent_id bigint,
+    primary key (id),
+    constraint fk_folders_created_by foreign key (created_by) references users (id),
+    constraint fk_folders_parent foreign key (parent_id) references folders (id)
+) engine=InnoDB;
+
+create table files (
+    id bigint not null auto_increment,
+    created_at datetime(6),
+    deleted_at datetime(6),
+    modified_at datetime(6),
+    name varchar(255),
+    size bigint,
+    storage_key varchar(255) not null,
+    type varchar(255),
+    folder_id bigint,
+    uploaded_by bigint,
+    primary key (id),
+    constraint uk_files_storage_key unique (storage_key),
+    constraint fk_files_folder foreign key (folder_id) references folders (id),
+    constraint fk_files_uploaded_by foreign key (uploaded_by) references users (id)
+) engine=InnoDB;
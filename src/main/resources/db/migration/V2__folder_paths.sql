@@ -0,0 +1,20 @@
+-- Materialized ancestor chain of every folder: "/" at the top level, "/1/5/" for a folder under 5 under 1
+alter table folders add column path varchar(760);
+create index idx_folders_path on folders (path);
+
+-- existing folders, walked top down into a scratch table first: MySQL can't update a table it selects from
+create temporary table folder_paths (
+    id bigint not null,
+    path varchar(760) not null,
+    primary key (id)
+);
+insert into folder_paths (id, path)
+with recursive tree (id, path) as (
+    select id, cast('/' as char(760)) from folders where parent_id is null
+    union all
+    select c.id, concat(t.path, t.id, '/') from folders c join tree t on c.parent_id = t.id
+)
+select id, path from tree;
+
+update folders f join folder_paths p on p.id = f.id set f.path = p.path;
+drop temporary table folder_paths;
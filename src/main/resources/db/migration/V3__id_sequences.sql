@@ -0,0 +1,12 @@
+-- Ids come from sequence tables in blocks of 500 (allocationSize), so batched inserts don't need a round trip per
+-- row. Pooled ids are handed out below next_val: start a full block past the rows that got auto-increment ids, before
+-- anything can insert with the new ids.
+create table folders_seq (
+    next_val bigint
+) engine=InnoDB;
+insert into folders_seq select coalesce(max(id), 0) + 501 from folders;
+
+create table files_seq (
+    next_val bigint
+) engine=InnoDB;
+insert into files_seq select coalesce(max(id), 0) + 501 from files;
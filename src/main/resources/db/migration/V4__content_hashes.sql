@@ -0,0 +1,2 @@
+-- SHA-256 of each file's content (hex), computed on upload; null for files stored before
+alter table files add column content_hash varchar(64);
@@ -0,0 +1,21 @@
+-- Content-addressed blobs: files with the same content share one stored blob, counted by ref_count
+create table blobs (
+    storage_key varchar(64) not null,
+    size bigint,
+    ref_count bigint not null,
+    created_at datetime(6),
+    primary key (storage_key)
+) engine=InnoDB;
+
+-- files share storage keys now; the unique constraint goes, whatever ddl-auto named it, and a plain index stays
+set @storage_key_unique = (
+    select index_name from information_schema.statistics
+    where table_schema = database() and table_name = 'files' and column_name = 'storage_key' and non_unique = 0
+    limit 1);
+set @drop_unique = if(@storage_key_unique is null, 'do 0',
+    concat('alter table files drop index `', @storage_key_unique, '`'));
+prepare drop_unique from @drop_unique;
+execute drop_unique;
+deallocate prepare drop_unique;
+
+create index idx_files_storage_key on files (storage_key);
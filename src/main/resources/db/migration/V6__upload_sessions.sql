@@ -0,0 +1,24 @@
+-- Resumable uploads: a session per file being uploaded, and the byte ranges received so far
+create table upload_sessions (
+    id varchar(36) not null,
+    file_name varchar(255) not null,
+    content_type varchar(255),
+    total_size bigint not null,
+    folder_id bigint,
+    user_id bigint,
+    created_at datetime(6),
+    modified_at datetime(6),
+    primary key (id),
+    constraint fk_upload_sessions_folder foreign key (folder_id) references folders (id),
+    constraint fk_upload_sessions_user foreign key (user_id) references users (id)
+) engine=InnoDB;
+
+create table upload_chunks (
+    id bigint not null auto_increment,
+    session_id varchar(36) not null,
+    start_offset bigint not null,
+    end_offset bigint not null,
+    primary key (id),
+    index idx_upload_chunks_session (session_id, start_offset),
+    constraint fk_upload_chunks_session foreign key (session_id) references upload_sessions (id)
+) engine=InnoDB;
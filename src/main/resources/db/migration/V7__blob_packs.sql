@@ -0,0 +1,4 @@
+-- Small blobs can live inside a pack segment: size bytes from pack_offset of segment pack_segment
+alter table blobs
+    add column pack_segment integer,
+    add column pack_offset bigint;
@@ -0,0 +1,4 @@
+-- Content coding of the stored bytes (e.g. gzip) and their size on storage; both null when stored raw
+alter table blobs
+    add column codec varchar(16),
+    add column stored_size bigint;
@@ -0,0 +1,7 @@
+-- Keyset listings: one index per sort order, scanned from the cursor on
+create index idx_folders_listing_name on folders (parent_id, deleted_at, name, id);
+create index idx_folders_listing_modified on folders (parent_id, deleted_at, modified_at, id);
+
+create index idx_files_listing_name on files (folder_id, deleted_at, name, id);
+create index idx_files_listing_size on files (folder_id, deleted_at, size, id);
+create index idx_files_listing_modified on files (folder_id, deleted_at, modified_at, id);
@@ -0,0 +1,118 @@
+package com.example.filemanagement.Helpers;
+
+import com.example.filemanagement.Storage.BlobReadCache;
+import com.example.filemanagement.Storage.StorageBackend;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * ByteRangeHelper range handling: overlapping and adjacent ranges are merged, ranges asking for more than the file
+ * are refused, and a compressed blob is decoded once for all parts of a multi-range response.
+ */
+class ByteRangeHelperTest {
+
+	private static final String KEY = "blob";
+	private static final byte[] CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz".repeat(100).getBytes(StandardCharsets.US_ASCII);
+
+	final StorageBackend storageBackend = mock(StorageBackend.class);
+	final BlobReadCache blobReadCache = mock(BlobReadCache.class);
+	final ByteRangeHelper byteRangeHelper = new ByteRangeHelper(storageBackend, blobReadCache);
+
+	byte[] gzipped;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+			gzip.write(CONTENT);
+		}
+		gzipped = compressed.toByteArray();
+
+		when(blobReadCache.get(anyString(), anyLong())).thenReturn(Optional.empty());
+		when(storageBackend.getRange(eq(KEY), anyLong(), anyLong())).thenAnswer(invocation -> {
+			long start = invocation.getArgument(1);
+			long end = invocation.getArgument(2);
+			return new ByteArrayInputStream(CONTENT, (int) start, (int) (end - start));
+		});
+		when(storageBackend.open(KEY)).thenAnswer(invocation -> new ByteArrayInputStream(gzipped));
+	}
+
+	@Test
+	void mergesOverlappingAndAdjacentRangesIntoOne() throws IOException {
+		ResponseEntity<?> response = serve("bytes=10-19,15-29,30-39");
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+		assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 10-39/" + CONTENT.length);
+		assertThat(body(response)).isEqualTo(Arrays.copyOfRange(CONTENT, 10, 40));
+	}
+
+	@Test
+	void keepsDisjointRangesAsPartsInFileOrder() throws IOException {
+		ResponseEntity<?> response = serve("bytes=100-109,0-9");
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+		assertThat(response.getHeaders().getContentType().toString()).startsWith("multipart/byteranges");
+		String body = new String(body(response), StandardCharsets.US_ASCII);
+		assertThat(body.indexOf("bytes 0-9/")).isLessThan(body.indexOf("bytes 100-109/"));
+	}
+
+	@Test
+	void refusesRangesAddingUpToMoreThanTheFile() {
+		String ranges = "bytes=" + "0-,".repeat(3) + "0-";
+
+		ResponseEntity<?> response = serve(ranges);
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+		assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */" + CONTENT.length);
+	}
+
+	@Test
+	void decodesOnceForAllPartsOfACompressedBlob() throws IOException {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(HttpHeaders.RANGE, "bytes=1000-1009,5-9,2000-2009");
+
+		ResponseEntity<?> response = byteRangeHelper.serveDecoded(KEY, "gzip", gzipped.length, CONTENT.length,
+				MediaType.TEXT_PLAIN, "a.txt", "\"etag\"", 0, headers);
+
+		String body = new String(body(response), StandardCharsets.US_ASCII);
+		assertThat(body).contains("56789").contains(new String(CONTENT, 1000, 10, StandardCharsets.US_ASCII))
+				.contains(new String(CONTENT, 2000, 10, StandardCharsets.US_ASCII));
+		verify(storageBackend, times(1)).open(KEY);
+	}
+
+	private ResponseEntity<?> serve(String range) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(HttpHeaders.RANGE, range);
+		return byteRangeHelper.serve(KEY, CONTENT.length, MediaType.TEXT_PLAIN, "a.txt", "\"etag\"", 0,
+				headers, new MockHttpServletRequest());
+	}
+
+	private static byte[] body(ResponseEntity<?> response) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		((StreamingResponseBody) response.getBody()).writeTo(out);
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,137 @@
+package com.example.filemanagement.Helpers;
+
+import com.example.filemanagement.DTOs.ContentDto;
+import com.example.filemanagement.DTOs.FolderDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * FolderListingCache eviction: right away outside of a transaction, only once the mutating transaction completes
+ * inside of one (commit or rollback), and never undone by a reader that loaded the old rows before it.
+ */
+class FolderListingCacheTest {
+
+	private static final FolderListingCache.Page FIRST = new FolderListingCache.Page("name", "asc", 50, null);
+
+	final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	final FolderListingCache cache = new FolderListingCache(meterRegistry, true, 1000, 600);
+	final AtomicInteger generation = new AtomicInteger();
+	final AtomicInteger loads = new AtomicInteger();
+
+	@AfterEach
+	void clearSynchronization() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	@Test
+	void servesRepeatedReadsFromMemory() {
+		ContentDto first = cache.page(7L, FIRST, this::listing);
+
+		assertThat(cache.page(7L, FIRST, this::listing)).isSameAs(first);
+		assertThat(cache.details(7L, this::details)).isSameAs(cache.details(7L, this::details));
+		assertThat(loads.get()).isEqualTo(2);  // one page, one details
+	}
+
+	@Test
+	void evictsRightAwayOutsideOfATransaction() {
+		cache.page(7L, FIRST, this::listing);
+		cache.details(7L, this::details);
+
+		cache.invalidate(7L);
+
+		assertThat(cache.page(7L, FIRST, this::listing).getNextCursor()).isEqualTo("3");
+		assertThat(cache.details(7L, this::details).getName()).isEqualTo("v4");
+	}
+
+	@Test
+	void evictsOnlyOnceTheTransactionCommits() {
+		ContentDto before = cache.page(7L, FIRST, this::listing);
+
+		TransactionSynchronizationManager.initSynchronization();
+		cache.invalidate(7L);
+		assertThat(cache.page(7L, FIRST, this::listing)).isSameAs(before);  // the change is not committed yet
+
+		complete(TransactionSynchronization.STATUS_COMMITTED);
+		assertThat(cache.page(7L, FIRST, this::listing)).isNotSameAs(before);
+		assertThat(loads.get()).isEqualTo(2);
+	}
+
+	@Test
+	void evictsAfterARollbackToo() {
+		ContentDto before = cache.page(7L, FIRST, this::listing);
+
+		TransactionSynchronizationManager.initSynchronization();
+		cache.invalidate(7L);
+		complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+		assertThat(cache.page(7L, FIRST, this::listing)).isNotSameAs(before);
+	}
+
+	@Test
+	void evictsOnlyTheFoldersNamed() {
+		ContentDto root = cache.page(FolderListingCache.ROOT, FIRST, this::listing);
+		ContentDto seven = cache.page(7L, FIRST, this::listing);
+		ContentDto eight = cache.page(8L, FIRST, this::listing);
+
+		cache.invalidate(7L, null);  // null is the top level
+
+		assertThat(cache.page(FolderListingCache.ROOT, FIRST, this::listing)).isNotSameAs(root);
+		assertThat(cache.page(7L, FIRST, this::listing)).isNotSameAs(seven);
+		assertThat(cache.page(8L, FIRST, this::listing)).isSameAs(eight);
+		assertThat(meterRegistry.counter("folder.listing.cache.invalidations").count()).isEqualTo(2);
+	}
+
+	@Test
+	void readerThatLoadedBeforeTheCommitDoesNotPutOldRowsBack() {
+		ContentDto[] stale = new ContentDto[1];
+		Supplier<ContentDto> slowReader = () -> {
+			stale[0] = listing();  // read the old rows, then the writer commits before they are stored
+			cache.invalidate(7L);
+			cache.details(7L, this::details);  // and another reader starts a fresh entry meanwhile
+			return stale[0];
+		};
+
+		assertThat(cache.page(7L, FIRST, slowReader)).isSameAs(stale[0]);
+
+		assertThat(cache.page(7L, FIRST, this::listing)).isNotSameAs(stale[0]);
+	}
+
+	@Test
+	void loadsEveryTimeWhenDisabled() {
+		FolderListingCache disabled = new FolderListingCache(new SimpleMeterRegistry(), false, 1000, 600);
+
+		disabled.page(7L, FIRST, this::listing);
+		disabled.page(7L, FIRST, this::listing);
+
+		assertThat(loads.get()).isEqualTo(2);
+	}
+
+	// each load returns new rows, told apart by the generation they carry
+	private ContentDto listing() {
+		loads.incrementAndGet();
+		return new ContentDto(List.of(), List.of(), String.valueOf(generation.incrementAndGet()));
+	}
+
+	private FolderDto details() {
+		loads.incrementAndGet();
+		return FolderDto.builder().id(7L).name("v" + generation.incrementAndGet()).build();
+	}
+
+	private static void complete(int status) {
+		var synchronizations = TransactionSynchronizationManager.getSynchronizations();
+		TransactionSynchronizationManager.clearSynchronization();
+		TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, status);
+	}
+}
@@ -0,0 +1,233 @@
+package com.example.filemanagement.Helpers;
+
+import com.example.filemanagement.DTOs.JobDto;
+import com.example.filemanagement.Models.FolderModel;
+import com.example.filemanagement.Models.JobModel;
+import com.example.filemanagement.Models.UserModel;
+import com.example.filemanagement.Repositories.FolderRepository;
+import com.example.filemanagement.Repositories.JobRepository;
+import com.example.filemanagement.Repositories.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * JobRunner with its repositories and helpers mocked: the per-user limit under the user's row lock, which jobs
+ * record their outcome in the transaction of the operation, failures, and what a restart does with running jobs.
+ */
+class JobRunnerTest {
+
+	private static final long WAIT_MILLIS = 5000;
+
+	final JobRepository jobRepository = mock(JobRepository.class);
+	final FolderRepository folderRepository = mock(FolderRepository.class);
+	final UserRepository userRepository = mock(UserRepository.class);
+	final FolderHelper folderHelper = mock(FolderHelper.class);
+	final ZipImportHelper zipImportHelper = mock(ZipImportHelper.class);
+	final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+	final UserModel user = UserModel.builder().id(7L).build();
+	final FolderModel folder = FolderModel.builder().id(11L).name("docs").path("/").totalSize(300L).build();
+
+	@TempDir
+	Path uploadDir;
+
+	JobRunner jobRunner;
+
+	@BeforeEach
+	void setUp() {
+		when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+		when(userRepository.lockById(user.getId())).thenReturn(Optional.of(user));
+		when(folderRepository.findById(folder.getId())).thenReturn(Optional.of(folder));
+		jobRunner = new JobRunner(jobRepository, folderRepository, userRepository, folderHelper, zipImportHelper,
+				new StorageKeyResolver(uploadDir.toString()), new TransactionTemplate(transactionManager),
+				new SimpleMeterRegistry(), 1, 10, 2, 24);
+	}
+
+	@Test
+	void submitCountsUnderTheUsersRowLock() {
+		JobModel job = job("a", JobModel.Type.BIN);
+		when(jobRepository.countByUser_IdAndStatusIn(eq(user.getId()), any())).thenReturn(1L);
+		when(jobRepository.save(job)).thenReturn(job);
+
+		assertThat(jobRunner.submit(job)).contains(job);
+
+		InOrder order = inOrder(transactionManager, userRepository, jobRepository);
+		order.verify(transactionManager).getTransaction(any());
+		order.verify(userRepository).lockById(user.getId());
+		order.verify(jobRepository).countByUser_IdAndStatusIn(eq(user.getId()), any());
+		order.verify(jobRepository).save(job);
+		order.verify(transactionManager).commit(any());
+		assertThat(job.getStatus()).isEqualTo(JobModel.Status.QUEUED);
+	}
+
+	@Test
+	void submitRefusesOnceTheUserIsAtTheLimit() {
+		JobModel job = job("a", JobModel.Type.BIN);
+		when(jobRepository.countByUser_IdAndStatusIn(eq(user.getId()), any())).thenReturn(2L);
+
+		assertThat(jobRunner.submit(job)).isEmpty();
+
+		verify(jobRepository, never()).save(any());
+		verify(jobRepository, never()).changeStatus(any(), any(), any(), any());
+	}
+
+	@Test
+	void binRecordsItsOutcomeInTheOperationsTransaction() {
+		queue(job("bin", JobModel.Type.BIN));
+		when(folderHelper.softDeleteFolderRecursively(eq(folder), any())).thenAnswer(invocation -> {
+			JobProgress progress = invocation.getArgument(1);
+			progress.add(3, 100);
+			progress.add(4, 200);
+			return new FolderHelper.SubtreeUpdate(2, 5);
+		});
+
+		jobRunner.dispatchQueued();
+
+		verify(jobRepository, timeout(WAIT_MILLIS)).finish(eq("bin"), eq(JobModel.Status.SUCCEEDED), eq(7L), eq(300L), anyString(), any());
+		InOrder order = inOrder(transactionManager, folderHelper, jobRepository);
+		order.verify(transactionManager).getTransaction(any());
+		order.verify(folderHelper).softDeleteFolderRecursively(eq(folder), any());
+		order.verify(jobRepository).finish(eq("bin"), eq(JobModel.Status.SUCCEEDED), anyLong(), anyLong(), anyString(), any());
+		order.verify(transactionManager).commit(any());
+	}
+
+	@Test
+	void describeShowsProgressReportedBeforeTheOperationCommits() throws Exception {
+		JobModel job = job("bin", JobModel.Type.BIN);
+		queue(job);
+		CountDownLatch chunkDone = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		when(folderHelper.softDeleteFolderRecursively(eq(folder), any())).thenAnswer(invocation -> {
+			JobProgress progress = invocation.getArgument(1);
+			progress.add(3, 100);
+			chunkDone.countDown();
+			release.await(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+			return new FolderHelper.SubtreeUpdate(1, 2);
+		});
+
+		jobRunner.dispatchQueued();
+		assertThat(chunkDone.await(WAIT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+		job.setStatus(JobModel.Status.RUNNING);  // what the claim left in the table
+
+		JobDto running = jobRunner.describe(job);
+		release.countDown();
+
+		assertThat(running.getItemsDone()).isEqualTo(3L);
+		assertThat(running.getBytesDone()).isEqualTo(100L);
+		verify(jobRepository, timeout(WAIT_MILLIS)).finish(eq("bin"), eq(JobModel.Status.SUCCEEDED), eq(3L), eq(100L), anyString(), any());
+	}
+
+	@Test
+	void failedOperationRollsBackAndIsRecordedAsFailed() {
+		queue(job("delete", JobModel.Type.DELETE));
+		doThrow(new IllegalStateException("disk on fire")).when(folderHelper).deleteFolderRecursively(eq(folder), any());
+
+		jobRunner.dispatchQueued();
+
+		verify(jobRepository, timeout(WAIT_MILLIS)).finish(eq("delete"), eq(JobModel.Status.FAILED), anyLong(), anyLong(), eq("disk on fire"), any());
+		verify(transactionManager).rollback(any());
+		verify(transactionManager, never()).commit(any());
+		verify(jobRepository, never()).finish(eq("delete"), eq(JobModel.Status.SUCCEEDED), anyLong(), anyLong(), any(), any());
+	}
+
+	@Test
+	void restoreOfAFolderNotInTheBinFails() {
+		queue(job("restore", JobModel.Type.RESTORE));
+
+		jobRunner.dispatchQueued();
+
+		verify(jobRepository, timeout(WAIT_MILLIS)).finish(eq("restore"), eq(JobModel.Status.FAILED), anyLong(), anyLong(),
+				eq("Folder is not deleted"), any());
+		verify(folderHelper, never()).restoreFolderRecursively(any(), any());
+	}
+
+	@Test
+	void exportWritesItsResultOutsideOfATransaction() throws Exception {
+		queue(job("export", JobModel.Type.ZIP_EXPORT));
+		FolderTree tree = new FolderTree(folder, List.of(folder), List.of());
+		when(folderHelper.loadSubtree(folder)).thenReturn(tree);
+
+		jobRunner.dispatchQueued();
+
+		verify(jobRepository, timeout(WAIT_MILLIS)).finish(eq("export"), eq(JobModel.Status.SUCCEEDED), anyLong(), anyLong(), anyString(), any());
+		verify(folderHelper).addFolderToZip(eq(tree), eq(folder), eq(""), any(), any());
+		verify(transactionManager, never()).getTransaction(any());
+		assertThat(Files.exists(jobRunner.resultPath("export"))).isTrue();
+	}
+
+	@Test
+	void jobClaimedElsewhereIsLeftAlone() {
+		JobModel job = job("elsewhere", JobModel.Type.BIN);
+		when(jobRepository.findIdsByStatus(JobModel.Status.QUEUED)).thenReturn(List.of(job.getId()));
+		when(jobRepository.claim(job.getId())).thenReturn(false);
+
+		jobRunner.dispatchQueued();
+
+		verify(jobRepository, after(500).never()).finish(any(), any(), anyLong(), anyLong(), any(), any());
+		verify(folderHelper, never()).softDeleteFolderRecursively(any(), any());
+	}
+
+	@Test
+	void recoverRequeuesWhatRolledBackAndFailsImports() throws Exception {
+		JobModel bin = job("bin", JobModel.Type.BIN);
+		JobModel export = job("export", JobModel.Type.ZIP_EXPORT);
+		JobModel zipImport = job("import", JobModel.Type.ZIP_IMPORT);
+		Path input = jobRunner.inputPath(zipImport.getId());
+		Files.writeString(input, "zip");
+		when(jobRepository.findByStatus(JobModel.Status.RUNNING)).thenReturn(List.of(bin, export, zipImport));
+
+		jobRunner.recover();
+
+		verify(jobRepository).changeStatus("bin", JobModel.Status.RUNNING, JobModel.Status.QUEUED, null);
+		verify(jobRepository).changeStatus("export", JobModel.Status.RUNNING, JobModel.Status.QUEUED, null);
+		verify(jobRepository).finishIfRunning(eq("import"), eq(JobModel.Status.FAILED), anyLong(), anyLong(), anyString(), any());
+		verify(jobRepository, never()).finish(any(), any(), anyLong(), anyLong(), any(), any());  // a job finished meanwhile stays finished
+		assertThat(input).doesNotExist();
+	}
+
+	private JobModel job(String id, JobModel.Type type) {
+		return JobModel.builder()
+				.id(id)
+				.type(type)
+				.status(JobModel.Status.QUEUED)
+				.folderId(folder.getId())
+				.user(user)
+				.itemsTotal(7L)
+				.bytesTotal(folder.getTotalSize())
+				.build();
+	}
+
+	// in the table, claimable once dispatched
+	private void queue(JobModel job) {
+		when(jobRepository.findIdsByStatus(JobModel.Status.QUEUED)).thenReturn(List.of(job.getId()));
+		when(jobRepository.claim(job.getId())).thenReturn(true);
+		when(jobRepository.findById(job.getId())).thenReturn(Optional.of(job));
+	}
+}
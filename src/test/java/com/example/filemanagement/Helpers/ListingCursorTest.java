@@ -0,0 +1,103 @@
+package com.example.filemanagement.Helpers;
+
+import com.example.filemanagement.Repositories.ListingQueries;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * ListingCursor encoding: every field survives the round trip, whatever the sort value holds, and a cursor is
+ * refused when it is malformed or replayed under another sort order.
+ */
+class ListingCursorTest {
+
+	@ParameterizedTest
+	@EnumSource(ListingQueries.Sort.class)
+	void roundTripsEveryField(ListingQueries.Sort sort) {
+		for (boolean descending : new boolean[]{false, true}) {
+			for (boolean inFiles : new boolean[]{false, true}) {
+				ListingCursor cursor = new ListingCursor(sort, descending, inFiles, 42L, "report.pdf");
+
+				assertThat(ListingCursor.decode(cursor.encode(), sort, descending)).isEqualTo(cursor);
+			}
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"a|b|c", "|", "", "naïve résumé.txt", "日本語", "with space", "trailing|"})
+	void keepsAnySortValue(String value) {
+		ListingCursor cursor = new ListingCursor(ListingQueries.Sort.NAME, false, true, 7L, value);
+
+		ListingCursor decoded = ListingCursor.decode(cursor.encode(), ListingQueries.Sort.NAME, false);
+
+		assertThat(decoded.lastValue()).isEqualTo(value);
+		assertThat(decoded.after()).isEqualTo(new ListingQueries.After(value, 7L));
+	}
+
+	@Test
+	void keepsTimestampsParseable() {
+		LocalDateTime modifiedAt = LocalDateTime.of(2024, 5, 1, 12, 0, 0, 123_456_000);
+		ListingCursor cursor = new ListingCursor(ListingQueries.Sort.MODIFIED_AT, true, false, 3L, String.valueOf(modifiedAt));
+
+		ListingCursor decoded = ListingCursor.decode(cursor.encode(), ListingQueries.Sort.MODIFIED_AT, true);
+
+		assertThat(LocalDateTime.parse(decoded.lastValue())).isEqualTo(modifiedAt);
+	}
+
+	@Test
+	void isUrlSafe() {
+		String encoded = new ListingCursor(ListingQueries.Sort.NAME, false, false, Long.MAX_VALUE, "??>>~~").encode();
+
+		assertThat(encoded).matches("[A-Za-z0-9_-]+");
+	}
+
+	@Test
+	void startOfFilesHasNoKeysetPosition() {
+		ListingCursor start = ListingCursor.startOfFiles(ListingQueries.Sort.SIZE, true);
+
+		ListingCursor decoded = ListingCursor.decode(start.encode(), ListingQueries.Sort.SIZE, true);
+
+		assertThat(decoded.inFiles()).isTrue();
+		assertThat(decoded.lastId()).isNull();
+		assertThat(decoded.after()).isNull();
+	}
+
+	@Test
+	void refusesAnotherSortOrder() {
+		String encoded = new ListingCursor(ListingQueries.Sort.NAME, false, false, 1L, "a").encode();
+
+		assertThatThrownBy(() -> ListingCursor.decode(encoded, ListingQueries.Sort.SIZE, false))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("different sort order");
+		assertThatThrownBy(() -> ListingCursor.decode(encoded, ListingQueries.Sort.NAME, true))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("different sort order");
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"not base64!", "", "Zm9v"})
+	void refusesMalformedCursors(String cursor) {
+		assertThatThrownBy(() -> ListingCursor.decode(cursor, ListingQueries.Sort.NAME, false))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Invalid cursor");
+	}
+
+	@Test
+	void refusesUnknownSortsAndIds() {
+		for (String raw : new String[]{"COLOR|asc|files|1|a", "NAME|asc|files|one|a"}) {
+			String cursor = Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+
+			assertThatThrownBy(() -> ListingCursor.decode(cursor, ListingQueries.Sort.NAME, false))
+					.isInstanceOf(IllegalArgumentException.class)
+					.hasMessage("Invalid cursor");
+		}
+	}
+}
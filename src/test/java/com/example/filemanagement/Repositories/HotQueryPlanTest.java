@@ -0,0 +1,302 @@
+package com.example.filemanagement.Repositories;
+
+import com.example.filemanagement.Models.FolderModel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Query plans of the hot FileRepository / FolderRepository / ListingQueries queries on the migrated schema. Each
+ * test runs the repository method itself, captures the SQL Hibernate sent with its bound parameters, and EXPLAINs
+ * exactly that: the plan must use the index meant for it and never scan the table. Booting the JPA slice against
+ * the migrations also checks that they match the entities (ddl-auto=validate).
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ListingQueries.class, HotQueryPlanTest.CaptureConfig.class})
+class HotQueryPlanTest {
+
+	@Container
+	static final MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0")
+			.withUrlParam("rewriteBatchedStatements", "true");
+
+	static final List<Statement> captured = new CopyOnWriteArrayList<>();
+	static volatile boolean capturing;
+
+	@DynamicPropertySource
+	static void datasource(DynamicPropertyRegistry registry) {
+		registry.add("spring.datasource.url", mysql::getJdbcUrl);
+		registry.add("spring.datasource.username", mysql::getUsername);
+		registry.add("spring.datasource.password", mysql::getPassword);
+	}
+
+	@Autowired
+	FileRepository fileRepository;
+
+	@Autowired
+	FolderRepository folderRepository;
+
+	@Autowired
+	ListingQueries listingQueries;
+
+	@Autowired
+	DataSource dataSource;
+
+	@BeforeAll
+	static void seed(@Autowired DataSource dataSource) {
+		JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+
+		// 50 top-level folders with 40 subfolders each, 10 files per subfolder; one item in 50 is in the bin
+		Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+		jdbc.update("insert into users (id, email, password, username) values (1, 'user@example.com', 'secret', 'user')");
+
+		List<Object[]> folders = new ArrayList<>();
+		for (long id = 1; id <= 50; id++) {
+			folders.add(new Object[]{id, "top-" + id, null, "/", now, null});
+		}
+		long folderId = 51;
+		for (long parent = 1; parent <= 50; parent++) {
+			for (int i = 0; i < 40; i++, folderId++) {
+				folders.add(new Object[]{folderId, "sub-" + i, parent, "/" + parent + "/", now, folderId % 50 == 0 ? now : null});
+			}
+		}
+		jdbc.batchUpdate("insert into folders (id, name, parent_id, path, modified_at, deleted_at, created_by) " +
+				"values (?, ?, ?, ?, ?, ?, 1)", folders);
+
+		List<Object[]> files = new ArrayList<>();
+		long fileId = 1;
+		for (long folder = 51; folder < folderId; folder++) {
+			for (int i = 0; i < 10; i++, fileId++) {
+				files.add(new Object[]{fileId, "file-" + i + ".txt", "key-" + fileId, fileId * 7, folder, now, fileId % 50 == 0 ? now : null});
+			}
+		}
+		jdbc.batchUpdate("insert into files (id, name, storage_key, size, folder_id, modified_at, deleted_at, uploaded_by) " +
+				"values (?, ?, ?, ?, ?, ?, ?, 1)", files);
+
+		jdbc.execute("analyze table folders, files");
+	}
+
+	@AfterEach
+	void stopCapturing() {
+		capturing = false;
+		captured.clear();
+	}
+
+	@Test
+	void subfoldersOfAFolderUseTheListingIndex() {
+		List<Map<String, Object>> plan = explain(() -> folderRepository.findByParentFolderAndDeletedAtIsNull(folder(7)));
+
+		assertIndexed(plan);
+		assertThat((String) driving(plan).get("key")).startsWith("idx_folders_listing_");
+	}
+
+	@Test
+	void nameCheckUnderAParentUsesParentNameIndex() {
+		List<Map<String, Object>> plan = explain(() -> folderRepository.existsByNameAndParentFolder_Id("sub-3", 7L));
+
+		assertIndexed(plan);
+		assertThat(driving(plan).get("key")).isIn("idx_folders_parent_name", "idx_folders_listing_name");
+	}
+
+	@Test
+	void zipImportFolderLookupUsesParentNameIndex() {
+		List<Map<String, Object>> plan = explain(() -> folderRepository.findByNameAndParentFolder("sub-3", folder(7)));
+
+		assertIndexed(plan);
+		assertThat(driving(plan).get("key")).isIn("idx_folders_parent_name", "idx_folders_listing_name");
+	}
+
+	@Test
+	void liveNameCheckUnderAParentIsIndexed() {
+		List<Map<String, Object>> plan = explain(() -> folderRepository.existsByParentFolderAndNameAndDeletedAtIsNull(folder(7), "sub-3"));
+
+		assertIndexed(plan);
+		assertThat(driving(plan).get("key")).isIn("idx_folders_listing_name", "idx_folders_parent_name");
+	}
+
+	@Test
+	void filesOfAFolderUseTheListingIndex() {
+		List<Map<String, Object>> plan = explain(() -> fileRepository.findByFolderAndDeletedAtIsNull(folder(60)));
+
+		assertIndexed(plan);
+		assertThat((String) driving(plan).get("key")).startsWith("idx_files_listing_");
+	}
+
+	@Test
+	void keysetPageOfFilesByNameNeedsNoSort() {
+		List<Map<String, Object>> plan = explain(() -> listingQueries.files(ListingQueries.Scope.FOLDER, 60L,
+				ListingQueries.Sort.NAME, false, new ListingQueries.After("file-3.txt", 0L), 101));
+
+		assertIndexed(plan);
+		assertNotSorted(plan);
+		assertThat(driving(plan).get("key")).isEqualTo("idx_files_listing_name");
+	}
+
+	@Test
+	void keysetPageOfFilesBySizeDescendingNeedsNoSort() {
+		List<Map<String, Object>> plan = explain(() -> listingQueries.files(ListingQueries.Scope.FOLDER, 60L,
+				ListingQueries.Sort.SIZE, true, new ListingQueries.After("4200", 600L), 101));
+
+		assertIndexed(plan);
+		assertNotSorted(plan);
+		assertThat(driving(plan).get("key")).isEqualTo("idx_files_listing_size");
+	}
+
+	@Test
+	void keysetPageOfFoldersByNameNeedsNoSort() {
+		List<Map<String, Object>> plan = explain(() -> listingQueries.folders(ListingQueries.Scope.FOLDER, 7L,
+				ListingQueries.Sort.NAME, false, new ListingQueries.After("sub-3", 0L), 101));
+
+		assertIndexed(plan);
+		assertNotSorted(plan);
+		assertThat(driving(plan).get("key")).isEqualTo("idx_folders_listing_name");
+	}
+
+	@Test
+	void expiredFoldersRangeOverDeletedRowsOnly() {  // sorted by depth, but only the binned rows
+		List<Map<String, Object>> plan = explain(() -> folderRepository.findExpiredLeaves(LocalDateTime.now().plusDays(1), List.of(0L), Limit.of(500)));
+
+		assertIndexed(plan);
+		assertThat(driving(plan).get("key")).isEqualTo("idx_folders_deleted");
+	}
+
+	@Test
+	void expiredFilesRangeOverDeletedRowsOnly() {
+		List<Map<String, Object>> plan = explain(() -> fileRepository.findExpired(LocalDateTime.now().plusDays(1), List.of(0L), Limit.of(500)));
+
+		assertIndexed(plan);
+		assertNotSorted(plan);
+		assertThat(driving(plan).get("key")).isEqualTo("idx_files_deleted");
+	}
+
+	@Test
+	void binOfAUserStaysOnTheirRows() {  // sorted, but only the user's binned rows
+		List<Map<String, Object>> plan = explain(() -> listingQueries.files(ListingQueries.Scope.BIN, 1L,
+				ListingQueries.Sort.NAME, false, null, 51));
+
+		assertIndexed(plan);
+		assertThat(driving(plan).get("key")).isIn("idx_files_bin_owner", "idx_files_deleted");
+	}
+
+	private static FolderModel folder(long id) {
+		return FolderModel.builder().id(id).build();
+	}
+
+	// runs the query with capturing on, then EXPLAINs the last statement it sent with the same parameters
+	private List<Map<String, Object>> explain(Supplier<?> query) {
+		capturing = true;
+		try {
+			query.get();
+		} finally {
+			capturing = false;
+		}
+		assertThat(captured).as("statements sent").isNotEmpty();
+		Statement statement = captured.getLast();
+		return new JdbcTemplate(dataSource).queryForList("explain " + statement.sql(), statement.parameters().toArray());
+	}
+
+	// the first EXPLAIN row is the table the join starts from
+	private static Map<String, Object> driving(List<Map<String, Object>> plan) {
+		return plan.getFirst();
+	}
+
+	private static void assertIndexed(List<Map<String, Object>> plan) {
+		for (Map<String, Object> row : plan) {
+			assertThat(row.get("type")).as("access type of %s", row.get("table")).isNotEqualTo("ALL");
+			assertThat(row.get("key")).as("index used for %s", row.get("table")).isNotNull();
+		}
+	}
+
+	private static void assertNotSorted(List<Map<String, Object>> plan) {
+		for (Map<String, Object> row : plan) {
+			assertThat(String.valueOf(row.get("Extra"))).as("extra of %s", row.get("table")).doesNotContain("filesort");
+		}
+	}
+
+	/** A prepared statement as it went to the database */
+	record Statement(String sql, List<Object> parameters) {
+	}
+
+	/** Wraps the DataSource so prepared statements record their SQL and bound parameters while capturing is on */
+	@TestConfiguration
+	static class CaptureConfig {
+
+		@Bean
+		static BeanPostProcessor capturingDataSource() {
+			return new BeanPostProcessor() {
+				@Override
+				public Object postProcessAfterInitialization(Object bean, String beanName) {
+					return bean instanceof DataSource target ? proxy(DataSource.class, target, (method, args, result) ->
+							method.getName().equals("getConnection") ? connection((Connection) result) : result) : bean;
+				}
+			};
+		}
+
+		private static Connection connection(Connection target) {
+			return proxy(Connection.class, target, (method, args, result) ->
+					method.getName().equals("prepareStatement") ? statement((PreparedStatement) result, (String) args[0]) : result);
+		}
+
+		private static PreparedStatement statement(PreparedStatement target, String sql) {
+			Map<Integer, Object> parameters = new TreeMap<>();
+			return proxy(PreparedStatement.class, target, (method, args, result) -> {
+				String name = method.getName();
+				if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+					parameters.put(index, name.equals("setNull") ? null : args[1]);
+				} else if (name.equals("clearParameters")) {
+					parameters.clear();
+				} else if (name.startsWith("execute") && capturing) {
+					captured.add(new Statement(sql, new ArrayList<>(parameters.values())));
+				}
+				return result;
+			});
+		}
+
+		@SuppressWarnings("unchecked")
+		private static <T> T proxy(Class<T> type, T target, AfterCall afterCall) {
+			return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+				try {
+					return afterCall.apply(method, args, method.invoke(target, args));
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			});
+		}
+
+		private interface AfterCall {
+			Object apply(Method method, Object[] args, Object result) throws Exception;
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package com.example.filemanagement.Repositories;
+
+import com.example.filemanagement.DTOs.FileDto;
+import com.example.filemanagement.DTOs.FolderDto;
+import com.example.filemanagement.Helpers.ListingCursor;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Keyset pages of ListingQueries walked the way a client does, through encoded cursors: most rows share their sort
+ * value with others, so only the id breaks the ties. Every row must come back exactly once, in (value, id) order,
+ * whichever page boundary falls inside a run of equal values.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(ListingQueries.class)
+class ListingPaginationTest {
+
+	private static final long PARENT = 1;
+	private static final LocalDateTime BASE = LocalDateTime.of(2024, 5, 1, 12, 0, 0, 123_456_000);
+
+	@Container
+	static final MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0");
+
+	@DynamicPropertySource
+	static void datasource(DynamicPropertyRegistry registry) {
+		registry.add("spring.datasource.url", mysql::getJdbcUrl);
+		registry.add("spring.datasource.username", mysql::getUsername);
+		registry.add("spring.datasource.password", mysql::getPassword);
+	}
+
+	@Autowired
+	ListingQueries listingQueries;
+
+	@BeforeAll
+	static void seed(@Autowired DataSource dataSource) {
+		JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+		jdbc.update("insert into users (id, email, password, username) values (1, 'user@example.com', 'secret', 'user')");
+		jdbc.update("insert into folders (id, name, parent_id, path, modified_at, created_by) values (?, 'parent', null, '/', ?, 1)",
+				PARENT, Timestamp.valueOf(BASE));
+
+		// ids deliberately out of value order; names, sizes and timestamps repeat in runs of three or four
+		List<Object[]> folders = new ArrayList<>();
+		for (long id = 40; id > 10; id--) {
+			folders.add(new Object[]{id, "dir-" + (id % 4), PARENT, "/" + PARENT + "/", Timestamp.valueOf(BASE.plusSeconds(id % 3))});
+		}
+		jdbc.batchUpdate("insert into folders (id, name, parent_id, path, modified_at, created_by) values (?, ?, ?, ?, ?, 1)", folders);
+
+		List<Object[]> files = new ArrayList<>();
+		for (long id = 1; id <= 37; id++) {
+			long order = (id * 7) % 37;
+			files.add(new Object[]{id, "file-" + (order % 5) + ".txt", "key-" + id, 100 * (order % 4), PARENT,
+					Timestamp.valueOf(BASE.plusNanos(1000 * (order % 3)))});
+		}
+		jdbc.batchUpdate("insert into files (id, name, storage_key, size, folder_id, modified_at, uploaded_by) " +
+				"values (?, ?, ?, ?, ?, ?, 1)", files);
+	}
+
+	static Stream<Arguments> orders() {
+		List<Arguments> orders = new ArrayList<>();
+		for (ListingQueries.Sort sort : ListingQueries.Sort.values()) {
+			for (boolean descending : new boolean[]{false, true}) {
+				for (int pageSize : new int[]{1, 3, 4}) {
+					orders.add(Arguments.of(sort, descending, pageSize));
+				}
+			}
+		}
+		return orders.stream();
+	}
+
+	@ParameterizedTest
+	@MethodSource("orders")
+	void foldersComeBackOnceInValueThenIdOrder(ListingQueries.Sort sort, boolean descending, int pageSize) {
+		List<FolderDto> all = listingQueries.folders(ListingQueries.Scope.FOLDER, PARENT, sort, descending, null, 1000);
+		List<FolderDto> paged = new ArrayList<>();
+		ListingCursor cursor = null;
+		while (true) {
+			ListingQueries.After after = cursor != null ? replay(cursor, sort, descending).after() : null;
+			List<FolderDto> page = listingQueries.folders(ListingQueries.Scope.FOLDER, PARENT, sort, descending, after, pageSize);
+			paged.addAll(page);
+			if (page.size() < pageSize) {
+				break;
+			}
+			FolderDto last = page.getLast();
+			cursor = new ListingCursor(sort, descending, false, last.getId(), ListingQueries.folderSortValue(last, sort));
+		}
+
+		assertThat(all).hasSize(30);
+		assertThat(ids(paged, FolderDto::getId)).isEqualTo(ids(all, FolderDto::getId));
+		assertThat(ids(paged, FolderDto::getId)).isEqualTo(expected(all, sort == ListingQueries.Sort.MODIFIED_AT
+				? Comparator.comparing(FolderDto::getModifiedAt) : Comparator.comparing(FolderDto::getName), FolderDto::getId, descending));
+	}
+
+	@ParameterizedTest
+	@MethodSource("orders")
+	void filesComeBackOnceInValueThenIdOrder(ListingQueries.Sort sort, boolean descending, int pageSize) {
+		List<FileDto> all = listingQueries.files(ListingQueries.Scope.FOLDER, PARENT, sort, descending, null, 1000);
+		List<FileDto> paged = new ArrayList<>();
+		ListingCursor cursor = ListingCursor.startOfFiles(sort, descending);
+		while (true) {
+			List<FileDto> page = listingQueries.files(ListingQueries.Scope.FOLDER, PARENT, sort, descending,
+					replay(cursor, sort, descending).after(), pageSize);
+			paged.addAll(page);
+			if (page.size() < pageSize) {
+				break;
+			}
+			FileDto last = page.getLast();
+			cursor = new ListingCursor(sort, descending, true, last.getId(), ListingQueries.fileSortValue(last, sort));
+		}
+
+		Comparator<FileDto> byValue = switch (sort) {
+			case NAME -> Comparator.comparing(FileDto::getName);
+			case SIZE -> Comparator.comparing(FileDto::getSize);
+			case MODIFIED_AT -> Comparator.comparing(FileDto::getModifiedAt);
+		};
+		assertThat(all).hasSize(37);
+		assertThat(ids(paged, FileDto::getId)).isEqualTo(ids(all, FileDto::getId));
+		assertThat(ids(paged, FileDto::getId)).isEqualTo(expected(all, byValue, FileDto::getId, descending));
+	}
+
+	// what the client hands back: the cursor as a string, decoded under the sort of the request
+	private static ListingCursor replay(ListingCursor cursor, ListingQueries.Sort sort, boolean descending) {
+		return ListingCursor.decode(cursor.encode(), sort, descending);
+	}
+
+	private static <T> List<Long> ids(List<T> rows, Function<T, Long> id) {
+		return rows.stream().map(id).toList();
+	}
+
+	private static <T> List<Long> expected(List<T> rows, Comparator<T> byValue, Function<T, Long> id, boolean descending) {
+		Comparator<T> order = byValue.thenComparing(id);
+		return rows.stream().sorted(descending ? order.reversed() : order).map(id).toList();
+	}
+}
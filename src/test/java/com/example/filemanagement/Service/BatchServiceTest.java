@@ -0,0 +1,306 @@
+package com.example.filemanagement.Service;
+
+import com.example.filemanagement.DTOs.BatchOperationDto;
+import com.example.filemanagement.DTOs.BatchResultDto;
+import com.example.filemanagement.DTOs.FileDto;
+import com.example.filemanagement.DTOs.FolderDto;
+import com.example.filemanagement.DTOs.UploadSessionDto;
+import com.example.filemanagement.Helpers.FileHelper;
+import com.example.filemanagement.Models.FileModel;
+import com.example.filemanagement.Models.FolderModel;
+import com.example.filemanagement.Models.UserModel;
+import com.example.filemanagement.Repositories.FileRepository;
+import com.example.filemanagement.Repositories.FolderRepository;
+import com.example.filemanagement.Repositories.UploadSessionRepository;
+import com.example.filemanagement.Repositories.UserRepository;
+import com.example.filemanagement.Storage.StorageBackend;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * BatchService on the migrated schema with the real helpers: failures of single items next to the ones applied,
+ * selections holding a folder together with its subfolders, the path rewrite of moved subtrees, the rollups of
+ * the folders on both sides, and renames.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@SpringBootTest
+class BatchServiceTest {
+
+	@Container
+	static final MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0");
+
+	@TempDir
+	static Path uploadDir;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry registry) {
+		registry.add("spring.datasource.url", mysql::getJdbcUrl);
+		registry.add("spring.datasource.username", mysql::getUsername);
+		registry.add("spring.datasource.password", mysql::getPassword);
+		registry.add("file.upload-dir", () -> uploadDir.toString());
+	}
+
+	@Autowired
+	BatchService batchService;
+
+	@Autowired
+	FolderService folderService;
+
+	@Autowired
+	FileService fileService;
+
+	@Autowired
+	UserRepository userRepository;
+
+	@Autowired
+	FolderRepository folderRepository;
+
+	@Autowired
+	FileRepository fileRepository;
+
+	@Autowired
+	StorageBackend storageBackend;
+
+	@Autowired
+	UploadService uploadService;
+
+	@Autowired
+	UploadSessionRepository uploadSessionRepository;
+
+	UserModel user;
+	FolderModel root;  // each test works below a top-level folder of its own
+
+	@BeforeEach
+	void setUp() {
+		user = userRepository.findAll().stream().findFirst().orElseGet(() -> userRepository.save(
+				UserModel.builder().username("batch").email("batch@example.com").password("secret").build()));
+		root = folder(UUID.randomUUID().toString(), null);
+	}
+
+	@Test
+	void appliesWhatPassesAndReportsTheRest() throws IOException {
+		FileDto first = file("a.txt", root, "first");
+		FileDto second = file("b.txt", root, "second");
+		long missing = Long.MAX_VALUE;
+
+		BatchResultDto result = execute(BatchOperationDto.builder()
+				.action("bin").target("file").ids(List.of(first.getId(), missing, second.getId())).build());
+
+		assertThat(result.getSucceeded()).isEqualTo(2);
+		assertThat(result.getFailed()).isEqualTo(1);
+		assertThat(result.getFailures()).singleElement().satisfies(failure -> {
+			assertThat(failure.getId()).isEqualTo(missing);
+			assertThat(failure.getOperation()).isZero();
+		});
+		assertThat(fileRepository.findById(first.getId()).orElseThrow().getDeletedAt()).isNotNull();
+		assertThat(fileRepository.findById(second.getId()).orElseThrow().getDeletedAt()).isNotNull();
+		assertThat(reload(root).getFileCount()).isZero();  // out of the live totals
+	}
+
+	@Test
+	void laterOperationsSeeWhatEarlierOnesFailedOn() throws IOException {
+		FileDto binned = file("a.txt", root, "binned");
+		FileDto live = file("b.txt", root, "live");
+
+		BatchResultDto result = execute(
+				BatchOperationDto.builder().action("bin").target("file").ids(List.of(binned.getId())).build(),
+				BatchOperationDto.builder().action("restore").target("file").ids(List.of(binned.getId(), live.getId())).build());
+
+		assertThat(result.getSucceeded()).isEqualTo(2);
+		assertThat(result.getFailures()).singleElement().satisfies(failure -> {
+			assertThat(failure.getOperation()).isEqualTo(1);
+			assertThat(failure.getId()).isEqualTo(live.getId());
+		});
+		assertThat(fileRepository.findById(binned.getId()).orElseThrow().getDeletedAt()).isNull();
+		assertThat(reload(root).getFileCount()).isEqualTo(2);
+	}
+
+	@Test
+	void movesANestedSelectionAsOneSubtree() throws IOException {
+		FolderModel source = folder("source", root);
+		FolderModel outer = folder("outer", source);
+		FolderModel inner = folder("inner", outer);
+		FolderModel deepest = folder("deepest", inner);
+		file("data.bin", deepest, "12345");
+		FolderModel target = folder("target", root);
+
+		BatchResultDto result = execute(BatchOperationDto.builder()
+				.action("move").target("folder").ids(List.of(inner.getId(), outer.getId())).folderId(target.getId()).build());
+
+		assertThat(result.getSucceeded()).isEqualTo(2);  // inner went along with outer
+		assertThat(result.getFailed()).isZero();
+
+		FolderModel movedOuter = reload(outer);
+		assertThat(movedOuter.getParentFolder().getId()).isEqualTo(target.getId());
+		assertThat(movedOuter.getPath()).isEqualTo(reload(target).descendantPathPrefix());
+		assertThat(reload(inner).getParentFolder().getId()).isEqualTo(outer.getId());
+		assertThat(reload(inner).getPath()).isEqualTo(movedOuter.descendantPathPrefix());
+		assertThat(reload(deepest).getPath()).isEqualTo(reload(inner).descendantPathPrefix());
+	}
+
+	@Test
+	void movedSubtreeTotalsLeaveOneChainAndJoinTheOther() throws IOException {
+		FolderModel source = folder("source", root);
+		FolderModel moved = folder("moved", source);
+		FolderModel below = folder("below", moved);
+		file("a.txt", moved, "12345");
+		file("b.txt", below, "1234567");
+		FolderModel target = folder("target", root);
+
+		execute(BatchOperationDto.builder()
+				.action("move").target("folder").ids(List.of(moved.getId())).folderId(target.getId()).build());
+
+		FolderModel sourceAfter = reload(source);
+		assertThat(sourceAfter.getTotalSize()).isZero();
+		assertThat(sourceAfter.getFileCount()).isZero();
+		assertThat(sourceAfter.getFolderCount()).isZero();
+
+		FolderModel targetAfter = reload(target);
+		assertThat(targetAfter.getTotalSize()).isEqualTo(12);
+		assertThat(targetAfter.getFileCount()).isEqualTo(2);
+		assertThat(targetAfter.getFolderCount()).isEqualTo(2);
+
+		FolderModel rootAfter = reload(root);  // both chains meet here: unchanged
+		assertThat(rootAfter.getTotalSize()).isEqualTo(12);
+		assertThat(rootAfter.getFileCount()).isEqualTo(2);
+		assertThat(rootAfter.getFolderCount()).isEqualTo(4);
+	}
+
+	@Test
+	void refusedMovesLeaveTheFolderWhereItWas() {
+		FolderModel moved = folder("moved", root);
+		FolderModel below = folder("below", moved);
+		FolderModel target = folder("target", root);
+		folder("moved", target);  // name taken there
+
+		BatchResultDto result = execute(
+				BatchOperationDto.builder().action("move").target("folder").ids(List.of(moved.getId())).folderId(target.getId()).build(),
+				BatchOperationDto.builder().action("move").target("folder").ids(List.of(moved.getId())).folderId(below.getId()).build());
+
+		assertThat(result.getSucceeded()).isZero();
+		assertThat(result.getFailed()).isEqualTo(2);
+		assertThat(reload(moved).getParentFolder().getId()).isEqualTo(root.getId());
+		assertThat(reload(below).getPath()).isEqualTo(reload(moved).descendantPathPrefix());
+	}
+
+	@Test
+	void renameTakesItsOwnNameAndCaseChangesButNotASiblingsName() {
+		FolderModel docs = folder("docs", root);
+		folder("photos", root);
+
+		BatchResultDto result = execute(
+				BatchOperationDto.builder().action("rename").target("folder").ids(List.of(docs.getId())).name("docs").build(),
+				BatchOperationDto.builder().action("rename").target("folder").ids(List.of(docs.getId())).name("Docs").build(),
+				BatchOperationDto.builder().action("rename").target("folder").ids(List.of(docs.getId())).name("photos").build());
+
+		assertThat(result.getSucceeded()).isEqualTo(2);
+		assertThat(result.getFailures()).singleElement().satisfies(failure -> assertThat(failure.getOperation()).isEqualTo(2));
+		assertThat(reload(docs).getName()).isEqualTo("Docs");
+	}
+
+	@Test
+	void singleRenameAcceptsAndRefusesTheSameNamesAsTheBatch() {
+		FolderModel docs = folder("docs", root);
+		folder("photos", root);
+
+		assertThat(folderService.renameOrMoveFolder(docs.getId(), FolderDto.builder().name("Docs").build()).getName()).isEqualTo("Docs");
+		assertThatThrownBy(() -> folderService.renameOrMoveFolder(docs.getId(), FolderDto.builder().name("photos").build()))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThat(reload(docs).getName()).isEqualTo("Docs");
+	}
+
+	@Test
+	void binsANestedSelectionOnceAndRestoresItTogether() throws IOException {
+		FolderModel outer = folder("outer", root);
+		FolderModel inner = folder("inner", outer);
+		file("a.txt", inner, "abc");
+
+		BatchResultDto binned = execute(BatchOperationDto.builder()
+				.action("bin").target("folder").ids(List.of(inner.getId(), outer.getId())).build());
+		assertThat(binned.getSucceeded()).isEqualTo(2);
+		assertThat(reload(root).getFolderCount()).isZero();
+		assertThat(reload(inner).getDeletedAt()).isEqualTo(reload(outer).getDeletedAt());
+
+		BatchResultDto restored = execute(BatchOperationDto.builder()
+				.action("restore").target("folder").ids(List.of(outer.getId(), inner.getId())).build());
+		assertThat(restored.getSucceeded()).isEqualTo(2);
+		assertThat(reload(inner).getDeletedAt()).isNull();
+		FolderModel rootAfter = reload(root);
+		assertThat(rootAfter.getFolderCount()).isEqualTo(2);
+		assertThat(rootAfter.getFileCount()).isEqualTo(1);
+		assertThat(rootAfter.getTotalSize()).isEqualTo(3);
+	}
+
+	@Test
+	void deletedFilesLoseTheirBlobsOnceCommitted() throws IOException {
+		FileDto doomed = file("doomed.txt", root, "content only this file has");
+		String storageKey = fileRepository.findById(doomed.getId()).map(FileModel::getStorageKey).orElseThrow();
+		assertThat(storageBackend.stat(storageKey)).isPresent();
+
+		BatchResultDto result = execute(BatchOperationDto.builder()
+				.action("delete").target("file").ids(List.of(doomed.getId())).build());
+
+		assertThat(result.getSucceeded()).isEqualTo(1);
+		assertThat(fileRepository.findById(doomed.getId())).isEmpty();
+		assertThat(storageBackend.stat(storageKey)).isEmpty();
+		assertThat(reload(root).getFileCount()).isZero();
+	}
+
+	@Test
+	void deletingAFolderAbortsTheUploadsGoingIntoIt() {
+		FolderModel outer = folder("outer", root);
+		FolderModel inner = folder("inner", outer);
+		UploadSessionDto upload = uploadService.createSession(UploadSessionDto.builder()
+				.fileName("large.bin").totalSize(1000L).folderId(inner.getId()).userId(user.getId()).build()).getBody();
+
+		BatchResultDto result = execute(BatchOperationDto.builder()
+				.action("delete").target("folder").ids(List.of(outer.getId())).build());
+
+		assertThat(result.getSucceeded()).isEqualTo(1);
+		assertThat(folderRepository.findById(inner.getId())).isEmpty();
+		assertThat(uploadSessionRepository.findById(upload.getId())).isEmpty();
+		assertThat(uploadDir.resolve(FileHelper.uploadPartKey(upload.getId()))).doesNotExist();
+	}
+
+	private BatchResultDto execute(BatchOperationDto... operations) {
+		return batchService.execute(List.of(operations)).getBody();
+	}
+
+	private FolderModel folder(String name, FolderModel parent) {
+		FolderDto dto = new FolderDto();
+		dto.setName(name);
+		dto.setParentFolderId(parent != null ? parent.getId() : null);
+		dto.setCreatedBy(user.getId());
+		FolderDto created = (FolderDto) folderService.createFolder(dto).getBody();
+		return folderRepository.findById(created.getId()).orElseThrow();
+	}
+
+	@SuppressWarnings("unchecked")
+	private FileDto file(String name, FolderModel folder, String content) throws IOException {
+		MockMultipartFile upload = new MockMultipartFile("files", name, "text/plain", content.getBytes(StandardCharsets.UTF_8));
+		List<FileDto> uploaded = (List<FileDto>) fileService.uploadFiles(List.of(upload), folder.getId(), user.getId()).getBody();
+		return uploaded.getFirst();
+	}
+
+	private FolderModel reload(FolderModel folder) {
+		return folderRepository.findById(folder.getId()).orElseThrow();
+	}
+}
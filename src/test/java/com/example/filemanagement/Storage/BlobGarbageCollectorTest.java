@@ -0,0 +1,192 @@
+package com.example.filemanagement.Storage;
+
+import com.example.filemanagement.Helpers.FileHelper;
+import com.example.filemanagement.Helpers.StorageKeyResolver;
+import com.example.filemanagement.Models.BlobModel;
+import com.example.filemanagement.Repositories.BlobRepository;
+import com.example.filemanagement.Repositories.FileRepository;
+import com.example.filemanagement.Repositories.UploadSessionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * BlobGarbageCollector over a temporary upload directory with its repositories mocked: what it reclaims, and what
+ * it has to leave alone, i.e. anything touched within the grace period, anything still referenced, and the part
+ * files of upload sessions that are still open however old they are.
+ */
+class BlobGarbageCollectorTest {
+
+	private static final long GRACE_MINUTES = 60;
+	private static final Duration LONG_AGO = Duration.ofMinutes(GRACE_MINUTES * 2);
+
+	final BlobRepository blobRepository = mock(BlobRepository.class);
+	final FileRepository fileRepository = mock(FileRepository.class);
+	final UploadSessionRepository uploadSessionRepository = mock(UploadSessionRepository.class);
+	final FileHelper fileHelper = mock(FileHelper.class);
+	final BlobReadCache blobReadCache = mock(BlobReadCache.class);
+	final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+	// what the mocked tables hold
+	final Map<String, BlobModel> blobs = new HashMap<>();
+	final Map<String, Long> fileReferences = new HashMap<>();
+
+	@TempDir
+	Path uploadDir;
+
+	StorageKeyResolver storageKeyResolver;
+	BlobGarbageCollector collector;
+
+	@BeforeEach
+	void setUp() {
+		when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+		when(blobRepository.findStorageKeysAfter(anyString(), any(Limit.class))).thenAnswer(invocation -> {
+			String after = invocation.getArgument(0);
+			return blobs.keySet().stream().filter(key -> key.compareTo(after) > 0).sorted().toList();
+		});
+		when(blobRepository.lockAllByStorageKeyIn(anyCollection())).thenAnswer(invocation -> {
+			Collection<String> keys = invocation.getArgument(0);
+			return keys.stream().map(blobs::get).filter(blob -> blob != null).toList();
+		});
+		when(fileRepository.countByStorageKeyIn(anyCollection())).thenAnswer(invocation -> {
+			Collection<String> keys = invocation.getArgument(0);
+			List<Object[]> rows = new ArrayList<>();
+			for (String key : keys) {
+				if (fileReferences.containsKey(key)) {
+					rows.add(new Object[]{key, fileReferences.get(key)});
+				}
+			}
+			return rows;
+		});
+
+		storageKeyResolver = new StorageKeyResolver(uploadDir.toString());
+		collector = new BlobGarbageCollector(blobRepository, fileRepository, uploadSessionRepository, fileHelper,
+				storageKeyResolver, blobReadCache, new TransactionTemplate(transactionManager), new SimpleMeterRegistry(),
+				true, GRACE_MINUTES, 1000, 257, 2, 500);
+	}
+
+	@Test
+	void reclaimsUnreferencedBlobRowsPastTheGracePeriod() {
+		BlobModel orphan = blob("aa01", LocalDateTime.now().minus(LONG_AGO), 1);
+
+		Map<String, Object> result = collector.collect();
+
+		assertThat(result).containsEntry("blobsReclaimed", 1L).containsEntry("bytesReclaimed", 100L);
+		verify(blobRepository).deleteAll(List.of(orphan));
+		verify(fileHelper).deleteBlobFilesAfterCommit(List.of("aa01"));
+	}
+
+	@Test
+	void leavesRecentlyTouchedBlobRowsAlone() {
+		blob("aa01", LocalDateTime.now().minusMinutes(1), 0);  // its file row may still be on its way
+		BlobModel created = blob("aa02", null, 0);
+		created.setCreatedAt(LocalDateTime.now().minusMinutes(1));
+
+		Map<String, Object> result = collector.collect();
+
+		assertThat(result).containsEntry("rowsScanned", 2L).containsEntry("blobsReclaimed", 0L);
+		verify(blobRepository).deleteAll(List.of());
+		verify(fileHelper).deleteBlobFilesAfterCommit(List.of());
+	}
+
+	@Test
+	void correctsDriftedReferenceCounts() {
+		BlobModel drifted = blob("aa01", LocalDateTime.now().minus(LONG_AGO), 5);
+		fileReferences.put("aa01", 2L);
+
+		Map<String, Object> result = collector.collect();
+
+		assertThat(result).containsEntry("refCountsCorrected", 1L).containsEntry("blobsReclaimed", 0L);
+		assertThat(drifted.getRefCount()).isEqualTo(2);
+	}
+
+	@Test
+	void deletesStoredFilesNobodyOwnsPastTheGracePeriod() throws IOException {
+		Path orphan = stored("ab01", LONG_AGO);
+		Path recent = stored("ab02", Duration.ZERO);
+		Path owned = stored("ab03", LONG_AGO);
+		blobs.put("ab03", BlobModel.builder().storageKey("ab03").size(3L).refCount(1L).touchedAt(LocalDateTime.now()).build());
+		Path legacy = setAge(Files.writeString(uploadDir.resolve("legacy.bin"), "legacy"), LONG_AGO);  // flat, without a row
+		fileReferences.put("legacy.bin", 1L);
+
+		collector.collect();
+
+		assertThat(orphan).doesNotExist();
+		assertThat(recent).exists();
+		assertThat(owned).exists();
+		assertThat(legacy).exists();
+		verify(blobReadCache).invalidate("ab01");
+	}
+
+	@Test
+	void keepsPartFilesOfOpenUploadSessionsHoweverOld() throws IOException {
+		Path open = incoming(FileHelper.uploadPartKey("open-session"), LONG_AGO);
+		Path abandoned = incoming(FileHelper.uploadPartKey("gone-session"), LONG_AGO);
+		when(uploadSessionRepository.existsById("open-session")).thenReturn(true);
+
+		collector.collect();
+
+		assertThat(open).exists();
+		assertThat(abandoned).doesNotExist();
+	}
+
+	@Test
+	void deletesIncomingFilesOfDeadWritesOnlyPastTheGracePeriod() throws IOException {
+		Path dead = incoming(FileHelper.newIncomingKey(), LONG_AGO);
+		Path inFlight = incoming(FileHelper.newIncomingKey(), Duration.ofMinutes(1));
+
+		Map<String, Object> result = collector.collect();
+
+		assertThat(dead).doesNotExist();
+		assertThat(inFlight).exists();
+		assertThat(result).containsEntry("blobsReclaimed", 1L);
+	}
+
+	private BlobModel blob(String storageKey, LocalDateTime touchedAt, long refCount) {
+		BlobModel blob = BlobModel.builder().storageKey(storageKey).size(100L).refCount(refCount).touchedAt(touchedAt).build();
+		blobs.put(storageKey, blob);
+		return blob;
+	}
+
+	private Path stored(String storageKey, Duration age) throws IOException {
+		Path path = storageKeyResolver.prepareForWrite(storageKey);
+		Files.writeString(path, storageKey);
+		return setAge(path, age);
+	}
+
+	private Path incoming(String key, Duration age) throws IOException {
+		Path path = Files.writeString(uploadDir.resolve(key), "partial");
+		return setAge(path, age);
+	}
+
+	private static Path setAge(Path path, Duration age) throws IOException {
+		Files.setLastModifiedTime(path, FileTime.from(Instant.now().minus(age)));
+		return path;
+	}
+}
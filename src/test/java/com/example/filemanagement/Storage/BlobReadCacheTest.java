@@ -0,0 +1,200 @@
+package com.example.filemanagement.Storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * BlobReadCache over an in-memory backend: what gets cached, that it stays within its byte budget, and when an
+ * invalidation takes effect inside and outside of a transaction.
+ */
+class BlobReadCacheTest {
+
+	private static final int MB = 1024 * 1024;
+
+	final InMemoryBackend backend = new InMemoryBackend();
+
+	@AfterEach
+	void clearSynchronization() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	@Test
+	void servesRepeatedReadsFromMemory() throws IOException {
+		BlobReadCache cache = cache(true, 4, 1);
+		byte[] content = backend.store("a", 1000);
+
+		assertThat(bytes(cache.get("a", 1000))).isEqualTo(content);
+		assertThat(bytes(cache.get("a", 1000))).isEqualTo(content);
+		assertThat(backend.opens.get()).isEqualTo(1);
+	}
+
+	@Test
+	void readersGetTheirOwnPosition() throws IOException {
+		BlobReadCache cache = cache(true, 4, 1);
+		backend.store("a", 1000);
+
+		ByteBuffer first = cache.get("a", 1000).orElseThrow();
+		first.position(500);
+
+		assertThat(cache.get("a", 1000).orElseThrow().remaining()).isEqualTo(1000);
+	}
+
+	@Test
+	void leavesOutBlobsAboveTheEntryLimit() throws IOException {
+		BlobReadCache cache = cache(true, 4, 1);
+		backend.store("large", MB + 1);
+
+		assertThat(cache.get("large", MB + 1)).isEmpty();
+		assertThat(backend.opens.get()).isZero();
+		assertThat(cache.weightedSize()).isZero();
+	}
+
+	@Test
+	void cachesNothingWhenDisabled() throws IOException {
+		BlobReadCache cache = cache(false, 4, 1);
+		backend.store("a", 1000);
+
+		assertThat(cache.get("a", 1000)).isEmpty();
+		assertThat(backend.opens.get()).isZero();
+	}
+
+	@Test
+	void evictsToStayWithinItsBudget() throws IOException {
+		BlobReadCache cache = cache(true, 1, 1);
+		for (int i = 0; i < 8; i++) {
+			backend.store("blob" + i, MB / 4);
+			assertThat(cache.get("blob" + i, MB / 4)).isPresent();
+		}
+
+		assertThat(cache.weightedSize()).isLessThanOrEqualTo(MB);
+		assertThat(cache.weightedSize()).isGreaterThan(0);
+	}
+
+	@Test
+	void failsWhenTheBlobIsShorterThanExpected() {
+		BlobReadCache cache = cache(true, 4, 1);
+		backend.store("short", 100);
+
+		assertThatThrownBy(() -> cache.get("short", 200)).isInstanceOf(IOException.class);
+		assertThat(cache.weightedSize()).isZero();  // nothing half-loaded stays behind
+	}
+
+	@Test
+	void invalidatesRightAwayOutsideOfATransaction() throws IOException {
+		BlobReadCache cache = cache(true, 4, 1);
+		backend.store("a", 1000);
+		cache.get("a", 1000);
+
+		cache.invalidate("a");
+		byte[] replaced = backend.store("a", 1000);
+
+		assertThat(bytes(cache.get("a", 1000))).isEqualTo(replaced);
+		assertThat(backend.opens.get()).isEqualTo(2);
+	}
+
+	@Test
+	void invalidatesOnlyOnceTheTransactionCompletes() throws IOException {
+		BlobReadCache cache = cache(true, 4, 1);
+		byte[] original = backend.store("a", 1000);
+		cache.get("a", 1000);
+
+		TransactionSynchronizationManager.initSynchronization();
+		cache.invalidate("a");
+		byte[] replaced = backend.store("a", 1000);
+		assertThat(bytes(cache.get("a", 1000))).isEqualTo(original);  // still the cached copy
+
+		complete(TransactionSynchronization.STATUS_COMMITTED);
+		assertThat(bytes(cache.get("a", 1000))).isEqualTo(replaced);
+	}
+
+	@Test
+	void invalidatesAfterARollbackToo() throws IOException {
+		BlobReadCache cache = cache(true, 4, 1);
+		backend.store("a", 1000);
+		cache.get("a", 1000);
+
+		TransactionSynchronizationManager.initSynchronization();
+		cache.invalidate("a");
+		complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+		cache.get("a", 1000);
+		assertThat(backend.opens.get()).isEqualTo(2);
+	}
+
+	private BlobReadCache cache(boolean enabled, long maxSizeMb, long maxEntrySizeMb) {
+		return new BlobReadCache(backend, new SimpleMeterRegistry(), enabled, maxSizeMb, maxEntrySizeMb);
+	}
+
+	private static void complete(int status) {
+		var synchronizations = TransactionSynchronizationManager.getSynchronizations();
+		TransactionSynchronizationManager.clearSynchronization();
+		TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, status);
+	}
+
+	private static byte[] bytes(Optional<ByteBuffer> cached) {
+		ByteBuffer buffer = cached.orElseThrow();
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	static class InMemoryBackend implements StorageBackend {
+
+		final Map<String, byte[]> blobs = new HashMap<>();
+		final AtomicInteger opens = new AtomicInteger();
+		private int generation;
+
+		byte[] store(String storageKey, int length) {
+			byte[] content = new byte[length];
+			Arrays.fill(content, (byte) ++generation);
+			blobs.put(storageKey, content);
+			return content;
+		}
+
+		@Override
+		public void put(String storageKey, Path source, long size) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public InputStream getRange(String storageKey, long start, long end) throws IOException {
+			byte[] content = blobs.get(storageKey);
+			if (content == null) {
+				throw new NoSuchFileException(storageKey);
+			}
+			opens.incrementAndGet();
+			return new ByteArrayInputStream(content, (int) start, (int) (Math.min(end, content.length) - start));
+		}
+
+		@Override
+		public void delete(String storageKey) {
+			blobs.remove(storageKey);
+		}
+
+		@Override
+		public Optional<BlobStat> stat(String storageKey) {
+			return Optional.ofNullable(blobs.get(storageKey)).map(content -> new BlobStat(content.length));
+		}
+	}
+}
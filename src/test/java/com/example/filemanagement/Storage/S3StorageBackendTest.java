@@ -0,0 +1,170 @@
+package com.example.filemanagement.Storage;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * S3StorageBackend against a MinIO server: single and multipart puts, whole and ranged reads (including ranges
+ * spanning several parts, which are streamed as consecutive GETs), stat and delete.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class S3StorageBackendTest {
+
+	private static final String BUCKET = "blobs";
+	private static final String ACCESS_KEY = "minioadmin";
+	private static final String SECRET_KEY = "minioadmin";
+	private static final int PART_SIZE = 5 * 1024 * 1024;  // S3's minimum, so a few parts stay small
+
+	@Container
+	static final GenericContainer<?> minio = new GenericContainer<>("minio/minio:RELEASE.2024-01-16T16-07-38Z")
+			.withCommand("server", "/data")
+			.withEnv("MINIO_ROOT_USER", ACCESS_KEY)
+			.withEnv("MINIO_ROOT_PASSWORD", SECRET_KEY)
+			.withExposedPorts(9000)
+			.waitingFor(Wait.forHttp("/minio/health/ready").forPort(9000));
+
+	static S3StorageBackend backend;
+
+	@TempDir
+	Path incoming;
+
+	@BeforeAll
+	static void createBucket() {
+		String endpoint = endpoint();
+		try (S3Client s3 = S3Client.builder()
+				.region(Region.US_EAST_1)
+				.endpointOverride(URI.create(endpoint))
+				.forcePathStyle(true)
+				.credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(ACCESS_KEY, SECRET_KEY)))
+				.build()) {
+			s3.createBucket(b -> b.bucket(BUCKET));
+		}
+		backend = new S3StorageBackend(BUCKET, "us-east-1", endpoint, ACCESS_KEY, SECRET_KEY, true, 5, 3);
+	}
+
+	@AfterAll
+	static void close() {
+		backend.close();
+	}
+
+	@Test
+	void putThenReadBack() throws IOException {
+		byte[] content = bytes(100_000, 1);
+		Path source = write("small", content);
+
+		backend.put("small", source, content.length);
+
+		assertThat(source).doesNotExist();  // consumed
+		assertThat(backend.stat("small")).contains(new StorageBackend.BlobStat(content.length));
+		try (InputStream in = backend.open("small")) {
+			assertThat(in.readAllBytes()).isEqualTo(content);
+		}
+	}
+
+	@Test
+	void rangeOfASinglePart() throws IOException {
+		byte[] content = bytes(100_000, 2);
+		backend.put("ranged", write("ranged", content), content.length);
+
+		try (InputStream in = backend.getRange("ranged", 1_000, 51_000)) {
+			assertThat(in.readAllBytes()).isEqualTo(Arrays.copyOfRange(content, 1_000, 51_000));
+		}
+		try (InputStream in = backend.getRange("ranged", 500, 500)) {
+			assertThat(in.readAllBytes()).isEmpty();
+		}
+	}
+
+	@Test
+	void multipartPutAndRangesAcrossParts() throws IOException {
+		byte[] content = bytes(3 * PART_SIZE + 12_345, 3);
+		backend.put("large", write("large", content), content.length);
+
+		assertThat(backend.stat("large")).contains(new StorageBackend.BlobStat(content.length));
+		try (InputStream in = backend.open("large")) {
+			assertThat(in.readAllBytes()).isEqualTo(content);
+		}
+
+		int start = PART_SIZE - 10;
+		int end = 3 * PART_SIZE + 10;  // longer than a part: read as several streamed GETs
+		try (InputStream in = backend.getRange("large", start, end)) {
+			assertThat(in.readAllBytes()).isEqualTo(Arrays.copyOfRange(content, start, end));
+		}
+	}
+
+	@Test
+	void closingAPartlyReadRangeDropsThePartsOpenedAhead() throws IOException {
+		byte[] content = bytes(3 * PART_SIZE, 4);
+		backend.put("abandoned", write("abandoned", content), content.length);
+
+		try (InputStream in = backend.getRange("abandoned", 0, content.length)) {
+			assertThat(in.readNBytes(1_000)).isEqualTo(Arrays.copyOf(content, 1_000));
+		}
+
+		try (InputStream in = backend.getRange("abandoned", 0, 1_000)) {  // the connections are still usable
+			assertThat(in.readAllBytes()).isEqualTo(Arrays.copyOf(content, 1_000));
+		}
+	}
+
+	@Test
+	void putOfAStoredKeyKeepsTheStoredBytes() throws IOException {
+		byte[] content = bytes(10_000, 5);
+		backend.put("kept", write("kept", content), content.length);
+
+		Path again = write("kept-again", bytes(10_000, 6));
+		backend.put("kept", again, 10_000);
+
+		assertThat(again).doesNotExist();
+		try (InputStream in = backend.open("kept")) {
+			assertThat(in.readAllBytes()).isEqualTo(content);
+		}
+	}
+
+	@Test
+	void deleteRemovesTheObject() throws IOException {
+		byte[] content = bytes(10_000, 7);
+		backend.put("deleted", write("deleted", content), content.length);
+
+		backend.delete("deleted");
+		backend.delete("deleted");  // a missing key deletes fine
+
+		assertThat(backend.stat("deleted")).isEmpty();
+		assertThatThrownBy(() -> backend.open("deleted")).isInstanceOf(NoSuchFileException.class);
+		assertThatThrownBy(() -> backend.getRange("deleted", 0, 100)).isInstanceOf(NoSuchFileException.class);
+	}
+
+	private Path write(String name, byte[] content) throws IOException {
+		return Files.write(incoming.resolve(name), content);
+	}
+
+	private static byte[] bytes(int length, long seed) {
+		byte[] content = new byte[length];
+		new Random(seed).nextBytes(content);
+		return content;
+	}
+
+	private static String endpoint() {
+		return "http://" + minio.getHost() + ":" + minio.getMappedPort(9000);
+	}
+}